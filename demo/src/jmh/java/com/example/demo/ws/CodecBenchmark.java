@@ -0,0 +1,71 @@
+package com.example.demo.ws;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of parsing one inbound frame: the old regex {@code split} plus
+ * string-compare chain versus {@link ChatCodec}. Run with
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="CodecBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private static final String[] TYPES = { "JOIN", "HISTORY_BEFORE", "MSG", "PRIVATE", "PRIVATE_FILE", "TYPING",
+            "FILE", "GET_ROOMS", "DELETE_ROOM" };
+
+    private String text;
+    private byte[] binary;
+
+    @Setup
+    public void setup() {
+        text = "FILE|/api/files/3f1c2a9e-51b2-4d0e-9a57-1c1f0b7d2e44.jpg|image|ảnh chụp màn hình.jpg|482113";
+        binary = ChatCodec.toBinary(text);
+    }
+
+    @Benchmark
+    public void regexSplit(Blackhole bh) {
+        String[] parts = text.split("\\|", 5);
+        String type = parts[0];
+        for (String candidate : TYPES) {
+            if (candidate.equals(type)) {
+                bh.consume(candidate);
+                break;
+            }
+        }
+        bh.consume(parts[1]);
+        bh.consume(parts[4]);
+    }
+
+    @Benchmark
+    public void codecText(Blackhole bh) {
+        ChatMessage message = ChatCodec.decode(text);
+        bh.consume(message.command());
+        bh.consume(message.get(1));
+        bh.consume(message.get(4));
+    }
+
+    @Benchmark
+    public void codecBinary(Blackhole bh) {
+        ChatMessage message = ChatCodec.decode(binary);
+        bh.consume(message.command());
+        bh.consume(message.get(1));
+        bh.consume(message.get(4));
+    }
+}
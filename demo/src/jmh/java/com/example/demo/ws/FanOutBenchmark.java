@@ -0,0 +1,111 @@
+package com.example.demo.ws;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * Cost of one room fan-out through the per-recipient send path.
+ *
+ * For every recipient each variant does what {@link OutboundQueue} and
+ * Tomcat do with the message: read {@code getPayloadLength()} for the
+ * backlog accounting, then write the payload. A text message reaches Tomcat
+ * as a {@code String} ({@code sendText(getPayload())}), which encodes it to
+ * UTF-8 into a reused buffer on every send, whatever the message was built
+ * from. A binary message is copied out of its own {@code ByteBuffer}.
+ * Socket I/O is left out. Run with:
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec
+ * </pre>
+ *
+ * and compare the time per fan-out and {@code gc.alloc.rate.norm} (bytes per
+ * fan-out).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+
+    @Param({ "10", "100", "1000", "10000" })
+    private int members;
+
+    private String payload;
+
+    // Như WsRemoteEndpointImplBase: một encoder và một buffer 8KB cho mỗi endpoint, dùng lại giữa các lần gửi
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer output = ByteBuffer.allocate(8192);
+
+    @Setup
+    public void setup() {
+        payload = "MSG|Nguyễn Văn An|Chào cả phòng, tối nay họp lúc 8 giờ nhé! Nhớ mang tài liệu.|"
+                + System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public void textMessagePerRecipient(Blackhole bh) {
+        for (int i = 0; i < members; i++) {
+            TextMessage message = new TextMessage(payload);
+            bh.consume(message.getPayloadLength());
+            bh.consume(sendText(message));
+        }
+    }
+
+    @Benchmark
+    public void sharedFrame(Blackhole bh) {
+        Frame frame = Frame.text(payload);
+        for (int i = 0; i < members; i++) {
+            TextMessage message = frame.message();
+            bh.consume(message.getPayloadLength());
+            bh.consume(sendText(message));
+        }
+    }
+
+    @Benchmark
+    public void sharedFrameBinary(Blackhole bh) {
+        Frame frame = Frame.text(payload);
+        for (int i = 0; i < members; i++) {
+            // Như OutboundDispatcher: mỗi người nhận một ByteBuffer riêng trên cùng mảng byte
+            BinaryMessage message = new BinaryMessage(ByteBuffer.wrap(frame.binary()));
+            bh.consume(message.getPayloadLength());
+            bh.consume(sendBinary(message));
+        }
+    }
+
+    private int sendText(TextMessage message) {
+        output.clear();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(message.getPayload()), output, true);
+        encoder.flush(output);
+        return output.position();
+    }
+
+    private int sendBinary(BinaryMessage message) {
+        output.clear();
+        output.put(message.getPayload());
+        return output.position();
+    }
+}
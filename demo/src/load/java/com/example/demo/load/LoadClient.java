@@ -0,0 +1,185 @@
+package com.example.demo.load;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+
+/**
+ * One simulated user on {@code java.net.http.WebSocket}.
+ *
+ * Outgoing frames that carry a timestamp put {@code #<nanoTime>} in the text
+ * (or file name) field; the receiving client parses it back, which works
+ * because the load tool and an embedded server share one clock. BATCH
+ * frames are unpacked the way the browser client does.
+ */
+final class LoadClient implements WebSocket.Listener {
+
+    private static final String MARK = "#";
+
+    private final String user;
+    private final LoadStats stats;
+    private final int maxPendingSends;
+
+    private volatile WebSocket socket;
+    private volatile String room;
+    // JOIN đang chờ USERS của phòng mới, 0 nếu không có
+    private volatile long joinSentAt;
+
+    // java.net.http chỉ cho một sendText đang chạy: nối các lần gửi thành chuỗi
+    private CompletableFuture<?> sending = CompletableFuture.completedFuture(null);
+    private final AtomicInteger pendingSends = new AtomicInteger();
+    private final StringBuilder partial = new StringBuilder();
+
+    LoadClient(String user, LoadStats stats, int maxPendingSends) {
+        this.user = user;
+        this.stats = stats;
+        this.maxPendingSends = maxPendingSends;
+    }
+
+    CompletableFuture<LoadClient> connect(HttpClient http, URI uri) {
+        return http.newWebSocketBuilder().buildAsync(uri, this).thenApply(ws -> {
+            socket = ws;
+            return this;
+        });
+    }
+
+    String user() {
+        return user;
+    }
+
+    boolean isOpen() {
+        WebSocket ws = socket;
+        return ws != null && !ws.isInputClosed() && !ws.isOutputClosed();
+    }
+
+    boolean joinPending() {
+        return joinSentAt != 0;
+    }
+
+    void abort() {
+        WebSocket ws = socket;
+        if (ws != null) {
+            ws.abort();
+        }
+    }
+
+    // ================= SEND =================
+
+    void join(String room) {
+        this.room = room;
+        joinSentAt = System.nanoTime();
+        send(LoadStats.Op.JOIN, ChatCodec.encode("JOIN", room, user, "LD", ""));
+    }
+
+    void message() {
+        send(LoadStats.Op.MSG, ChatCodec.encode("MSG", mark()));
+    }
+
+    void typing() {
+        send(LoadStats.Op.TYPING, ChatCodec.encode("TYPING", ""));
+    }
+
+    void privateMessage(String target) {
+        send(LoadStats.Op.PRIVATE, ChatCodec.encode("PRIVATE", target, mark()));
+    }
+
+    void file() {
+        send(LoadStats.Op.FILE, ChatCodec.encode("FILE", "/api/files/load.bin", "file", mark(), "1024"));
+    }
+
+    private static String mark() {
+        return MARK + System.nanoTime();
+    }
+
+    private void send(LoadStats.Op op, String frame) {
+        if (pendingSends.incrementAndGet() > maxPendingSends) {
+            // Server không nhận kịp: bỏ lượt thay vì xếp hàng vô hạn phía client
+            pendingSends.decrementAndGet();
+            stats.skipped.increment();
+            return;
+        }
+        stats.sent(op);
+        synchronized (this) {
+            sending = sending.handle((ignored, error) -> null)
+                    .thenCompose(ignored -> socket.sendText(frame, true))
+                    .whenComplete((ignored, error) -> {
+                        pendingSends.decrementAndGet();
+                        if (error != null) {
+                            stats.errors.increment();
+                        }
+                    });
+        }
+    }
+
+    // ================= RECEIVE =================
+
+    @Override
+    public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+        partial.append(data);
+        if (last) {
+            String frame = partial.toString();
+            partial.setLength(0);
+            stats.bytesReceived.add(frame.length());
+            receive(frame, System.nanoTime());
+        }
+        ws.request(1);
+        return null;
+    }
+
+    private void receive(String frame, long now) {
+        ChatMessage message = ChatCodec.decode(frame);
+        switch (message.get(0)) {
+            case "BATCH" -> {
+                for (int i = 1; i < message.size(); i++) {
+                    receive(message.get(i), now);
+                }
+                return;
+            }
+            case "MSG", "PRIVATE" -> delivered(LoadStats.Op.valueOf(message.get(0)), message.get(2), now);
+            case "FILE" -> delivered(LoadStats.Op.FILE, message.get(4), now);
+            case "USERS" -> {
+                long sentAt = joinSentAt;
+                if (sentAt != 0) {
+                    joinSentAt = 0;
+                    stats.delivered(LoadStats.Op.JOIN, sentAt, now);
+                }
+            }
+            case "ERROR" -> stats.errors.increment();
+            default -> {
+                // presence, TYPING_SET, HISTORY_BATCH...: chỉ đếm
+            }
+        }
+        stats.framesReceived.increment();
+    }
+
+    private void delivered(LoadStats.Op op, String field, long now) {
+        if (field.startsWith(MARK)) {
+            try {
+                stats.delivered(op, Long.parseLong(field.substring(MARK.length())), now);
+            } catch (NumberFormatException ignored) {
+                // không phải frame của load test
+            }
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+        stats.disconnects.increment();
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket ws, Throwable error) {
+        stats.disconnects.increment();
+    }
+
+    String room() {
+        return room;
+    }
+}
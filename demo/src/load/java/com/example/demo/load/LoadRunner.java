@@ -0,0 +1,307 @@
+package com.example.demo.load;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.demo.DemoApplication;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.OutboundDispatcher;
+import com.example.demo.ws.OutboundQueue;
+
+/**
+ * Headless load generator for {@code /chat}. Starts the application on a
+ * random local port (or uses {@code target=ws://...}), connects the
+ * scenario's clients, drives the JOIN/MSG/TYPING/PRIVATE/FILE mix at a fixed
+ * total rate and prints throughput and delivery latency percentiles.
+ *
+ * Run with {@code mvn -Pload test-compile exec:exec -Dload.args="mixed clients=5000"}.
+ * Exits with status 1 if a client could not connect or an
+ * {@code assert.*} limit of the scenario is exceeded.
+ */
+public class LoadRunner {
+
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    private final LoadScenario scenario;
+    private final URI target;
+    private final ConfigurableApplicationContext server;
+    private final LoadStats stats = new LoadStats();
+    private final List<LoadClient> clients = new ArrayList<>();
+
+    private final LoadStats.Op[] ops;
+    private final int[] cumulativeWeights;
+
+    LoadRunner(LoadScenario scenario, URI target, ConfigurableApplicationContext server) {
+        this.scenario = scenario;
+        this.target = target;
+        this.server = server;
+
+        Map<LoadStats.Op, Integer> mix = scenario.mix();
+        ops = mix.keySet().toArray(new LoadStats.Op[0]);
+        cumulativeWeights = new int[ops.length];
+        int total = 0;
+        for (int i = 0; i < ops.length; i++) {
+            total += mix.get(ops[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadScenario scenario = LoadScenario.load(args);
+        ConfigurableApplicationContext server = null;
+        URI target = scenario.target();
+        if (target == null) {
+            server = startServer(scenario);
+            int port = ((WebServerApplicationContext) server).getWebServer().getPort();
+            target = URI.create("ws://localhost:" + port + "/chat");
+        }
+        boolean passed;
+        try {
+            passed = new LoadRunner(scenario, target, server).run();
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static ConfigurableApplicationContext startServer(LoadScenario scenario) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("logging.level.root", "WARN");
+        properties.putAll(scenario.serverProperties());
+        // Truyền như tham số dòng lệnh để ghi đè application.properties
+        String[] args = properties.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue())
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(DemoApplication.class)
+                .profiles(scenario.profiles())
+                .run(args);
+    }
+
+    boolean run() throws Exception {
+        System.out.printf("== Load scenario '%s': %d clients, %d rooms, %.0f ops/s for %s (warmup %s) -> %s%n",
+                scenario.name(), scenario.clients(), scenario.rooms(), scenario.rate(),
+                pretty(scenario.duration()), pretty(scenario.warmup()), target);
+
+        int connected = connect();
+        if (connected == 0) {
+            System.out.println("FAIL: no client could connect");
+            return false;
+        }
+        joinRooms();
+
+        ScheduledExecutorService driver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "load-driver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long startNanos = System.nanoTime();
+        long[] issued = { 0 };
+        driver.scheduleAtFixedRate(() -> {
+            // Số thao tác tới hạn tính theo thời gian thực, không bị trôi khi tick trễ
+            long due = (long) (scenario.rate() * (System.nanoTime() - startNanos) / 1e9);
+            for (; issued[0] < due; issued[0]++) {
+                issueOne();
+            }
+        }, 0, 5, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(scenario.warmup().toMillis());
+        stats.reset();
+        long measureStart = System.nanoTime();
+        Thread.sleep(scenario.duration().toMillis());
+        driver.shutdownNow();
+        Thread.sleep(scenario.drain().toMillis());
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+
+        boolean passed = report(seconds, connected) && connected == scenario.clients();
+        for (LoadClient client : clients) {
+            client.abort();
+        }
+        if (server != null) {
+            // Đợi server xử lý xong các lần đóng kết nối trước khi tắt context
+            ChatRegistry registry = server.getBean(ChatRegistry.class);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (registry.sessionCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            Thread.sleep(500);
+        }
+        return passed;
+    }
+
+    // ================= SETUP =================
+
+    private int connect() throws InterruptedException {
+        HttpClient[] http = new HttpClient[scenario.httpClients()];
+        for (int i = 0; i < http.length; i++) {
+            http[i] = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        }
+        Semaphore inFlight = new Semaphore(scenario.connectConcurrency());
+        AtomicInteger failed = new AtomicInteger();
+        List<CompletableFuture<LoadClient>> pending = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < scenario.clients(); i++) {
+            inFlight.acquire();
+            LoadClient client = new LoadClient("u" + i, stats, scenario.maxPendingSends());
+            pending.add(client.connect(http[i % http.length], target).whenComplete((ok, error) -> {
+                inFlight.release();
+                if (error != null) {
+                    failed.incrementAndGet();
+                }
+            }));
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]))
+                    .get(scenario.connectTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // client lỗi/timeout đã được đếm, chạy tiếp với số còn lại
+        }
+        for (CompletableFuture<LoadClient> future : pending) {
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                clients.add(future.join());
+            }
+        }
+        System.out.printf("connected %d/%d in %.1fs (%d failed)%n", clients.size(), scenario.clients(),
+                (System.nanoTime() - start) / 1e9, failed.get());
+        return clients.size();
+    }
+
+    private void joinRooms() throws InterruptedException {
+        for (int i = 0; i < clients.size(); i++) {
+            clients.get(i).join(room(i % scenario.rooms()));
+        }
+        long deadline = System.nanoTime() + scenario.connectTimeout().toNanos();
+        while (System.nanoTime() < deadline && clients.stream().anyMatch(LoadClient::joinPending)) {
+            Thread.sleep(50);
+        }
+        Histogram joins = stats.interval(LoadStats.Op.JOIN);
+        System.out.printf("joined %d/%d, JOIN p99 %.2f ms%n", joins.getTotalCount(), clients.size(),
+                joins.getValueAtPercentile(99) / 1000.0);
+    }
+
+    private static String room(int index) {
+        return "load-" + index;
+    }
+
+    // ================= TRAFFIC =================
+
+    private void issueOne() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LoadClient client = clients.get(random.nextInt(clients.size()));
+        if (!client.isOpen()) {
+            return;
+        }
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (pick >= cumulativeWeights[i]) {
+            i++;
+        }
+        switch (ops[i]) {
+            case MSG -> client.message();
+            case TYPING -> client.typing();
+            case PRIVATE -> client.privateMessage(clients.get(random.nextInt(clients.size())).user());
+            case FILE -> client.file();
+            case JOIN -> {
+                if (!client.joinPending()) {
+                    client.join(room(random.nextInt(scenario.rooms())));
+                }
+            }
+        }
+    }
+
+    // ================= REPORT =================
+
+    private boolean report(double seconds, int connected) {
+        System.out.printf("%n%-8s %10s %9s %12s %11s %9s %9s %9s %9s %9s%n", "op", "sent", "sent/s", "delivered",
+                "deliv/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        Map<LoadStats.Op, Histogram> histograms = new EnumMap<>(LoadStats.Op.class);
+        for (LoadStats.Op op : LoadStats.Op.values()) {
+            long sent = stats.sentCount(op);
+            if (sent == 0) {
+                continue;
+            }
+            Histogram histogram = stats.interval(op);
+            histograms.put(op, histogram);
+            StringBuilder line = new StringBuilder(String.format("%-8s %10d %9.1f", op, sent, sent / seconds));
+            if (op.timed) {
+                long delivered = stats.deliveredCount(op);
+                line.append(String.format(" %12d %11.1f", delivered, delivered / seconds));
+                for (double percentile : PERCENTILES) {
+                    line.append(String.format(" %9.2f", histogram.getValueAtPercentile(percentile) / 1000.0));
+                }
+                line.append(String.format(" %9.2f", histogram.getMaxValue() / 1000.0));
+            }
+            System.out.println(line);
+        }
+        System.out.printf("%nframes received %d (%.0f/s, %.1f MB/s), skipped sends %d, errors %d, disconnects %d%n",
+                stats.framesReceived.sum(), stats.framesReceived.sum() / seconds,
+                stats.bytesReceived.sum() / seconds / (1024 * 1024), stats.skipped.sum(), stats.errors.sum(),
+                stats.disconnects.sum());
+        if (server != null) {
+            OutboundDispatcher outbound = server.getBean(OutboundDispatcher.class);
+            long dropped = outbound.queues().stream().mapToLong(OutboundQueue::getDropped).sum();
+            System.out.printf("server: %d sessions, frames %d, events %d, bytes %d, backlog %d, dropped %d%n",
+                    server.getBean(ChatRegistry.class).sessionCount(), outbound.totalFramesSent(),
+                    outbound.totalEventsSent(), outbound.totalBytesSent(), outbound.totalBacklog(), dropped);
+        }
+
+        boolean passed = true;
+        if (connected < scenario.clients()) {
+            System.out.printf("FAIL: only %d of %d clients connected%n", connected, scenario.clients());
+            passed = false;
+        }
+        for (LoadScenario.Assertion assertion : scenario.assertions()) {
+            Histogram histogram = histograms.get(assertion.op());
+            if (histogram == null || histogram.getTotalCount() == 0) {
+                System.out.printf("FAIL: no %s latencies recorded for assert %s.%s%n", assertion.op(),
+                        assertion.op(), assertion.statistic());
+                passed = false;
+                continue;
+            }
+            long micros = value(histogram, assertion.statistic());
+            boolean ok = micros <= assertion.limit().toNanos() / 1000;
+            System.out.printf("%s: %s %s %.2f ms (limit %s)%n", ok ? "PASS" : "FAIL", assertion.op(),
+                    assertion.statistic(), micros / 1000.0, pretty(assertion.limit()));
+            passed &= ok;
+        }
+        return passed;
+    }
+
+    private static long value(Histogram histogram, String statistic) {
+        if ("max".equals(statistic)) {
+            return histogram.getMaxValue();
+        }
+        if (!statistic.startsWith("p")) {
+            throw new IllegalArgumentException("Unknown statistic " + statistic);
+        }
+        // p99 -> 99, p999 -> 99.9
+        String digits = statistic.substring(1);
+        double percentile = digits.length() > 2 ? Double.parseDouble(digits.substring(0, 2) + "." + digits.substring(2))
+                : Double.parseDouble(digits);
+        return histogram.getValueAtPercentile(percentile);
+    }
+
+    private static String pretty(Duration duration) {
+        return duration.toMillis() % 1000 == 0 ? duration.toSeconds() + "s" : duration.toMillis() + "ms";
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.demo.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * One load run: a scenario file from {@code src/load/resources/scenarios}
+ * (or a path) plus {@code key=value} overrides from the command line.
+ *
+ * Keys prefixed {@code property.} are passed to the embedded server, keys
+ * prefixed {@code mix.} weight the operations and {@code assert.<op>.<pNN|max>}
+ * keys fail the run when a latency percentile is exceeded.
+ */
+final class LoadScenario {
+
+    /**
+     * A latency limit checked after the run, e.g. {@code assert.MSG.p99=50ms}.
+     */
+    record Assertion(LoadStats.Op op, String statistic, Duration limit) {
+    }
+
+    private final String name;
+    private final Properties properties;
+
+    private LoadScenario(String name, Properties properties) {
+        this.name = name;
+        this.properties = properties;
+    }
+
+    static LoadScenario load(String[] args) throws IOException {
+        String name = args.length > 0 ? args[0] : "smoke";
+        Properties properties = new Properties();
+        Path file = Path.of(name);
+        if (Files.isRegularFile(file)) {
+            try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(in);
+            }
+        } else {
+            try (InputStream in = LoadScenario.class.getResourceAsStream("/scenarios/" + name + ".properties")) {
+                if (in == null) {
+                    throw new IllegalArgumentException("No scenario '" + name + "' (file or scenarios/" + name
+                            + ".properties)");
+                }
+                properties.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+        }
+        for (int i = 1; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Override must be key=value: " + args[i]);
+            }
+            properties.setProperty(args[i].substring(0, eq).trim(), args[i].substring(eq + 1).trim());
+        }
+        return new LoadScenario(file.getFileName().toString().replace(".properties", ""), properties);
+    }
+
+    String name() {
+        return name;
+    }
+
+    int clients() {
+        return intValue("clients", 100);
+    }
+
+    int rooms() {
+        return Math.max(1, intValue("rooms", 10));
+    }
+
+    // Tổng số thao tác/giây của mọi client cộng lại
+    double rate() {
+        return Double.parseDouble(properties.getProperty("rate", "1000"));
+    }
+
+    Duration warmup() {
+        return duration("warmup", "5s");
+    }
+
+    Duration duration() {
+        return duration("duration", "30s");
+    }
+
+    // Chờ thêm sau khi ngừng gửi để các frame đang trên đường tới nơi
+    Duration drain() {
+        return duration("drain", "2s");
+    }
+
+    Duration connectTimeout() {
+        return duration("connect-timeout", "60s");
+    }
+
+    int connectConcurrency() {
+        return intValue("connect-concurrency", 200);
+    }
+
+    // Mỗi HttpClient có một selector thread; chia client ra vài cái để phía tải không thành nút cổ chai
+    int httpClients() {
+        return Math.max(1, intValue("http-clients", 4));
+    }
+
+    // Số frame chờ gửi tối đa mỗi client; quá thì bỏ lượt (server không theo kịp)
+    int maxPendingSends() {
+        return intValue("max-pending-sends", 256);
+    }
+
+    /**
+     * The server to load, or {@code null} to start an embedded one.
+     */
+    URI target() {
+        String target = properties.getProperty("target", "").trim();
+        return target.isEmpty() ? null : URI.create(target);
+    }
+
+    String[] profiles() {
+        String profiles = properties.getProperty("profiles", "").trim();
+        return profiles.isEmpty() ? new String[0] : profiles.split("\\s*,\\s*");
+    }
+
+    Map<String, Object> serverProperties() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("property.")) {
+                result.put(key.substring("property.".length()), properties.getProperty(key));
+            }
+        }
+        return result;
+    }
+
+    Map<LoadStats.Op, Integer> mix() {
+        Map<LoadStats.Op, Integer> mix = new EnumMap<>(LoadStats.Op.class);
+        for (LoadStats.Op op : LoadStats.Op.values()) {
+            int weight = intValue("mix." + op.name(), 0);
+            if (weight > 0) {
+                mix.put(op, weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            mix.put(LoadStats.Op.MSG, 1);
+        }
+        return mix;
+    }
+
+    List<Assertion> assertions() {
+        List<Assertion> assertions = new ArrayList<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith("assert.")) {
+                continue;
+            }
+            String[] parts = key.split("\\.");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected assert.<op>.<p50|p90|p99|p999|max>: " + key);
+            }
+            assertions.add(new Assertion(LoadStats.Op.valueOf(parts[1]), parts[2],
+                    DurationStyle.detectAndParse(properties.getProperty(key))));
+        }
+        return assertions;
+    }
+
+    private int intValue(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private Duration duration(String key, String defaultValue) {
+        return DurationStyle.detectAndParse(properties.getProperty(key, defaultValue).trim());
+    }
+}
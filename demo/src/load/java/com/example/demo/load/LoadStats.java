@@ -0,0 +1,89 @@
+package com.example.demo.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Counters and latency recorders shared by every {@link LoadClient}.
+ *
+ * Latency is end to end: from just before the client sends a frame to the
+ * moment another client has decoded the resulting event, in microseconds.
+ * A MSG or FILE is recorded once per room member that receives it.
+ */
+final class LoadStats {
+
+    enum Op {
+        MSG(true), TYPING(false), PRIVATE(true), FILE(true), JOIN(true);
+
+        // TYPING_SET được gom theo tick nên không đo độ trễ
+        final boolean timed;
+
+        Op(boolean timed) {
+            this.timed = timed;
+        }
+    }
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Map<Op, Recorder> latency = new EnumMap<>(Op.class);
+    private final Map<Op, LongAdder> sent = new EnumMap<>(Op.class);
+    private final Map<Op, LongAdder> delivered = new EnumMap<>(Op.class);
+    final LongAdder framesReceived = new LongAdder();
+    final LongAdder bytesReceived = new LongAdder();
+    final LongAdder skipped = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+
+    LoadStats() {
+        for (Op op : Op.values()) {
+            latency.put(op, new Recorder(MAX_LATENCY_MICROS, 3));
+            sent.put(op, new LongAdder());
+            delivered.put(op, new LongAdder());
+        }
+    }
+
+    void sent(Op op) {
+        sent.get(op).increment();
+    }
+
+    void delivered(Op op, long sentNanos, long receivedNanos) {
+        delivered.get(op).increment();
+        long micros = Math.max(0, (receivedNanos - sentNanos) / 1000);
+        latency.get(op).recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+    }
+
+    long sentCount(Op op) {
+        return sent.get(op).sum();
+    }
+
+    long deliveredCount(Op op) {
+        return delivered.get(op).sum();
+    }
+
+    /**
+     * Latencies recorded since the previous call.
+     */
+    Histogram interval(Op op) {
+        return latency.get(op).getIntervalHistogram();
+    }
+
+    /**
+     * Forgets everything recorded so far; called when the warmup ends.
+     */
+    void reset() {
+        for (Op op : Op.values()) {
+            latency.get(op).reset();
+            sent.get(op).reset();
+            delivered.get(op).reset();
+        }
+        framesReceived.reset();
+        bytesReceived.reset();
+        skipped.reset();
+        errors.reset();
+    }
+}
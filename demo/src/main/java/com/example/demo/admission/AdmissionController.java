@@ -0,0 +1,194 @@
+package com.example.demo.admission;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.Command;
+import com.example.demo.ws.Frame;
+import com.example.demo.ws.OutboundDispatcher;
+
+/**
+ * Decides whether an inbound command is handled at all, before its handler
+ * runs.
+ *
+ * Every connection has a {@link TokenBucket} per command and one for all of
+ * its commands ({@code chat.admission.*}). Independently, the outbound
+ * backlog and the CPU used by this process are sampled every
+ * {@code chat.admission.sample-interval}; while either stays above its
+ * threshold the server is overloaded and sheds the commands it can live
+ * without (typing, room and user lists, search, older history), so messages
+ * keep flowing instead of everything slowing down together.
+ *
+ * A rejected command is answered with {@code THROTTLED|command|retryAfterMs},
+ * at most once per {@code chat.admission.throttled-notice-interval} per
+ * connection; rejected TYPING is dropped silently.
+ */
+@Component
+public class AdmissionController {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+    private static final Command[] COMMANDS = Command.values();
+    // Chỗ trong mảng trạng thái của mỗi kết nối: một bucket / lệnh, rồi bucket chung, rồi bucket THROTTLED
+    private static final int SESSION_SLOT = COMMANDS.length;
+    private static final int NOTICE_SLOT = COMMANDS.length + 1;
+    private static final int SLOTS = COMMANDS.length + 2;
+
+    // Quá tải kết thúc khi cả hai chỉ số xuống dưới ngưỡng x hệ số này
+    private static final double RECOVERY_FACTOR = 0.8;
+
+    private final OutboundDispatcher outbound;
+    private final ChatMetrics metrics;
+    private final boolean enabled;
+
+    // Theo Command.ordinal(), null = không giới hạn
+    private final TokenBucket[] buckets = new TokenBucket[COMMANDS.length];
+    private final TokenBucket sessionBucket;
+    private final TokenBucket noticeBucket;
+    private final boolean[] sheddable = new boolean[COMMANDS.length];
+
+    private final long maxOutboundBacklog;
+    private final double maxCpu;
+    private final int overloadSamples;
+    private final long retryAfterOverloadMillis;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+    // sessionId -> trạng thái các bucket của kết nối
+    private final Map<String, AtomicLongArray> sessions = new ConcurrentHashMap<>();
+
+    private volatile boolean overloaded;
+    private volatile double cpuLoad;
+    // Chỉ thread của scheduler đọc/ghi
+    private int overSamples;
+    private int calmSamples;
+
+    public AdmissionController(AdmissionProperties properties, OutboundDispatcher outbound, ChatMetrics metrics) {
+        this.outbound = outbound;
+        this.metrics = metrics;
+        this.enabled = properties.isEnabled();
+        properties.getCommands().forEach((command, limit) -> buckets[command.ordinal()] = bucket(limit));
+        this.sessionBucket = bucket(properties.getSession());
+        this.noticeBucket = new TokenBucket(1000.0 / Math.max(1, properties.getThrottledNoticeInterval().toMillis()),
+                1);
+        properties.getShedCommands().forEach(command -> sheddable[command.ordinal()] = true);
+
+        this.maxOutboundBacklog = properties.getMaxOutboundBacklog();
+        this.maxCpu = properties.getMaxCpu();
+        this.overloadSamples = Math.max(1, properties.getOverloadSamples());
+        this.retryAfterOverloadMillis = properties.getSampleInterval().toMillis() * overloadSamples;
+    }
+
+    private static TokenBucket bucket(AdmissionProperties.Limit limit) {
+        if (limit == null || limit.getRate() <= 0) {
+            return null;
+        }
+        // Chỉ đặt rate: burst mặc định bằng số lệnh trong một giây
+        int burst = limit.getBurst() > 0 ? limit.getBurst() : (int) Math.ceil(limit.getRate());
+        return new TokenBucket(limit.getRate(), burst);
+    }
+
+    public void register(WebSocketSession session) {
+        AtomicLongArray state = new AtomicLongArray(SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            state.set(i, TokenBucket.FULL);
+        }
+        sessions.put(session.getId(), state);
+    }
+
+    public void unregister(WebSocketSession session) {
+        sessions.remove(session.getId());
+    }
+
+    /**
+     * Whether {@code command} from {@code session} may be handled now; if
+     * not, the client has been told (or the frame is silently dropped).
+     */
+    public boolean admit(WebSocketSession session, Command command) {
+        AtomicLongArray state = enabled ? sessions.get(session.getId()) : null;
+        if (state == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (overloaded && sheddable[command.ordinal()]) {
+            metrics.shed(command);
+            throttled(session, state, command, retryAfterOverloadMillis, now);
+            return false;
+        }
+
+        TokenBucket bucket = buckets[command.ordinal()];
+        long wait = bucket != null ? bucket.tryAcquire(state, command.ordinal(), now) : 0;
+        if (wait == 0 && sessionBucket != null) {
+            wait = sessionBucket.tryAcquire(state, SESSION_SLOT, now);
+        }
+        if (wait == 0) {
+            return true;
+        }
+        metrics.rateLimited(command);
+        throttled(session, state, command, TimeUnit.NANOSECONDS.toMillis(wait) + 1, now);
+        return false;
+    }
+
+    private void throttled(WebSocketSession session, AtomicLongArray state, Command command, long retryAfterMillis,
+            long now) {
+        // Client gửi dồn dập thì cũng chỉ nhận một THROTTLED mỗi khoảng, không khuếch đại lưu lượng
+        if (command != Command.TYPING && noticeBucket.tryAcquire(state, NOTICE_SLOT, now) == 0) {
+            outbound.send(session, Frame.text(ChatCodec.encode("THROTTLED", command.name(),
+                    Long.toString(retryAfterMillis))));
+        }
+    }
+
+    // ================= OVERLOAD =================
+
+    @Scheduled(fixedRateString = "${chat.admission.sample-interval:PT0.25S}")
+    public void sample() {
+        if (!enabled) {
+            return;
+        }
+        double cpu = cpuLoad();
+        long backlog = outbound.totalBacklog();
+        cpuLoad = cpu;
+
+        boolean over = backlog > maxOutboundBacklog || cpu > maxCpu;
+        boolean calm = backlog < maxOutboundBacklog * RECOVERY_FACTOR && cpu < maxCpu * RECOVERY_FACTOR;
+        overSamples = over ? overSamples + 1 : 0;
+        calmSamples = calm ? calmSamples + 1 : 0;
+
+        if (!overloaded && overSamples >= overloadSamples) {
+            overloaded = true;
+            log.warn("Overloaded (outbound backlog {}, cpu {}): shedding low-priority commands", backlog,
+                    String.format("%.2f", cpu));
+        } else if (overloaded && calmSamples >= overloadSamples) {
+            overloaded = false;
+            log.info("Load back to normal (outbound backlog {}, cpu {})", backlog, String.format("%.2f", cpu));
+        }
+    }
+
+    // CPU của process server trên mọi core (0..1), 0 nếu JVM không cung cấp; process khác trên máy không tính
+    private double cpuLoad() {
+        if (os instanceof com.sun.management.OperatingSystemMXBean sun) {
+            double load = sun.getProcessCpuLoad();
+            return load >= 0 ? load : 0;
+        }
+        return 0;
+    }
+
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    public double getCpuLoad() {
+        return cpuLoad;
+    }
+}
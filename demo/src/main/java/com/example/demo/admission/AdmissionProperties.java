@@ -0,0 +1,161 @@
+package com.example.demo.admission;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.ws.Command;
+
+/**
+ * {@code chat.admission.*} settings from application.properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.admission")
+public class AdmissionProperties {
+
+    // false: không giới hạn gì, mọi lệnh đều được xử lý
+    private boolean enabled = true;
+
+    // Một bucket chung cho mọi lệnh của một kết nối
+    private final Limit session = new Limit(50, 100);
+
+    // Bucket riêng cho từng lệnh: chat.admission.commands.<COMMAND>.rate / .burst
+    private Map<Command, Limit> commands = defaultCommandLimits();
+
+    // Quá tải khi tổng outbound backlog hoặc CPU vượt ngưỡng trong overload-samples lần đo liên tiếp
+    private long maxOutboundBacklog = 100_000;
+    private double maxCpu = 0.95;
+    private int overloadSamples = 4;
+    private Duration sampleInterval = Duration.ofMillis(250);
+
+    // Lệnh bị từ chối khi quá tải: không cần thiết để chat tiếp tục chạy
+    private Set<Command> shedCommands = EnumSet.of(Command.TYPING, Command.GET_ROOMS, Command.GET_USERS,
+            Command.SEARCH, Command.HISTORY_BEFORE);
+
+    // Gửi THROTTLED cho một kết nối tối đa một lần trong khoảng này
+    private Duration throttledNoticeInterval = Duration.ofSeconds(1);
+
+    private static Map<Command, Limit> defaultCommandLimits() {
+        Map<Command, Limit> limits = new EnumMap<>(Command.class);
+        limits.put(Command.MSG, new Limit(10, 20));
+        limits.put(Command.PRIVATE, new Limit(10, 20));
+        limits.put(Command.TYPING, new Limit(5, 5));
+        limits.put(Command.FILE, new Limit(2, 5));
+        limits.put(Command.PRIVATE_FILE, new Limit(2, 5));
+        limits.put(Command.JOIN, new Limit(1, 5));
+        limits.put(Command.RESUME, new Limit(1, 5));
+        limits.put(Command.GET_ROOMS, new Limit(1, 3));
+        limits.put(Command.GET_USERS, new Limit(1, 3));
+        limits.put(Command.SEARCH, new Limit(5, 10));
+        limits.put(Command.HISTORY_BEFORE, new Limit(5, 10));
+        limits.put(Command.DELETE_ROOM, new Limit(0.2, 2));
+        return limits;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Limit getSession() {
+        return session;
+    }
+
+    public Map<Command, Limit> getCommands() {
+        return commands;
+    }
+
+    public void setCommands(Map<Command, Limit> commands) {
+        this.commands = commands;
+    }
+
+    public long getMaxOutboundBacklog() {
+        return maxOutboundBacklog;
+    }
+
+    public void setMaxOutboundBacklog(long maxOutboundBacklog) {
+        this.maxOutboundBacklog = maxOutboundBacklog;
+    }
+
+    public double getMaxCpu() {
+        return maxCpu;
+    }
+
+    public void setMaxCpu(double maxCpu) {
+        this.maxCpu = maxCpu;
+    }
+
+    public int getOverloadSamples() {
+        return overloadSamples;
+    }
+
+    public void setOverloadSamples(int overloadSamples) {
+        this.overloadSamples = overloadSamples;
+    }
+
+    public Duration getSampleInterval() {
+        return sampleInterval;
+    }
+
+    public void setSampleInterval(Duration sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    public Set<Command> getShedCommands() {
+        return shedCommands;
+    }
+
+    public void setShedCommands(Set<Command> shedCommands) {
+        this.shedCommands = shedCommands;
+    }
+
+    public Duration getThrottledNoticeInterval() {
+        return throttledNoticeInterval;
+    }
+
+    public void setThrottledNoticeInterval(Duration throttledNoticeInterval) {
+        this.throttledNoticeInterval = throttledNoticeInterval;
+    }
+
+    /**
+     * A token bucket: {@code rate} commands per second on average, up to
+     * {@code burst} at once. A rate of 0 means unlimited.
+     */
+    public static class Limit {
+
+        private double rate;
+        private int burst;
+
+        public Limit() {
+        }
+
+        Limit(double rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.demo.admission;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token bucket of {@code rate} tokens per second holding at most
+ * {@code burst}, in the GCRA form: the whole state is one {@code long}, the
+ * time at which the bucket will be full again, updated with a single CAS.
+ *
+ * The states live in a caller-owned {@link AtomicLongArray} so one
+ * connection's buckets for every command cost a few longs, not objects.
+ */
+final class TokenBucket {
+
+    // Bucket chưa dùng lần nào: coi như đầy
+    static final long FULL = Long.MIN_VALUE;
+
+    private final long intervalNanos;
+    private final long capacityNanos;
+
+    TokenBucket(double rate, int burst) {
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / rate));
+        this.capacityNanos = intervalNanos * Math.max(1, burst);
+    }
+
+    /**
+     * Takes a token from the bucket stored at {@code states[index]}.
+     *
+     * @return 0 if a token was taken, otherwise the nanoseconds until one
+     *         will be available
+     */
+    long tryAcquire(AtomicLongArray states, int index, long now) {
+        while (true) {
+            long full = states.get(index);
+            long next = Math.max(full, now) + intervalNanos;
+            long wait = next - now - capacityNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (states.compareAndSet(index, full, next)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.demo.cluster;
+
+/**
+ * Carries {@link ClusterEvent}s between chat nodes.
+ *
+ * Every published event reaches every other node at most once; a node
+ * never receives its own events. Delivery is best-effort: events published
+ * while a peer is unreachable are dropped, and presence is repaired by the
+ * periodic {@code PRESENCE_SNAPSHOT}.
+ */
+public interface ClusterBus {
+
+    /**
+     * Receives events from other nodes, on the bus's own thread.
+     */
+    interface Listener {
+
+        void onEvent(ClusterEvent event);
+
+        /**
+         * A connection to another node was (re-)established.
+         */
+        default void onPeerConnected() {
+        }
+    }
+
+    String nodeId();
+
+    void publish(ClusterEvent.Type type, String target, String payload);
+
+    void subscribe(Listener listener);
+}
@@ -0,0 +1,66 @@
+package com.example.demo.cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Picks the {@link ClusterBus} from {@code chat.cluster.bus}.
+ */
+@Configuration
+public class ClusterConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "chat.cluster.bus", havingValue = "loopback", matchIfMissing = true)
+    public ClusterBus loopbackClusterBus(@Value("${chat.cluster.node-id:}") String nodeId) {
+        return new LoopbackClusterBus(nodeId(nodeId), new LoopbackClusterBus.Hub());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "chat.cluster.bus", havingValue = "tcp")
+    public ClusterBus tcpClusterBus(
+            @Value("${chat.cluster.node-id:}") String nodeId,
+            @Value("${chat.cluster.bind:127.0.0.1:9091}") String bind,
+            @Value("${chat.cluster.peers:}") String peers,
+            @Value("${chat.cluster.reconnect-delay:2s}") Duration reconnectDelay,
+            @Value("${chat.cluster.secret:}") String secret) throws IOException {
+        InetSocketAddress bindAddress = address(bind);
+        // Ai kết nối được tới port này đều gửi được event vào mọi phòng: ra ngoài máy thì bắt buộc có secret
+        boolean loopback = bindAddress.getAddress() != null && bindAddress.getAddress().isLoopbackAddress();
+        if (secret.isEmpty() && !loopback) {
+            throw new IllegalStateException("chat.cluster.bind=" + bind
+                    + " is reachable from other hosts: set chat.cluster.secret on every node");
+        }
+        List<InetSocketAddress> peerAddresses = Arrays.stream(peers.split(","))
+                .map(String::trim)
+                .filter(peer -> !peer.isEmpty())
+                .map(ClusterConfig::address)
+                .toList();
+        TcpClusterBus bus = new TcpClusterBus(nodeId(nodeId), bindAddress, peerAddresses,
+                reconnectDelay.toMillis(), secret);
+        bus.start();
+        return bus;
+    }
+
+    // Không cấu hình node-id thì mỗi lần chạy một id ngẫu nhiên
+    private static String nodeId(String configured) {
+        return configured.isBlank() ? UUID.randomUUID().toString().substring(0, 8) : configured;
+    }
+
+    // host:port
+    private static InetSocketAddress address(String value) {
+        int colon = value.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected host:port, got '" + value + "'");
+        }
+        return new InetSocketAddress(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1)));
+    }
+}
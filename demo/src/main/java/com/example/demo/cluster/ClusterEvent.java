@@ -0,0 +1,43 @@
+package com.example.demo.cluster;
+
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+
+/**
+ * One message between nodes. Encoded with {@link ChatCodec} like a client
+ * frame: {@code type|origin|target|payload}.
+ */
+public record ClusterEvent(Type type, String origin, String target, String payload) {
+
+    public enum Type {
+        // target = room, payload = hash mật khẩu|frame; chỉ gửi cho thành viên, không lưu lịch sử (SYS...)
+        ROOM,
+        // target = room, payload = hash mật khẩu|frame; ghi vào lịch sử rồi gửi cho thành viên (MSG, FILE)
+        ROOM_STORED,
+        // target = room, payload = hash mật khẩu: phòng vừa tạo ở node origin, hoặc snapshot khi có peer mới
+        ROOM_PASSWORD,
+        // target = username, payload = frame
+        PRIVATE,
+        // target = username đang online / vừa rời ở node origin
+        PRESENCE_UP,
+        PRESENCE_DOWN,
+        // payload = danh sách username (ChatCodec) online ở node origin, thay cho mọi entry cũ
+        PRESENCE_SNAPSHOT,
+        // target = username, payload = node nhận|handoffId|["frame", ...]: hộp thư chuyển sang node user đang online
+        MAILBOX,
+        // target = username, payload = node đã gửi MAILBOX|handoffId: node nhận đã ghi các frame vào hộp thư của nó
+        MAILBOX_ACK
+    }
+
+    public String encode() {
+        return ChatCodec.encode(type.name(), origin, target, payload);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the text is not a cluster event
+     */
+    public static ClusterEvent decode(String text) {
+        ChatMessage message = ChatCodec.decode(text);
+        return new ClusterEvent(Type.valueOf(message.get(0)), message.get(1), message.get(2), message.get(3));
+    }
+}
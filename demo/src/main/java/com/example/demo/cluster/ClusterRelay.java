@@ -0,0 +1,113 @@
+package com.example.demo.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.history.HistoryStore;
+import com.example.demo.search.SearchIndex;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.Room;
+
+/**
+ * Delivers room and private frames published by other nodes to the local
+ * sessions, and routes private frames to whichever node the target is on.
+ *
+ * Room events carry the hash of the room password. A room frame whose hash
+ * differs from the room of the same name on this node is dropped, and a
+ * room not yet created here must be joined with the same password.
+ */
+@Component
+public class ClusterRelay implements ClusterBus.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterRelay.class);
+
+    private final ClusterBus bus;
+    private final ChatRegistry registry;
+    private final HistoryStore chatHistory;
+    private final PresenceDirectory presence;
+    private final SearchIndex searchIndex;
+
+    public ClusterRelay(ClusterBus bus, ChatRegistry registry, HistoryStore chatHistory, PresenceDirectory presence,
+            SearchIndex searchIndex) {
+        this.bus = bus;
+        this.registry = registry;
+        this.chatHistory = chatHistory;
+        this.presence = presence;
+        this.searchIndex = searchIndex;
+        bus.subscribe(this);
+    }
+
+    /**
+     * Sends a frame to every session of a user on this node and, via the
+     * bus, to the nodes the presence directory knows them on.
+     *
+     * @return false if the user is not online anywhere
+     */
+    public boolean sendToUser(String user, String frame) {
+        boolean delivered = sendToLocalUser(user, frame);
+        if (!presence.locate(user).isEmpty()) {
+            bus.publish(ClusterEvent.Type.PRIVATE, user, frame);
+            delivered = true;
+        }
+        return delivered;
+    }
+
+    private boolean sendToLocalUser(String user, String frame) {
+        boolean delivered = false;
+        for (WebSocketSession local : registry.sessionsOf(user)) {
+            if (local.isOpen()) {
+                registry.send(local, frame);
+                delivered = true;
+            }
+        }
+        return delivered;
+    }
+
+    @Override
+    public void onPeerConnected() {
+        // Node mới nối vào: cho nó biết mật khẩu của mọi phòng ở đây trước khi ai JOIN ở đó
+        for (Room room : registry.rooms()) {
+            bus.publish(ClusterEvent.Type.ROOM_PASSWORD, room.name(), room.passwordHash());
+        }
+    }
+
+    @Override
+    public void onEvent(ClusterEvent event) {
+        switch (event.type()) {
+            case ROOM_STORED -> {
+                String frame = roomFrame(event);
+                if (frame != null) {
+                    // Mỗi node giữ lịch sử đầy đủ của phòng, kể cả tin gửi ở node khác
+                    long seq = chatHistory.append(event.target(), frame);
+                    searchIndex.index(event.target(), seq, frame);
+                    registry.broadcastStored(event.target(), frame, seq);
+                }
+            }
+            case ROOM -> {
+                String frame = roomFrame(event);
+                if (frame != null) {
+                    registry.broadcast(event.target(), frame);
+                }
+            }
+            case ROOM_PASSWORD -> registry.acceptRemoteRoom(event.target(), event.payload());
+            case PRIVATE -> sendToLocalUser(event.target(), event.payload());
+            default -> {
+            }
+        }
+    }
+
+    // Frame của event phòng; null nếu phòng cùng tên ở node này có mật khẩu khác
+    private String roomFrame(ClusterEvent event) {
+        ChatMessage message = ChatCodec.decode(event.payload());
+        if (!registry.acceptRemoteRoom(event.target(), message.get(0))) {
+            log.debug("Dropping {} for room {} from {}: password differs", event.type(), event.target(),
+                    event.origin());
+            return null;
+        }
+        return message.get(1);
+    }
+}
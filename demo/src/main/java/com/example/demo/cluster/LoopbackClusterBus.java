@@ -0,0 +1,67 @@
+package com.example.demo.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process bus: nodes sharing a {@link Hub} exchange events by direct
+ * calls. A single node on its own hub is the default standalone mode; tests
+ * put several nodes on one hub.
+ */
+public class LoopbackClusterBus implements ClusterBus {
+
+    private static final Logger log = LoggerFactory.getLogger(LoopbackClusterBus.class);
+
+    /**
+     * The set of nodes that see each other.
+     */
+    public static final class Hub {
+        private final List<LoopbackClusterBus> nodes = new CopyOnWriteArrayList<>();
+    }
+
+    private final String nodeId;
+    private final Hub hub;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public LoopbackClusterBus(String nodeId, Hub hub) {
+        this.nodeId = nodeId;
+        this.hub = hub;
+        for (LoopbackClusterBus node : hub.nodes) {
+            node.listeners.forEach(Listener::onPeerConnected);
+        }
+        hub.nodes.add(this);
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(ClusterEvent.Type type, String target, String payload) {
+        ClusterEvent event = new ClusterEvent(type, nodeId, target, payload);
+        for (LoopbackClusterBus node : hub.nodes) {
+            if (node != this) {
+                node.deliver(event);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private void deliver(ClusterEvent event) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                log.warn("Cluster listener failed on {}: {}", event.type(), e.getMessage());
+            }
+        }
+    }
+}
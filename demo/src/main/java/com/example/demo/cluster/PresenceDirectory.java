@@ -0,0 +1,109 @@
+package com.example.demo.cluster;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+
+/**
+ * Which other nodes each remote user is connected to; a user with devices
+ * on several nodes is tracked on each of them.
+ *
+ * Nodes announce joins and leaves as they happen and publish a full
+ * snapshot of their local users every {@code chat.cluster.presence-interval}
+ * and whenever a peer connects. An entry not refreshed for three intervals
+ * is dropped, so users of a crashed node disappear on their own.
+ */
+@Component
+public class PresenceDirectory implements ClusterBus.Listener {
+
+    private final ClusterBus bus;
+    private final ChatRegistry registry;
+    private final long ttlMillis;
+
+    // username -> (node đang giữ kết nối của user đó -> hạn của entry), chỉ các node khác.
+    // Một user có thể online ở nhiều node cùng lúc (nhiều thiết bị)
+    private final Map<String, Map<String, Long>> remote = new ConcurrentHashMap<>();
+
+    public PresenceDirectory(ClusterBus bus, ChatRegistry registry,
+            @Value("${chat.cluster.presence-interval:PT10S}") Duration interval) {
+        this.bus = bus;
+        this.registry = registry;
+        this.ttlMillis = interval.toMillis() * 3;
+        bus.subscribe(this);
+    }
+
+    /**
+     * The other nodes a user is connected to; empty if not known to be
+     * online anywhere else.
+     */
+    public Set<String> locate(String user) {
+        Map<String, Long> nodes = remote.get(user);
+        if (nodes == null) {
+            return Collections.emptySet();
+        }
+        long now = System.currentTimeMillis();
+        nodes.values().removeIf(expiresAt -> expiresAt < now);
+        remote.computeIfPresent(user, (u, n) -> n.isEmpty() ? null : n);
+        return Collections.unmodifiableSet(nodes.keySet());
+    }
+
+    @Scheduled(fixedRateString = "${chat.cluster.presence-interval:PT10S}")
+    public void publishSnapshot() {
+        bus.publish(ClusterEvent.Type.PRESENCE_SNAPSHOT, "",
+                ChatCodec.encode(registry.localUsers().toArray(String[]::new)));
+    }
+
+    @Override
+    public void onPeerConnected() {
+        publishSnapshot();
+    }
+
+    @Override
+    public void onEvent(ClusterEvent event) {
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        switch (event.type()) {
+            case PRESENCE_UP -> up(event.target(), event.origin(), expiresAt);
+            case PRESENCE_DOWN -> down(event.target(), event.origin());
+            case PRESENCE_SNAPSHOT -> {
+                // Bỏ mọi entry cũ của node đó rồi ghi lại theo snapshot; entry của các node khác giữ nguyên
+                for (String user : remote.keySet()) {
+                    down(user, event.origin());
+                }
+                ChatMessage users = ChatCodec.decode(event.payload());
+                for (int i = 0; i < users.size(); i++) {
+                    String user = users.get(i);
+                    if (!user.isEmpty()) {
+                        up(user, event.origin(), expiresAt);
+                    }
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void up(String user, String nodeId, long expiresAt) {
+        remote.compute(user, (u, nodes) -> {
+            Map<String, Long> result = nodes != null ? nodes : new ConcurrentHashMap<>();
+            result.put(nodeId, expiresAt);
+            return result;
+        });
+    }
+
+    private void down(String user, String nodeId) {
+        remote.computeIfPresent(user, (u, nodes) -> {
+            nodes.remove(nodeId);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+}
@@ -0,0 +1,446 @@
+package com.example.demo.cluster;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Full-mesh bus over plain TCP, driven by one NIO selector thread.
+ *
+ * Every node listens on {@code chat.cluster.bind} and keeps one outbound
+ * connection to each address in {@code chat.cluster.peers}, reconnecting
+ * after {@code chat.cluster.reconnect-delay}. Events are written only on
+ * outbound connections and read only on inbound ones, so each event crosses
+ * each pair of nodes once. Frames are a 4-byte length and the UTF-8
+ * {@link ClusterEvent#encode() encoded} event.
+ *
+ * The same peer list can be given to every node: a connection to itself is
+ * harmless because events from the local node id are ignored.
+ *
+ * With a shared {@code chat.cluster.secret} every inbound connection starts
+ * with a challenge: the accepting node sends a random nonce, and the
+ * connecting node must answer with its HMAC-SHA256 under the secret before
+ * any of its events are accepted. Events themselves are neither signed nor
+ * encrypted, so the bus still belongs on a private network.
+ */
+public class TcpClusterBus implements ClusterBus, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpClusterBus.class);
+
+    private static final int MAX_FRAME = 16 * 1024 * 1024;
+    // Peer chậm/đứt quá lâu: bỏ event thay vì giữ trong RAM
+    private static final int MAX_PENDING = 10_000;
+    private static final String HMAC = "HmacSHA256";
+    private static final int CHALLENGE_LENGTH = 32;
+    // Frame trước khi xác thực chỉ là challenge/HMAC: không cho peer lạ bắt cấp buffer lớn
+    private static final int MAX_HANDSHAKE_FRAME = 64;
+
+    private final String nodeId;
+    private final InetSocketAddress bindAddress;
+    private final long reconnectDelayMillis;
+    // null: không có secret, không bắt tay
+    private final SecretKeySpec secret;
+    private final SecureRandom random = new SecureRandom();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<Peer> outboundPeers = new CopyOnWriteArrayList<>();
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread ioThread;
+    private volatile boolean running;
+
+    private static final class Peer {
+        // null với kết nối inbound
+        final InetSocketAddress address;
+        SocketChannel channel;
+        SelectionKey key;
+        volatile boolean connected;
+        // Inbound: đã trả lời đúng challenge (luôn true khi không có secret)
+        boolean authenticated;
+        byte[] challenge;
+        long reconnectAt;
+        ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+        final Queue<ByteBuffer> outbox = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicBoolean writeRequested = new AtomicBoolean();
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+    }
+
+    public TcpClusterBus(String nodeId, InetSocketAddress bindAddress, List<InetSocketAddress> peers,
+            long reconnectDelayMillis) {
+        this(nodeId, bindAddress, peers, reconnectDelayMillis, "");
+    }
+
+    public TcpClusterBus(String nodeId, InetSocketAddress bindAddress, List<InetSocketAddress> peers,
+            long reconnectDelayMillis, String secret) {
+        this.nodeId = nodeId;
+        this.bindAddress = bindAddress;
+        this.reconnectDelayMillis = reconnectDelayMillis;
+        this.secret = secret.isEmpty() ? null : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC);
+        for (InetSocketAddress address : peers) {
+            outboundPeers.add(new Peer(address));
+        }
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(bindAddress);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        ioThread = new Thread(this::run, "cluster-io");
+        ioThread.setDaemon(true);
+        ioThread.start();
+        log.info("Cluster node {} listening on {}, peers {}, {}", nodeId, localAddress(),
+                outboundPeers.stream().map(p -> p.address).toList(),
+                secret != null ? "shared-secret handshake" : "no authentication");
+    }
+
+    public InetSocketAddress localAddress() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void publish(ClusterEvent.Type type, String target, String payload) {
+        byte[] bytes = new ClusterEvent(type, nodeId, target, payload).encode().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_FRAME) {
+            log.warn("Dropping {} cluster event of {} bytes", type, bytes.length);
+            return;
+        }
+        // Encode một lần, mỗi peer dùng một view riêng của cùng buffer
+        ByteBuffer frame = frame(bytes);
+        boolean queued = false;
+        for (Peer peer : outboundPeers) {
+            if (!peer.connected) {
+                continue;
+            }
+            if (peer.pending.incrementAndGet() > MAX_PENDING) {
+                peer.pending.decrementAndGet();
+                continue;
+            }
+            peer.outbox.add(frame.duplicate());
+            peer.writeRequested.set(true);
+            queued = true;
+        }
+        if (queued) {
+            selector.wakeup();
+        }
+    }
+
+    // ================= SELECTOR LOOP =================
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select(500);
+                long now = System.currentTimeMillis();
+                for (Peer peer : outboundPeers) {
+                    if (peer.channel == null && now >= peer.reconnectAt) {
+                        connect(peer);
+                    }
+                    if (peer.connected && peer.writeRequested.getAndSet(false)) {
+                        peer.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (running) {
+                    log.warn("Cluster selector loop error: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Peer peer = (Peer) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                finishConnect(peer);
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(peer);
+            }
+            if (key.isValid() && key.isWritable()) {
+                write(peer);
+            }
+        } catch (IOException | RuntimeException e) {
+            drop(peer, e);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = server.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Peer peer = new Peer(null);
+            peer.channel = channel;
+            peer.connected = true;
+            if (secret == null) {
+                peer.authenticated = true;
+                peer.key = channel.register(selector, SelectionKey.OP_READ, peer);
+            } else {
+                // Event của peer chỉ được nhận sau khi nó trả lời đúng challenge
+                peer.challenge = new byte[CHALLENGE_LENGTH];
+                random.nextBytes(peer.challenge);
+                peer.outbox.add(frame(peer.challenge));
+                peer.pending.incrementAndGet();
+                peer.key = channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, peer);
+            }
+        } catch (IOException e) {
+            log.warn("Cannot accept cluster connection: {}", e.getMessage());
+        }
+    }
+
+    private void connect(Peer peer) {
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            peer.channel = channel;
+            if (channel.connect(peer.address)) {
+                peer.key = channel.register(selector, SelectionKey.OP_READ, peer);
+                opened(peer);
+            } else {
+                peer.key = channel.register(selector, SelectionKey.OP_CONNECT, peer);
+            }
+        } catch (IOException e) {
+            drop(peer, e);
+        }
+    }
+
+    private void finishConnect(Peer peer) throws IOException {
+        if (peer.channel.finishConnect()) {
+            peer.key.interestOps(SelectionKey.OP_READ);
+            opened(peer);
+        }
+    }
+
+    // Có secret: chờ challenge của phía bên kia rồi mới coi là đã kết nối
+    private void opened(Peer peer) {
+        if (secret == null) {
+            connected(peer);
+        }
+    }
+
+    private void connected(Peer peer) {
+        peer.connected = true;
+        log.info("Cluster node {} connected to {}", nodeId, peer.address);
+        for (Listener listener : listeners) {
+            try {
+                listener.onPeerConnected();
+            } catch (RuntimeException e) {
+                log.warn("Cluster listener failed on connect: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void drop(Peer peer, Exception cause) {
+        boolean wasConnected = peer.connected;
+        peer.connected = false;
+        if (peer.key != null) {
+            peer.key.cancel();
+        }
+        try {
+            if (peer.channel != null) {
+                peer.channel.close();
+            }
+        } catch (IOException ignored) {
+            // đang đóng
+        }
+        if (peer.address == null) {
+            return; // inbound: phía bên kia tự kết nối lại
+        }
+        // Outbound: bỏ event đang chờ, thử lại sau reconnect-delay
+        peer.channel = null;
+        peer.key = null;
+        peer.outbox.clear();
+        peer.pending.set(0);
+        peer.readBuffer.clear();
+        peer.reconnectAt = System.currentTimeMillis() + reconnectDelayMillis;
+        if (wasConnected) {
+            log.warn("Lost cluster peer {}: {}", peer.address, cause.getMessage());
+        } else {
+            log.debug("Cannot reach cluster peer {}: {}", peer.address, cause.getMessage());
+        }
+    }
+
+    // ================= FRAMES =================
+
+    private void read(Peer peer) throws IOException {
+        ByteBuffer buffer = peer.readBuffer;
+        if (peer.channel.read(buffer) < 0) {
+            throw new EOFException("closed by peer");
+        }
+        buffer.flip();
+        int needed = 0;
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            int max = secret != null && !peer.authenticated ? MAX_HANDSHAKE_FRAME : MAX_FRAME;
+            if (length < 0 || length > max) {
+                throw new IOException("bad cluster frame length " + length);
+            }
+            if (buffer.remaining() < 4 + length) {
+                needed = 4 + length;
+                break;
+            }
+            buffer.getInt();
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            received(peer, bytes);
+        }
+        if (needed > buffer.capacity()) {
+            // Frame lớn hơn buffer hiện tại: nới ra đúng cỡ frame
+            ByteBuffer bigger = ByteBuffer.allocate(needed);
+            bigger.put(buffer);
+            peer.readBuffer = bigger;
+        } else {
+            buffer.compact();
+        }
+    }
+
+    private void write(Peer peer) throws IOException {
+        ByteBuffer head;
+        while ((head = peer.outbox.peek()) != null) {
+            peer.channel.write(head);
+            if (head.hasRemaining()) {
+                return; // socket đầy, giữ OP_WRITE
+            }
+            peer.outbox.poll();
+            peer.pending.decrementAndGet();
+        }
+        peer.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void received(Peer peer, byte[] bytes) throws IOException {
+        if (peer.address != null) {
+            // Outbound chỉ nhận challenge: trả lời trước mọi event rồi mới bắt đầu gửi
+            if (secret != null && !peer.connected) {
+                peer.outbox.add(frame(sign(bytes)));
+                peer.pending.incrementAndGet();
+                peer.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                connected(peer);
+            }
+            return;
+        }
+        if (!peer.authenticated) {
+            if (!MessageDigest.isEqual(bytes, sign(peer.challenge))) {
+                log.warn("Rejected cluster connection from {}: bad handshake", peer.channel.getRemoteAddress());
+                throw new IOException("cluster handshake failed");
+            }
+            peer.authenticated = true;
+            peer.challenge = null;
+            return;
+        }
+        deliver(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    // Mac không thread-safe; chỉ gọi trên thread selector, mỗi kết nối một lần
+    private byte[] sign(byte[] challenge) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(secret);
+            return mac.doFinal(challenge);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ByteBuffer frame(byte[] bytes) {
+        return ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes).flip();
+    }
+
+    private void deliver(String text) {
+        ClusterEvent event;
+        try {
+            event = ClusterEvent.decode(text);
+        } catch (IllegalArgumentException e) {
+            log.warn("Dropping malformed cluster event: {}", e.getMessage());
+            return;
+        }
+        if (nodeId.equals(event.origin())) {
+            return;
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                log.warn("Cluster listener failed on {}: {}", event.type(), e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (selector == null) {
+            return;
+        }
+        selector.wakeup();
+        try {
+            ioThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+}
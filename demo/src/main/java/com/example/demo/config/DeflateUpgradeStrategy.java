@@ -0,0 +1,163 @@
+package com.example.demo.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.web.socket.server.standard.StandardWebSocketUpgradeStrategy;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.websocket.Decoder;
+import jakarta.websocket.Encoder;
+import jakarta.websocket.Extension;
+import jakarta.websocket.HandshakeResponse;
+import jakarta.websocket.server.HandshakeRequest;
+import jakarta.websocket.server.ServerEndpointConfig;
+
+/**
+ * Controls {@code permessage-deflate} on {@code /chat}.
+ *
+ * Tomcat negotiates the extension itself from the request headers, so it is
+ * switched off or tuned here, in the endpoint configurator Tomcat asks for
+ * the negotiated extensions. {@code server_no_context_takeover} resets the
+ * compressor after each message: worse ratio, but no 32 KB sliding window
+ * kept per connection.
+ */
+public class DeflateUpgradeStrategy extends StandardWebSocketUpgradeStrategy {
+
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final boolean enabled;
+    private final boolean noContextTakeover;
+
+    public DeflateUpgradeStrategy(boolean enabled, boolean noContextTakeover) {
+        this.enabled = enabled;
+        this.noContextTakeover = noContextTakeover;
+    }
+
+    @Override
+    protected void upgradeHttpToWebSocket(HttpServletRequest request, HttpServletResponse response,
+            ServerEndpointConfig endpointConfig, Map<String, String> pathParams) throws Exception {
+        super.upgradeHttpToWebSocket(request, response, new Config(endpointConfig), pathParams);
+    }
+
+    private List<Extension> negotiate(List<Extension> negotiated) {
+        List<Extension> result = new ArrayList<>(negotiated.size());
+        for (Extension extension : negotiated) {
+            if (!PERMESSAGE_DEFLATE.equals(extension.getName())) {
+                result.add(extension);
+            } else if (enabled) {
+                result.add(noContextTakeover ? withServerNoContextTakeover(extension) : extension);
+            }
+        }
+        return result;
+    }
+
+    private static Extension withServerNoContextTakeover(Extension extension) {
+        List<Extension.Parameter> parameters = new ArrayList<>(extension.getParameters());
+        if (parameters.stream().noneMatch(p -> "server_no_context_takeover".equals(p.getName()))) {
+            parameters.add(new Extension.Parameter() {
+                @Override
+                public String getName() {
+                    return "server_no_context_takeover";
+                }
+
+                @Override
+                public String getValue() {
+                    return null;
+                }
+            });
+        }
+        return new Extension() {
+            @Override
+            public String getName() {
+                return extension.getName();
+            }
+
+            @Override
+            public List<Parameter> getParameters() {
+                return parameters;
+            }
+        };
+    }
+
+    // Bọc config của Spring, chỉ thay bước chọn extension
+    private final class Config implements ServerEndpointConfig {
+
+        private final ServerEndpointConfig delegate;
+        private final Configurator configurator;
+
+        Config(ServerEndpointConfig delegate) {
+            this.delegate = delegate;
+            Configurator original = delegate.getConfigurator();
+            this.configurator = new Configurator() {
+                @Override
+                public String getNegotiatedSubprotocol(List<String> supported, List<String> requested) {
+                    return original.getNegotiatedSubprotocol(supported, requested);
+                }
+
+                @Override
+                public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+                    return negotiate(original.getNegotiatedExtensions(installed, requested));
+                }
+
+                @Override
+                public boolean checkOrigin(String originHeaderValue) {
+                    return original.checkOrigin(originHeaderValue);
+                }
+
+                @Override
+                public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request,
+                        HandshakeResponse response) {
+                    original.modifyHandshake(sec, request, response);
+                }
+
+                @Override
+                public <T> T getEndpointInstance(Class<T> endpointClass) throws InstantiationException {
+                    return original.getEndpointInstance(endpointClass);
+                }
+            };
+        }
+
+        @Override
+        public Class<?> getEndpointClass() {
+            return delegate.getEndpointClass();
+        }
+
+        @Override
+        public String getPath() {
+            return delegate.getPath();
+        }
+
+        @Override
+        public List<String> getSubprotocols() {
+            return delegate.getSubprotocols();
+        }
+
+        @Override
+        public List<Extension> getExtensions() {
+            return delegate.getExtensions();
+        }
+
+        @Override
+        public Configurator getConfigurator() {
+            return configurator;
+        }
+
+        @Override
+        public List<Class<? extends Encoder>> getEncoders() {
+            return delegate.getEncoders();
+        }
+
+        @Override
+        public List<Class<? extends Decoder>> getDecoders() {
+            return delegate.getDecoders();
+        }
+
+        @Override
+        public Map<String, Object> getUserProperties() {
+            return delegate.getUserProperties();
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.example.demo.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 
 import com.example.demo.ws.ChatHandler;
 
@@ -12,13 +14,21 @@ import com.example.demo.ws.ChatHandler;
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final ChatHandler chatHandler;
+    private final boolean deflate;
+    private final boolean deflateNoContextTakeover;
 
-    public WebSocketConfig(ChatHandler chatHandler) {
+    public WebSocketConfig(ChatHandler chatHandler,
+            @Value("${chat.websocket.deflate.enabled:true}") boolean deflate,
+            @Value("${chat.websocket.deflate.no-context-takeover:false}") boolean deflateNoContextTakeover) {
         this.chatHandler = chatHandler;
+        this.deflate = deflate;
+        this.deflateNoContextTakeover = deflateNoContextTakeover;
     }
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(chatHandler, "/chat")
+                .setHandshakeHandler(new DefaultHandshakeHandler(
+                        new DeflateUpgradeStrategy(deflate, deflateNoContextTakeover)))
                 .setAllowedOrigins("*");
     }
 }
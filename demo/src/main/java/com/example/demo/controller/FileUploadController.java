@@ -1,25 +1,48 @@
 package com.example.demo.controller;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.storage.BlobStore;
+import com.example.demo.storage.ChunkedUpload;
+import com.example.demo.storage.ChunkedUploads;
+import com.example.demo.storage.ThumbnailService;
+
+import jakarta.servlet.http.HttpServletRequest;
+
 @RestController
 @RequestMapping("/api/files")
 @CrossOrigin(origins = "*")
@@ -28,10 +51,30 @@ public class FileUploadController {
     private static final String UPLOAD_DIR = "uploads/";
     private static final long MAX_FILE_SIZE = 10L * 1024 * 1024 * 1024; // 1GB
 
-    // Map để lưu tên file gốc theo filename đã lưu
-    private final Map<String, String> originalFilenames = new ConcurrentHashMap<>();
+    // Tomcat sendfile (zero-copy), xem org.apache.catalina.servlets.DefaultServlet
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Chờ thumbnail đang render tối đa chừng này rồi mới trả ảnh gốc
+    private static final long THUMBNAIL_WAIT_MS = 2000;
+
+    // đuôi file -> Content-Type
+    private final Map<String, MediaType> contentTypes = new ConcurrentHashMap<>();
+
+    // Nội dung file + tên gốc + reference count, lưu bền vững (thay cho map originalFilenames)
+    private final BlobStore blobStore;
+    private final ChunkedUploads chunkedUploads;
+    private final ThumbnailService thumbnails;
+    private final ChatMetrics metrics;
 
-    public FileUploadController() {
+    public FileUploadController(BlobStore blobStore, ChunkedUploads chunkedUploads, ThumbnailService thumbnails,
+            ChatMetrics metrics) {
+        this.blobStore = blobStore;
+        this.chunkedUploads = chunkedUploads;
+        this.thumbnails = thumbnails;
+        this.metrics = metrics;
         try {
             Files.createDirectories(Paths.get(UPLOAD_DIR));
         } catch (IOException e) {
@@ -47,55 +90,268 @@ public class FileUploadController {
             }
 
 
-            String originalFilename = file.getOriginalFilename();
-            String extension = originalFilename.substring(originalFilename.lastIndexOf("."));
-            String filename = UUID.randomUUID().toString() + extension;
-            
-            Path filepath = Paths.get(UPLOAD_DIR, filename);
-            Files.copy(file.getInputStream(), filepath, StandardCopyOption.REPLACE_EXISTING);
+            // Hash SHA-256 ngay trong lúc copy; nội dung trùng chỉ thêm reference
+            BlobStore.FileEntry entry = blobStore.store(file.getInputStream(), file.getOriginalFilename());
+            metrics.uploaded(file.getSize());
+            return ResponseEntity.ok(fileResponse(entry));
 
-            // Lưu tên file gốc
-            originalFilenames.put(filename, originalFilename);
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                .body(Map.of("error", "Failed to upload file: " + e.getMessage()));
+        }
+    }
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("filename", filename);
-            response.put("url", "/api/files/" + filename);
-            response.put("type", getFileType(extension));
-            response.put("size", file.getSize());
+    // ================= CHUNKED UPLOAD =================
+    // POST /uploads {filename, size} -> PUT /uploads/{id}?offset=N (raw body, song song)
+    // -> POST /uploads/{id}/complete. GET /uploads/{id} cho biết chunk nào đã nhận để resume.
+    // Nội dung trùng chỉ được gộp sau khi server đã nhận và tự hash đủ các byte.
 
-            return ResponseEntity.ok(response);
+    @PostMapping("/uploads")
+    public ResponseEntity<?> initUpload(@RequestBody Map<String, Object> body) {
+        try {
+            Object filename = body.get("filename");
+            Object size = body.get("size");
+            if (!(filename instanceof String) || !(size instanceof Number)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "filename and size are required"));
+            }
+            ChunkedUpload upload = chunkedUploads.init((String) filename, ((Number) size).longValue());
+            return ResponseEntity.ok(uploadStatus(upload));
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (IOException e) {
             return ResponseEntity.internalServerError()
-                .body(Map.of("error", "Failed to upload file: " + e.getMessage()));
+                .body(Map.of("error", "Failed to start upload: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/uploads/{id}")
+    public ResponseEntity<?> getUpload(@PathVariable String id) {
+        ChunkedUpload upload = chunkedUploads.get(id);
+        if (upload == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(uploadStatus(upload));
+    }
+
+    @PutMapping(value = "/uploads/{id}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> putChunk(@PathVariable String id, @RequestParam long offset, HttpServletRequest request) {
+        ChunkedUpload upload = chunkedUploads.get(id);
+        if (upload == null) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            chunkedUploads.writeChunk(upload, offset, request.getInputStream());
+            metrics.uploaded(upload.chunkLength((int) (offset / upload.getChunkSize())));
+            return ResponseEntity.ok(Map.of("offset", offset, "received", upload.receivedChunks().size()));
+
+        } catch (IllegalStateException e) {
+            // Chunk đã nhận (hoặc đang ghi) không được ghi đè: nội dung có thể đã vào hash
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(uploadStatus(upload));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                .body(Map.of("error", "Failed to write chunk: " + e.getMessage()));
         }
     }
 
+    @PostMapping("/uploads/{id}/complete")
+    public ResponseEntity<?> completeUpload(@PathVariable String id) {
+        ChunkedUpload upload = chunkedUploads.get(id);
+        if (upload == null) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            return ResponseEntity.ok(fileResponse(chunkedUploads.complete(upload)));
+
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(uploadStatus(upload));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                .body(Map.of("error", "Failed to complete upload: " + e.getMessage()));
+        }
+    }
+
+    private Map<String, Object> uploadStatus(ChunkedUpload upload) {
+        Map<String, Object> status = new HashMap<>();
+        status.put("uploadId", upload.getId());
+        status.put("size", upload.getSize());
+        status.put("chunkSize", upload.getChunkSize());
+        status.put("received", upload.receivedChunks());
+        return status;
+    }
+
+    private Map<String, Object> fileResponse(BlobStore.FileEntry entry) {
+        // Ảnh: render thumbnail nền ngay, thường xong trước khi người nhận tải về
+        thumbnails.prefetch(entry);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("filename", entry.id());
+        response.put("url", "/api/files/" + entry.id());
+        response.put("type", getFileType(getExtension(entry.id())));
+        response.put("size", entry.size());
+        // Chỉ người upload có claim: gửi kèm FILE để tin của họ sở hữu file
+        response.put("claim", blobStore.claim(entry.id()));
+        response.put("thumbnail", thumbnails.thumbnailUrl("/api/files/" + entry.id()));
+        return response;
+    }
+
     @GetMapping("/{filename}")
-    public ResponseEntity<?> getFile(@PathVariable String filename) {
+    public ResponseEntity<?> getFile(@PathVariable String filename,
+            @RequestParam(required = false) String variant, HttpServletRequest request, WebRequest webRequest) {
         try {
-            Path filepath = Paths.get(UPLOAD_DIR, filename);
-            if (!Files.exists(filepath)) {
+            BlobStore.FileEntry entry = blobStore.get(filename);
+            Path filepath = resolveFile(filename, entry);
+            if (filepath == null) {
                 return ResponseEntity.notFound().build();
             }
 
-            byte[] fileContent = Files.readAllBytes(filepath);
-            String contentType = Files.probeContentType(filepath);
-            
-            // Lấy tên file gốc từ map
-            String originalFilename = originalFilenames.getOrDefault(filename, filename);
+            // ?variant=thumb: ảnh thu nhỏ nếu có, không thì rơi về file gốc
+            Path thumbnail = "thumb".equals(variant) && entry != null ? thumbnail(entry) : null;
+            if (thumbnail != null) {
+                filepath = thumbnail;
+            }
+
+            long size = Files.size(filepath);
+            long lastModified = Files.getLastModifiedTime(filepath).toMillis();
+            // Blob theo nội dung -> hash chính là strong ETag; file cũ thì dựa vào size + mtime
+            String etag = entry != null ? "\"" + entry.hash() + (thumbnail != null ? "-thumb" : "") + "\""
+                    : "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+
+            // If-None-Match / If-Modified-Since -> 304, không gửi lại nội dung
+            if (webRequest.checkNotModified(etag, lastModified)) {
+                return null;
+            }
+
+            String originalFilename = entry != null ? entry.originalName() : filename;
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(getContentType(thumbnail != null ? thumbnail.getFileName().toString() : filename));
+            headers.setContentDisposition((thumbnail != null ? ContentDisposition.inline() : ContentDisposition.attachment())
+                    .filename(originalFilename, StandardCharsets.UTF_8).build());
+            headers.setETag(etag);
+            headers.setLastModified(lastModified);
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+            List<HttpRange> ranges = requestedRanges(request, etag, lastModified);
+            if (ranges.size() > 1) {
+                // Multipart byteranges: để Spring ghi từng ResourceRegion (vẫn stream, không load cả file)
+                for (HttpRange range : ranges) {
+                    metrics.downloaded(range.getRangeEnd(size) - range.getRangeStart(size) + 1);
+                }
+                return ResponseEntity.ok().headers(headers).body(new FileSystemResource(filepath));
+            }
+
+            long start = 0;
+            long end = size - 1;
+            HttpStatus status = HttpStatus.OK;
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(size);
+                end = ranges.get(0).getRangeEnd(size);
+                status = HttpStatus.PARTIAL_CONTENT;
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+            headers.setContentLength(end - start + 1);
+            metrics.downloaded(end - start + 1);
 
-            return ResponseEntity.ok()
-                .header("Content-Type", contentType != null ? contentType : "application/octet-stream")
-                .header("Content-Disposition", "attachment; filename=\"" + originalFilename + "\"")
-                .body(fileContent);
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // Zero-copy: Tomcat gửi thẳng file -> socket bằng sendfile, không qua heap
+                request.setAttribute(SENDFILE_FILENAME, filepath.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end + 1);
+                return ResponseEntity.status(status).headers(headers).build();
+            }
 
+            Resource body = new FileSystemResource(filepath);
+            if (status == HttpStatus.PARTIAL_CONTENT) {
+                return ResponseEntity.status(status).headers(headers).body(new ResourceRegion(body, start, end - start + 1));
+            }
+            return ResponseEntity.ok().headers(headers).body(body);
+
+        } catch (IllegalArgumentException e) {
+            // Range không hợp lệ hoặc vượt quá kích thước file
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSizeOrZero(filename))
+                    .build();
         } catch (IOException e) {
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    private Path thumbnail(BlobStore.FileEntry entry) {
+        if (!thumbnails.supports(entry)) {
+            return null;
+        }
+        try {
+            return thumbnails.thumbnail(entry).get(THUMBNAIL_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    // File trong blob store, hoặc file cũ nằm thẳng trong uploads/ (chưa migrate)
+    private Path resolveFile(String filename, BlobStore.FileEntry entry) {
+        if (entry != null) {
+            return blobStore.blobPath(entry.hash());
+        }
+        Path filepath = Paths.get(UPLOAD_DIR, filename).normalize();
+        if (!filepath.startsWith(Paths.get(UPLOAD_DIR)) || !Files.isRegularFile(filepath)) {
+            return null;
+        }
+        return filepath;
+    }
+
+    // Range header, bỏ qua nếu If-Range không còn khớp với file hiện tại
+    private List<HttpRange> requestedRanges(HttpServletRequest request, String etag, long lastModified) {
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range == null) {
+            return List.of();
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(etag)) {
+            long ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+            if (ifRangeDate == -1 || lastModified / 1000 > ifRangeDate / 1000) {
+                return List.of();
+            }
+        }
+        return HttpRange.parseRanges(range);
+    }
+
+    private long fileSizeOrZero(String filename) {
+        try {
+            return Files.size(resolveFile(filename, blobStore.get(filename)));
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+
+    // Content-Type theo đuôi file, tra một lần rồi cache (probeContentType chạm đĩa mỗi lần gọi)
+    private MediaType getContentType(String filename) {
+        int dot = filename.lastIndexOf('.');
+        String extension = dot >= 0 ? filename.substring(dot).toLowerCase() : "";
+        return contentTypes.computeIfAbsent(extension, ext -> MediaTypeFactory.getMediaType(filename)
+                .orElseGet(() -> probeContentType(filename)));
+    }
+
+    private MediaType probeContentType(String filename) {
+        try {
+            String probed = Files.probeContentType(Paths.get(UPLOAD_DIR, filename));
+            return probed != null ? MediaType.parseMediaType(probed) : MediaType.APPLICATION_OCTET_STREAM;
+        } catch (IOException | RuntimeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    private String getExtension(String originalFilename) {
+        int dot = originalFilename != null ? originalFilename.lastIndexOf('.') : -1;
+        return dot >= 0 ? originalFilename.substring(dot) : "";
+    }
+
     private String getFileType(String extension) {
         extension = extension.toLowerCase();
         if (extension.matches("\\.(jpg|jpeg|png|gif|webp)")) return "image";
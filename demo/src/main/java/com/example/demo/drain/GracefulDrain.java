@@ -0,0 +1,135 @@
+package com.example.demo.drain;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.history.HistoryStore;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.ChatSession;
+import com.example.demo.ws.OutboundDispatcher;
+
+/**
+ * Drains the node on shutdown instead of dropping every socket at once.
+ *
+ * Stopping the application context, before the web server goes down, it
+ * <ol>
+ * <li>refuses new JOINs and RESUMEs (they get a {@code RECONNECT} too),</li>
+ * <li>sends every client {@code RECONNECT|delayMs}, the delays spread
+ * at random over {@code chat.drain.reconnect-spread} or more so that at most
+ * {@code chat.drain.reconnect-rate} clients per second come back,</li>
+ * <li>waits up to {@code chat.drain.flush-timeout} for the outbound queues
+ * to empty and makes the room history durable,</li>
+ * <li>closes the sockets with 1012 (service restart).</li>
+ * </ol>
+ * Clients then come back with {@code RESUME} and only fetch what they missed.
+ */
+@Component
+public class GracefulDrain implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(GracefulDrain.class);
+
+    private final ChatRegistry registry;
+    private final OutboundDispatcher outbound;
+    private final HistoryStore chatHistory;
+    private final long minDelayMillis;
+    private final long spreadMillis;
+    private final int reconnectRate;
+    private final long flushTimeoutMillis;
+
+    private volatile boolean running;
+    private volatile boolean draining;
+    // Cửa sổ rải RECONNECT của lần drain hiện tại
+    private volatile long currentSpreadMillis;
+
+    public GracefulDrain(ChatRegistry registry, OutboundDispatcher outbound, HistoryStore chatHistory,
+            @Value("${chat.drain.reconnect-min-delay:500ms}") Duration minDelay,
+            @Value("${chat.drain.reconnect-spread:10s}") Duration spread,
+            @Value("${chat.drain.reconnect-rate:1000}") int reconnectRate,
+            @Value("${chat.drain.flush-timeout:5s}") Duration flushTimeout) {
+        this.registry = registry;
+        this.outbound = outbound;
+        this.chatHistory = chatHistory;
+        this.minDelayMillis = minDelay.toMillis();
+        this.spreadMillis = spread.toMillis();
+        this.reconnectRate = Math.max(1, reconnectRate);
+        this.flushTimeoutMillis = flushTimeout.toMillis();
+        this.currentSpreadMillis = spreadMillis;
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Tells the client to come back (to this node after a restart, or to
+     * another one) after a random delay.
+     */
+    public void sendReconnect(WebSocketSession session) {
+        long delay = minDelayMillis + ThreadLocalRandom.current().nextLong(Math.max(1, currentSpreadMillis));
+        registry.send(session, ChatCodec.encode("RECONNECT", Long.toString(delay)));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        long started = System.nanoTime();
+        draining = true;
+        List<WebSocketSession> open = new ArrayList<>();
+        for (ChatSession state : registry.sessions()) {
+            if (state.socket().isOpen()) {
+                open.add(state.socket());
+            }
+        }
+        // Nhiều client thì rải rộng hơn để mỗi giây không quá reconnect-rate người quay lại
+        currentSpreadMillis = Math.max(spreadMillis, open.size() * 1000L / reconnectRate);
+        for (WebSocketSession session : open) {
+            sendReconnect(session);
+        }
+
+        // RECONNECT xếp sau mọi frame đang chờ: queue rỗng là client đã nhận đủ
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushTimeoutMillis);
+        while (outbound.totalBacklog() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        chatHistory.flush();
+
+        for (WebSocketSession session : open) {
+            try {
+                session.close(CloseStatus.SERVICE_RESTARTED);
+            } catch (IOException e) {
+                // đã đóng
+            }
+        }
+        running = false;
+        log.info("Drained {} sessions in {} ms (outbound backlog left {}, reconnects spread over {} ms)",
+                open.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), outbound.totalBacklog(),
+                currentSpreadMillis);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
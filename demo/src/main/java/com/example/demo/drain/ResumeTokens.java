@@ -0,0 +1,136 @@
+package com.example.demo.drain;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.history.HistoryStore;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatSession;
+
+/**
+ * Session tokens sent as {@code SESSION|token} after a JOIN and presented
+ * back in {@code RESUME|token|lastSeq} after a reconnect.
+ *
+ * A token carries the user, room and avatar plus the
+ * {@link HistoryStore#generation generation} of the room it was issued in,
+ * signed with HMAC-SHA256. A token is only good for that incarnation of the
+ * room on a store with the same numbering: once the room is deleted and
+ * created again, or on another node, the client has to JOIN again.
+ *
+ * Without a configured {@code chat.resume.secret} a random key is generated
+ * once and kept in {@code chat.resume.key-file}, which is enough for a
+ * single node to restart.
+ */
+@Component
+public class ResumeTokens {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * What a valid token says about the session it was issued to.
+     */
+    public record Claims(String user, String room, String avatar, String generation) {
+    }
+
+    private final HistoryStore chatHistory;
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+
+    public ResumeTokens(HistoryStore chatHistory,
+            @Value("${chat.resume.secret:}") String secret,
+            @Value("${chat.resume.key-file:data/resume.key}") String keyFile,
+            @Value("${chat.resume.token-ttl:24h}") Duration ttl) {
+        this.chatHistory = chatHistory;
+        byte[] keyBytes = secret.isEmpty() ? loadOrCreateKey(Paths.get(keyFile))
+                : secret.getBytes(StandardCharsets.UTF_8);
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    private static byte[] loadOrCreateKey(Path file) {
+        try {
+            if (!Files.exists(file)) {
+                byte[] generated = new byte[32];
+                new SecureRandom().nextBytes(generated);
+                if (file.getParent() != null) {
+                    Files.createDirectories(file.getParent());
+                }
+                Files.write(file, generated);
+            }
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read resume key " + file, e);
+        }
+    }
+
+    public String issue(ChatSession state) {
+        return issue(state.user(), state.roomName(), state.avatar());
+    }
+
+    public String issue(String user, String room, String avatar) {
+        String expiresAt = Long.toString(System.currentTimeMillis() + ttlMillis);
+        byte[] payload = ChatCodec.encode(user, room, avatar, chatHistory.generation(room), expiresAt)
+                .getBytes(StandardCharsets.UTF_8);
+        Base64.Encoder base64 = Base64.getUrlEncoder().withoutPadding();
+        return base64.encodeToString(payload) + "." + base64.encodeToString(sign(payload));
+    }
+
+    /**
+     * The claims of a token, or {@code null} if it is forged, malformed,
+     * expired or for another incarnation of the room.
+     */
+    public Claims verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = Base64.getUrlDecoder().decode(token.substring(0, dot));
+            signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(signature, sign(payload))) {
+            return null;
+        }
+        ChatMessage fields = ChatCodec.decode(new String(payload, StandardCharsets.UTF_8));
+        if (fields.size() < 5 || fields.getLong(4) < System.currentTimeMillis()) {
+            return null;
+        }
+        Claims claims = new Claims(fields.get(0), fields.get(1), fields.get(2), fields.get(3));
+        // Phòng đã bị xóa (rồi tạo lại, seq bắt đầu lại) hoặc token của node khác; không tạo phòng khi kiểm tra
+        if (!claims.generation().equals(chatHistory.existingGeneration(claims.room()))) {
+            return null;
+        }
+        return claims;
+    }
+
+    // Mac không thread-safe; JOIN/RESUME đủ hiếm để tạo mới mỗi lần
+    private byte[] sign(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
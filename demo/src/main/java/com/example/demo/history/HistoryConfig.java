@@ -0,0 +1,24 @@
+package com.example.demo.history;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Picks the {@link HistoryStore} from {@code chat.history.store}.
+ */
+@Configuration
+public class HistoryConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "chat.history.store", havingValue = "memory", matchIfMissing = true)
+    public HistoryStore inMemoryHistoryStore(HistoryProperties properties) {
+        return new InMemoryHistoryStore(properties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "chat.history.store", havingValue = "log")
+    public HistoryStore logHistoryStore(HistoryProperties properties) {
+        return new LogHistoryStore(properties);
+    }
+}
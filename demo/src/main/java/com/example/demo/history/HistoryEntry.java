@@ -0,0 +1,7 @@
+package com.example.demo.history;
+
+/**
+ * One stored chat frame and its per-room sequence number.
+ */
+public record HistoryEntry(long seq, String message) {
+}
@@ -0,0 +1,164 @@
+package com.example.demo.history;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * {@code chat.history.*} settings from application.properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "chat.history")
+public class HistoryProperties {
+
+    // memory: chỉ giữ trong RAM | log: ghi xuống segment file, còn sau khi restart
+    private String store = "memory";
+
+    // Số tin nhắn giữ lại mặc định cho mỗi phòng
+    private int capacity = 500;
+
+    // Sức chứa riêng cho từng phòng: chat.history.rooms.<tên phòng>=<số tin>
+    private Map<String, Integer> rooms = new HashMap<>();
+
+    // Tổng bộ nhớ (ước lượng) cho lịch sử của tất cả các phòng
+    private DataSize maxMemory = DataSize.ofMegabytes(64);
+
+    // Số tin nhắn gửi kèm HISTORY_BATCH khi JOIN, phần cũ hơn client tự tải bằng HISTORY_BEFORE
+    private int joinBatch = 50;
+
+    // Giới hạn limit tối đa của một HISTORY_BEFORE
+    private int maxPage = 200;
+
+    private final Log log = new Log();
+
+    public int capacityFor(String room) {
+        return rooms.getOrDefault(room, capacity);
+    }
+
+    public String getStore() {
+        return store;
+    }
+
+    public void setStore(String store) {
+        this.store = store;
+    }
+
+    public int getJoinBatch() {
+        return joinBatch;
+    }
+
+    public void setJoinBatch(int joinBatch) {
+        this.joinBatch = joinBatch;
+    }
+
+    public int getMaxPage() {
+        return maxPage;
+    }
+
+    public void setMaxPage(int maxPage) {
+        this.maxPage = maxPage;
+    }
+
+    public Log getLog() {
+        return log;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public Map<String, Integer> getRooms() {
+        return rooms;
+    }
+
+    public void setRooms(Map<String, Integer> rooms) {
+        this.rooms = rooms;
+    }
+
+    public DataSize getMaxMemory() {
+        return maxMemory;
+    }
+
+    public void setMaxMemory(DataSize maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * {@code chat.history.log.*}: settings of the append-only segment log.
+     */
+    public static class Log {
+
+        private String dir = "data/history";
+
+        // Mỗi segment được map trọn vào bộ nhớ, đầy thì sang segment mới
+        private DataSize segmentSize = DataSize.ofMegabytes(16);
+
+        // Số segment giữ lại mỗi phòng, segment cũ hơn bị xóa
+        private int retentionSegments = 8;
+
+        // Group commit: fsync tất cả segment bẩn sau mỗi khoảng này
+        private Duration flushInterval = Duration.ofMillis(50);
+
+        // Sparse index: một mục cho mỗi N record
+        private int indexInterval = 64;
+
+        // Số phòng giữ log mở (segment đang map), phòng ít dùng nhất bị đóng và mở lại khi cần
+        private int maxOpenRooms = 128;
+
+        public String getDir() {
+            return dir;
+        }
+
+        public void setDir(String dir) {
+            this.dir = dir;
+        }
+
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(DataSize segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public int getRetentionSegments() {
+            return retentionSegments;
+        }
+
+        public void setRetentionSegments(int retentionSegments) {
+            this.retentionSegments = retentionSegments;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getIndexInterval() {
+            return indexInterval;
+        }
+
+        public void setIndexInterval(int indexInterval) {
+            this.indexInterval = indexInterval;
+        }
+
+        public int getMaxOpenRooms() {
+            return maxOpenRooms;
+        }
+
+        public void setMaxOpenRooms(int maxOpenRooms) {
+            this.maxOpenRooms = maxOpenRooms;
+        }
+    }
+}
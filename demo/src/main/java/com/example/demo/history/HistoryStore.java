@@ -0,0 +1,90 @@
+package com.example.demo.history;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Storage for room chat history.
+ *
+ * Every appended frame gets a per-room sequence number starting at 1, which
+ * later reads use as their position.
+ */
+public interface HistoryStore {
+
+    /**
+     * Told about every frame that leaves the history, through retention or
+     * {@link #remove}, so what the frame references (an uploaded file) can be
+     * released. Called under the room's lock: keep it short.
+     */
+    interface EvictionListener {
+
+        void evicted(String room, HistoryEntry entry);
+    }
+
+    /**
+     * Appends a frame to the room's history.
+     *
+     * @return the sequence number assigned to the frame
+     */
+    long append(String room, String message);
+
+    /**
+     * The newest {@code limit} frames of the room, oldest first.
+     */
+    List<HistoryEntry> latest(String room, int limit);
+
+    /**
+     * Up to {@code limit} frames immediately before {@code seq}, oldest first.
+     * Used for scroll-back.
+     */
+    List<HistoryEntry> before(String room, long seq, int limit);
+
+    /**
+     * Up to {@code limit} frames immediately after {@code seq}, oldest first.
+     */
+    List<HistoryEntry> after(String room, long seq, int limit);
+
+    /**
+     * Rooms that currently have history.
+     */
+    Set<String> rooms();
+
+    /**
+     * Drops the whole history of a room.
+     */
+    void remove(String room);
+
+    /**
+     * Identifies the numbering of this store: a sequence number obtained
+     * from a store with another epoch (another node, or a memory store that
+     * has restarted since) says nothing about this one.
+     */
+    String epoch();
+
+    /**
+     * Identifies the current numbering of one room. It changes whenever the
+     * room's seqs start again from 1: the room was removed and written to
+     * anew, or the store lost it. Creates the room's (empty) history if
+     * needed, so the generation is fixed from the first JOIN on.
+     */
+    String generation(String room);
+
+    /**
+     * Like {@link #generation(String)}, but {@code null} for a room without
+     * history instead of creating it.
+     */
+    String existingGeneration(String room);
+
+    void setEvictionListener(EvictionListener listener);
+
+    /**
+     * Estimated bytes of history held, for metrics.
+     */
+    long totalBytes();
+
+    /**
+     * Makes every appended frame durable. A no-op for stores that are not.
+     */
+    default void flush() {
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.demo.history;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link HistoryStore} keeping each room in a bounded {@link RoomHistory}
+ * ring buffer. Nothing survives a restart.
+ *
+ * Besides each room's own capacity, the total estimated size of all rooms is
+ * held under {@code chat.history.max-memory}; when it is exceeded the rooms
+ * that were idle the longest give up their oldest messages first.
+ */
+public class InMemoryHistoryStore implements HistoryStore {
+
+    private final Map<String, RoomHistory> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // Seq bắt đầu lại từ 1 sau mỗi lần restart
+    private final String epoch = UUID.randomUUID().toString();
+    private volatile EvictionListener evictionListener = (room, entry) -> {
+    };
+
+    private final HistoryProperties properties;
+
+    public InMemoryHistoryStore(HistoryProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public long append(String room, String message) {
+        RoomHistory history = historyOf(room);
+        long seq;
+        synchronized (history) {
+            totalBytes.addAndGet(history.append(message));
+            seq = history.lastSeq();
+        }
+        if (totalBytes.get() > properties.getMaxMemory().toBytes()) {
+            enforceBudget();
+        }
+        return seq;
+    }
+
+    @Override
+    public String epoch() {
+        return epoch;
+    }
+
+    private RoomHistory historyOf(String room) {
+        return rooms.computeIfAbsent(room,
+                r -> new RoomHistory(properties.capacityFor(r), entry -> evictionListener.evicted(r, entry)));
+    }
+
+    @Override
+    public String generation(String room) {
+        return historyOf(room).generation();
+    }
+
+    @Override
+    public String existingGeneration(String room) {
+        RoomHistory history = rooms.get(room);
+        return history != null ? history.generation() : null;
+    }
+
+    @Override
+    public List<HistoryEntry> latest(String room, int limit) {
+        RoomHistory history = rooms.get(room);
+        return history != null ? history.latest(limit) : Collections.emptyList();
+    }
+
+    @Override
+    public List<HistoryEntry> before(String room, long seq, int limit) {
+        RoomHistory history = rooms.get(room);
+        return history != null ? history.before(seq, limit) : Collections.emptyList();
+    }
+
+    @Override
+    public List<HistoryEntry> after(String room, long seq, int limit) {
+        RoomHistory history = rooms.get(room);
+        return history != null ? history.after(seq, limit) : Collections.emptyList();
+    }
+
+    @Override
+    public Set<String> rooms() {
+        return Collections.unmodifiableSet(rooms.keySet());
+    }
+
+    @Override
+    public void remove(String room) {
+        RoomHistory history = rooms.remove(room);
+        if (history != null) {
+            totalBytes.addAndGet(-history.bytes());
+            for (HistoryEntry entry : history.latest(history.capacity())) {
+                evictionListener.evicted(room, entry);
+            }
+        }
+    }
+
+    @Override
+    public void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    @Override
+    public long totalBytes() {
+        return totalBytes.get();
+    }
+
+    // Bỏ tin cũ của các phòng idle lâu nhất cho tới khi về dưới 90% budget
+    private void enforceBudget() {
+        if (!evictionLock.tryLock()) {
+            return; // thread khác đang dọn
+        }
+        try {
+            long budget = properties.getMaxMemory().toBytes();
+            long target = budget - budget / 10;
+            if (totalBytes.get() <= budget) {
+                return;
+            }
+
+            List<RoomHistory> byIdle = new ArrayList<>(rooms.values());
+            byIdle.sort(Comparator.comparingLong(RoomHistory::lastAccess));
+            for (RoomHistory history : byIdle) {
+                long excess = totalBytes.get() - target;
+                if (excess <= 0) {
+                    break;
+                }
+                totalBytes.addAndGet(-history.evict(excess));
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.example.demo.history;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * {@link HistoryStore} writing every room to its own directory of
+ * memory-mapped, append-only segment files.
+ *
+ * Appends only copy into the mapped segment; a background task forces dirty
+ * segments to disk every {@code chat.history.log.flush-interval} (group
+ * commit), so a crash loses at most that window. On startup all rooms are
+ * recovered by scanning their segments.
+ *
+ * At most {@code chat.history.log.max-open-rooms} room logs stay open; the
+ * least recently used one is closed (its segments synced and dropped, the
+ * mappings themselves go away once collected) and reopened by the next read
+ * or append. Opening a log scans its segments outside the store-wide lock.
+ */
+public class LogHistoryStore implements HistoryStore, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(LogHistoryStore.class);
+
+    // Tên thư mục base64 dài hơn thế này -> dùng hash (giới hạn 255 byte của filesystem)
+    private static final int MAX_NAME_LENGTH = 200;
+
+    // Mọi phòng có lịch sử trên đĩa, kể cả phòng đang đóng
+    private final Set<String> rooms = ConcurrentHashMap.newKeySet();
+    // Phòng đang mở theo thứ tự LRU; chỉ truy cập khi giữ lock của chính map
+    private final LinkedHashMap<String, RoomLog> open = new LinkedHashMap<>(16, 0.75f, true);
+    // Dung lượng của phòng đang đóng, để totalBytes() không phải mở lại
+    private final Map<String, Long> closedBytes = new ConcurrentHashMap<>();
+    // Phòng đang được mở, đóng hoặc xóa ngoài lock -> future xong khi làm xong; chỉ truy cập khi giữ lock của open
+    private final Map<String, CompletableFuture<Void>> pending = new HashMap<>();
+
+    private final Path root;
+    private final int segmentSize;
+    private final int retentionSegments;
+    private final int indexInterval;
+    private final int maxOpenRooms;
+    private final ScheduledExecutorService flusher;
+    private String epoch;
+    private volatile EvictionListener evictionListener = (room, entry) -> {
+    };
+
+    public LogHistoryStore(HistoryProperties properties) {
+        HistoryProperties.Log config = properties.getLog();
+        this.root = Paths.get(config.getDir());
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE, config.getSegmentSize().toBytes());
+        this.retentionSegments = Math.max(1, config.getRetentionSegments());
+        this.indexInterval = Math.max(1, config.getIndexInterval());
+        this.maxOpenRooms = Math.max(1, config.getMaxOpenRooms());
+
+        recover();
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "history-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(1, config.getFlushInterval().toMillis());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void recover() {
+        long started = System.nanoTime();
+        try {
+            Files.createDirectories(root);
+            // Seq còn nguyên qua restart: epoch tạo một lần, cùng thư mục log
+            Path epochFile = root.resolve("EPOCH");
+            if (!Files.exists(epochFile)) {
+                Files.writeString(epochFile, UUID.randomUUID().toString());
+            }
+            epoch = Files.readString(epochFile).trim();
+            List<Path> dirs;
+            try (Stream<Path> list = Files.list(root)) {
+                dirs = list.filter(Files::isDirectory).toList();
+            }
+            // Mỗi phòng một thư mục độc lập -> recover song song; quá maxOpenRooms thì đóng ngay sau khi quét
+            dirs.parallelStream().forEach(this::recover);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open history log in " + root, e);
+        }
+        log.info("Recovered history of {} rooms from {} in {} ms", rooms.size(), root.toAbsolutePath(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private void recover(Path dir) {
+        String room = roomOf(dir);
+        if (room == null) {
+            log.warn("Skipping {}: not a room history directory", dir);
+            return;
+        }
+        try {
+            // Thư mục cũ đặt tên base64 quá dài -> chuyển sang tên hash
+            Path target = dirOf(room);
+            if (!dir.equals(target)) {
+                Files.move(dir, target);
+            }
+            RoomLog roomLog = open(room);
+            rooms.add(room);
+            synchronized (open) {
+                if (open.size() < maxOpenRooms) {
+                    open.put(room, roomLog);
+                    return;
+                }
+            }
+            close(room, roomLog);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Skipping history of room {} in {}: {}", room, dir, e.getMessage());
+        }
+    }
+
+    // Tên phòng của một thư mục: file ROOM, hoặc tên thư mục base64 với thư mục tạo trước khi có file ROOM
+    private static String roomOf(Path dir) {
+        try {
+            Path roomFile = dir.resolve(RoomLog.ROOM_FILE);
+            if (Files.exists(roomFile)) {
+                return Files.readString(roomFile);
+            }
+            String name = dir.getFileName().toString();
+            String room = new String(Base64.getUrlDecoder().decode(name), StandardCharsets.UTF_8);
+            return encode(room).equals(name) ? room : null;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private RoomLog open(String room) {
+        try {
+            return new RoomLog(dirOf(room), room, segmentSize, retentionSegments, indexInterval,
+                    entry -> evictionListener.evicted(room, entry));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open history log of room " + room, e);
+        }
+    }
+
+    // Tên phòng tùy ý (có dấu, khoảng trắng...) -> tên thư mục an toàn; tên thật nằm trong file ROOM
+    private Path dirOf(String room) {
+        String name = encode(room);
+        if (name.length() > MAX_NAME_LENGTH) {
+            name = "h" + sha256(room.getBytes(StandardCharsets.UTF_8));
+        }
+        return root.resolve(name);
+    }
+
+    private static String encode(String room) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(room.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The open log of the room, opened (and created if {@code create}) when
+     * needed; null if the room has no history. Opening past
+     * {@code maxOpenRooms} closes the least recently used log.
+     */
+    private RoomLog acquire(String room, boolean create) {
+        CompletableFuture<Void> opening = new CompletableFuture<>();
+        while (true) {
+            CompletableFuture<Void> busy;
+            synchronized (open) {
+                RoomLog roomLog = open.get(room);
+                if (roomLog != null || !create && !rooms.contains(room)) {
+                    return roomLog;
+                }
+                busy = pending.putIfAbsent(room, opening);
+            }
+            if (busy == null) {
+                return openPending(room, opening);
+            }
+            // Thread khác đang mở, đóng hoặc xóa phòng này: chờ xong rồi xem lại
+            busy.join();
+        }
+    }
+
+    // Quét segment ngoài lock chung: mở một phòng lớn không chặn các phòng khác
+    private RoomLog openPending(String room, CompletableFuture<Void> opening) {
+        List<Map.Entry<String, RoomLog>> evicted = new ArrayList<>();
+        try {
+            RoomLog roomLog = open(room);
+            synchronized (open) {
+                rooms.add(room);
+                closedBytes.remove(room);
+                open.put(room, roomLog);
+                Iterator<Map.Entry<String, RoomLog>> eldest = open.entrySet().iterator();
+                while (open.size() > maxOpenRooms) {
+                    Map.Entry<String, RoomLog> entry = eldest.next();
+                    eldest.remove();
+                    // Phòng bị đóng cũng chờ future này: không mở lại song song với lần đóng
+                    pending.put(entry.getKey(), opening);
+                    evicted.add(entry);
+                }
+            }
+            for (Map.Entry<String, RoomLog> entry : evicted) {
+                close(entry.getKey(), entry.getValue());
+            }
+            return roomLog;
+        } finally {
+            synchronized (open) {
+                pending.remove(room, opening);
+                evicted.forEach(entry -> pending.remove(entry.getKey(), opening));
+            }
+            opening.complete(null);
+        }
+    }
+
+    // Chạy op trên log của phòng; log bị đóng giữa lúc lấy và lúc dùng thì mở lại; null nếu phòng không có lịch sử
+    private <T> T withLog(String room, boolean create, Function<RoomLog, T> op) {
+        while (true) {
+            RoomLog roomLog = acquire(room, create);
+            if (roomLog == null) {
+                return null;
+            }
+            synchronized (roomLog) {
+                if (!roomLog.isClosed()) {
+                    return op.apply(roomLog);
+                }
+            }
+        }
+    }
+
+    private void close(String room, RoomLog roomLog) {
+        try {
+            closedBytes.put(room, roomLog.bytes());
+            roomLog.close();
+        } catch (IOException e) {
+            log.warn("Cannot close history log of room {}: {}", room, e.getMessage());
+        }
+    }
+
+    private List<RoomLog> openLogs() {
+        synchronized (open) {
+            return new ArrayList<>(open.values());
+        }
+    }
+
+    private static List<HistoryEntry> orEmpty(List<HistoryEntry> entries) {
+        return entries != null ? entries : new ArrayList<>();
+    }
+
+    @Override
+    public String epoch() {
+        return epoch;
+    }
+
+    @Override
+    public String generation(String room) {
+        return acquire(room, true).generation();
+    }
+
+    @Override
+    public String existingGeneration(String room) {
+        return withLog(room, false, RoomLog::generation);
+    }
+
+    @Override
+    public long append(String room, String message) {
+        return withLog(room, true, roomLog -> roomLog.append(message));
+    }
+
+    @Override
+    public List<HistoryEntry> latest(String room, int limit) {
+        return orEmpty(withLog(room, false, roomLog -> roomLog.latest(limit)));
+    }
+
+    @Override
+    public List<HistoryEntry> before(String room, long seq, int limit) {
+        return orEmpty(withLog(room, false, roomLog -> roomLog.before(seq, limit)));
+    }
+
+    @Override
+    public List<HistoryEntry> after(String room, long seq, int limit) {
+        return orEmpty(withLog(room, false, roomLog -> roomLog.after(seq, limit)));
+    }
+
+    @Override
+    public Set<String> rooms() {
+        return Collections.unmodifiableSet(rooms);
+    }
+
+    @Override
+    public void remove(String room) {
+        CompletableFuture<Void> deleting = new CompletableFuture<>();
+        RoomLog roomLog;
+        while (true) {
+            CompletableFuture<Void> busy;
+            synchronized (open) {
+                if (!rooms.contains(room)) {
+                    return;
+                }
+                busy = pending.putIfAbsent(room, deleting);
+                if (busy == null) {
+                    rooms.remove(room);
+                    closedBytes.remove(room);
+                    roomLog = open.remove(room);
+                    break;
+                }
+            }
+            busy.join();
+        }
+        try {
+            // Phòng đang đóng: mở lại để báo các tin bị xóa cho EvictionListener
+            (roomLog != null ? roomLog : open(room)).delete();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot delete history of room {}: {}", room, e.getMessage());
+        } finally {
+            synchronized (open) {
+                pending.remove(room, deleting);
+            }
+            deleting.complete(null);
+        }
+    }
+
+    @Override
+    public void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    @Override
+    public void flush() {
+        // Log bị đóng giữa chừng đã tự sync trong close(), takeDirty() trả về rỗng
+        for (RoomLog roomLog : openLogs()) {
+            for (LogSegment segment : roomLog.takeDirty()) {
+                segment.sync();
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("History flush failed: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public long totalBytes() {
+        long total = 0;
+        for (RoomLog roomLog : openLogs()) {
+            total += roomLog.bytes();
+        }
+        for (long bytes : closedBytes.values()) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        for (RoomLog roomLog : openLogs()) {
+            roomLog.close();
+        }
+    }
+}
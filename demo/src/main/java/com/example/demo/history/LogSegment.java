@@ -0,0 +1,217 @@
+package com.example.demo.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * One memory-mapped, preallocated segment file of a room log.
+ *
+ * Record layout: {@code int length | long seq | int crc32c | payload}. A zero
+ * length marks the end of written data; recovery also stops at the first
+ * record whose checksum or sequence number does not match (torn write).
+ * Not thread-safe, {@link RoomLog} serializes access.
+ */
+class LogSegment {
+
+    static final int HEADER = 16;
+
+    private final Path path;
+    private final long baseSeq;
+    private final int indexInterval;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final CRC32C crc = new CRC32C();
+
+    private int writePos;
+    private long nextSeq;
+    private int records;
+    private boolean dirty;
+
+    // Sparse index: seq và vị trí của mỗi record thứ indexInterval
+    private long[] indexSeqs = new long[16];
+    private int[] indexPositions = new int[16];
+    private int indexSize;
+
+    private LogSegment(Path path, long baseSeq, int size, int indexInterval) throws IOException {
+        this.path = path;
+        this.baseSeq = baseSeq;
+        this.nextSeq = baseSeq;
+        this.indexInterval = indexInterval;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        // map() tự mở rộng file tới size (sparse file, không ghi 0 thật)
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+    }
+
+    static LogSegment create(Path dir, long baseSeq, int size, int indexInterval) throws IOException {
+        return new LogSegment(dir.resolve(fileName(baseSeq)), baseSeq, size, indexInterval);
+    }
+
+    static LogSegment recover(Path path, int size, int indexInterval) throws IOException {
+        String name = path.getFileName().toString();
+        long baseSeq = Long.parseLong(name.substring(0, name.length() - ".log".length()));
+        LogSegment segment = new LogSegment(path, baseSeq, size, indexInterval);
+        segment.scan();
+        return segment;
+    }
+
+    static String fileName(long baseSeq) {
+        return String.format("%020d.log", baseSeq);
+    }
+
+    private void scan() {
+        int pos = 0;
+        int limit = buffer.capacity();
+        byte[] payload = new byte[256];
+        while (pos + HEADER <= limit) {
+            int length = buffer.getInt(pos);
+            if (length <= 0 || pos + HEADER + length > limit) {
+                break;
+            }
+            long seq = buffer.getLong(pos + 4);
+            int checksum = buffer.getInt(pos + 12);
+            if (seq != nextSeq) {
+                break;
+            }
+            if (payload.length < length) {
+                payload = new byte[Math.max(length, payload.length * 2)];
+            }
+            buffer.get(pos + HEADER, payload, 0, length);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            indexRecord(seq, pos);
+            pos += HEADER + length;
+            nextSeq++;
+        }
+        writePos = pos;
+        clearTail();
+    }
+
+    // Xóa rác của record bị ghi dở sau writePos, để lần recover sau không đọc nhầm
+    // record cũ trùng seq. Dừng khi gặp một page toàn số 0.
+    private void clearTail() {
+        int zeros = 0;
+        for (int pos = writePos; pos < buffer.capacity() && zeros < 4096; pos++) {
+            if (buffer.get(pos) == 0) {
+                zeros++;
+            } else {
+                buffer.put(pos, (byte) 0);
+                zeros = 0;
+                dirty = true;
+            }
+        }
+    }
+
+    boolean hasRoom(int payloadLength) {
+        return writePos + HEADER + payloadLength <= buffer.capacity();
+    }
+
+    void append(long seq, byte[] payload) {
+        crc.reset();
+        crc.update(payload);
+        int pos = writePos;
+        buffer.putLong(pos + 4, seq);
+        buffer.putInt(pos + 12, (int) crc.getValue());
+        buffer.put(pos + HEADER, payload);
+        // length ghi sau cùng: record chỉ "tồn tại" khi đã đủ nội dung
+        buffer.putInt(pos, payload.length);
+        indexRecord(seq, pos);
+        writePos = pos + HEADER + payload.length;
+        nextSeq = seq + 1;
+        dirty = true;
+    }
+
+    private void indexRecord(long seq, int pos) {
+        if (records++ % indexInterval != 0) {
+            return;
+        }
+        if (indexSize == indexSeqs.length) {
+            indexSeqs = Arrays.copyOf(indexSeqs, indexSize * 2);
+            indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+        }
+        indexSeqs[indexSize] = seq;
+        indexPositions[indexSize] = pos;
+        indexSize++;
+    }
+
+    /**
+     * Adds frames with {@code from <= seq < to} to {@code out}, in order.
+     */
+    void read(long from, long to, List<HistoryEntry> out) {
+        from = Math.max(from, baseSeq);
+        to = Math.min(to, nextSeq);
+        if (from >= to) {
+            return;
+        }
+
+        // Nhảy tới mục index gần nhất <= from rồi quét tiếp
+        int i = Arrays.binarySearch(indexSeqs, 0, indexSize, from);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        int pos = indexPositions[Math.max(i, 0)];
+        ByteBuffer view = buffer.duplicate();
+        while (pos < writePos) {
+            int length = view.getInt(pos);
+            long seq = view.getLong(pos + 4);
+            if (seq >= to) {
+                break;
+            }
+            if (seq >= from) {
+                byte[] payload = new byte[length];
+                view.get(pos + HEADER, payload, 0, length);
+                out.add(new HistoryEntry(seq, new String(payload, StandardCharsets.UTF_8)));
+            }
+            pos += HEADER + length;
+        }
+    }
+
+    // Gọi dưới lock của RoomLog: lấy và xóa cờ dirty
+    boolean takeDirty() {
+        boolean wasDirty = dirty;
+        dirty = false;
+        return wasDirty;
+    }
+
+    // msync có thể chạy ngoài lock, song song với append
+    void sync() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        if (takeDirty()) {
+            sync();
+        }
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    long baseSeq() {
+        return baseSeq;
+    }
+
+    // seq của record tiếp theo, bằng baseSeq nếu segment rỗng
+    long nextSeq() {
+        return nextSeq;
+    }
+
+    int size() {
+        return writePos;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.demo.history;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Fixed-capacity ring buffer holding the most recent frames of one room.
+ *
+ * Every append gets the next sequence number; the slot of a message is
+ * {@code seq % capacity}, so append, eviction and lookup by sequence are O(1).
+ */
+public class RoomHistory {
+
+    // Ước lượng header object String + array, dùng cho memory budget
+    private static final long ENTRY_OVERHEAD = 56;
+
+    private final String[] ring;
+    // Nhận mỗi tin bị đẩy ra khỏi ring
+    private final Consumer<HistoryEntry> onDrop;
+    // Phòng bị xóa rồi tạo lại có RoomHistory mới, seq lại từ 1
+    private final String generation = UUID.randomUUID().toString();
+
+    // seq của tin nhắn cũ nhất còn giữ và của tin nhắn tiếp theo
+    private long firstSeq = 1;
+    private long nextSeq = 1;
+    private long bytes;
+
+    private volatile long lastAccess = System.nanoTime();
+
+    public RoomHistory(int capacity) {
+        this(capacity, entry -> {
+        });
+    }
+
+    public RoomHistory(int capacity, Consumer<HistoryEntry> onDrop) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("History capacity must be positive: " + capacity);
+        }
+        this.ring = new String[capacity];
+        this.onDrop = onDrop;
+    }
+
+    public static long estimateBytes(String message) {
+        return ENTRY_OVERHEAD + 2L * message.length();
+    }
+
+    /**
+     * Appends a frame, overwriting the oldest one when full.
+     *
+     * @return the change in estimated bytes held by this room
+     */
+    public synchronized long append(String message) {
+        long added = estimateBytes(message);
+        long freed = 0;
+        if (nextSeq - firstSeq == ring.length) {
+            freed = dropOldest();
+        }
+        ring[slot(nextSeq)] = message;
+        nextSeq++;
+        bytes += added;
+        lastAccess = System.nanoTime();
+        return added - freed;
+    }
+
+    public synchronized long lastSeq() {
+        return nextSeq - 1;
+    }
+
+    /**
+     * The newest {@code limit} frames, oldest first.
+     */
+    public synchronized List<HistoryEntry> latest(int limit) {
+        lastAccess = System.nanoTime();
+        long from = Math.max(firstSeq, nextSeq - limit);
+        return range(from, nextSeq);
+    }
+
+    /**
+     * Up to {@code limit} frames just before {@code seq}, oldest first.
+     */
+    public synchronized List<HistoryEntry> before(long seq, int limit) {
+        lastAccess = System.nanoTime();
+        long to = Math.min(seq, nextSeq);
+        long from = Math.max(firstSeq, to - limit);
+        return range(from, to);
+    }
+
+    /**
+     * Up to {@code limit} frames just after {@code seq}, oldest first.
+     */
+    public synchronized List<HistoryEntry> after(long seq, int limit) {
+        lastAccess = System.nanoTime();
+        long from = Math.max(firstSeq, seq + 1);
+        return range(from, Math.min(nextSeq, from + limit));
+    }
+
+    // [from, to) theo seq, đã được kẹp trong khoảng còn giữ
+    private List<HistoryEntry> range(long from, long to) {
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        List<HistoryEntry> result = new ArrayList<>((int) (to - from));
+        for (long seq = from; seq < to; seq++) {
+            result.add(new HistoryEntry(seq, ring[slot(seq)]));
+        }
+        return result;
+    }
+
+    /**
+     * Drops oldest frames until at least {@code target} bytes are freed or the
+     * room is empty.
+     *
+     * @return bytes actually freed
+     */
+    public synchronized long evict(long target) {
+        long freed = 0;
+        while (freed < target && firstSeq < nextSeq) {
+            freed += dropOldest();
+        }
+        return freed;
+    }
+
+    private long dropOldest() {
+        int slot = slot(firstSeq);
+        long freed = estimateBytes(ring[slot]);
+        onDrop.accept(new HistoryEntry(firstSeq, ring[slot]));
+        ring[slot] = null;
+        firstSeq++;
+        bytes -= freed;
+        return freed;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % ring.length);
+    }
+
+    public synchronized int size() {
+        return (int) (nextSeq - firstSeq);
+    }
+
+    public String generation() {
+        return generation;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public long lastAccess() {
+        return lastAccess;
+    }
+}
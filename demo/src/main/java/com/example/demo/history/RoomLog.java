@@ -0,0 +1,191 @@
+package com.example.demo.history;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The segmented log of one room: a sorted set of {@link LogSegment}s of which
+ * only the last one is appended to. The room name is kept in a {@code ROOM}
+ * file, since the directory name may be a hash.
+ */
+class RoomLog {
+
+    static final String ROOM_FILE = "ROOM";
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int retentionSegments;
+    private final int indexInterval;
+    // Nhận mỗi tin của segment bị xóa (retention hoặc xóa phòng)
+    private final Consumer<HistoryEntry> onDrop;
+    // Tạo cùng thư mục: phòng bị xóa (xóa thư mục) rồi ghi lại có generation mới
+    private final String generation;
+
+    // baseSeq -> segment, segment cuối là segment đang ghi
+    private final TreeMap<Long, LogSegment> segments = new TreeMap<>();
+    private LogSegment active;
+    private long bytes;
+    // Đã đóng (LogHistoryStore giới hạn số phòng mở): người giữ tham chiếu cũ phải mở lại
+    private boolean closed;
+
+    RoomLog(Path dir, String room, int segmentSize, int retentionSegments, int indexInterval,
+            Consumer<HistoryEntry> onDrop) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.retentionSegments = retentionSegments;
+        this.indexInterval = indexInterval;
+        this.onDrop = onDrop;
+
+        Files.createDirectories(dir);
+        Path roomFile = dir.resolve(ROOM_FILE);
+        if (!Files.exists(roomFile)) {
+            Files.writeString(roomFile, room);
+        }
+        Path generationFile = dir.resolve("GENERATION");
+        if (!Files.exists(generationFile)) {
+            Files.writeString(generationFile, UUID.randomUUID().toString());
+        }
+        this.generation = Files.readString(generationFile).trim();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".log"))::iterator) {
+                LogSegment segment = LogSegment.recover(file, segmentSize, indexInterval);
+                segments.put(segment.baseSeq(), segment);
+                bytes += segment.size();
+            }
+        }
+        active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+    }
+
+    synchronized long append(String message) {
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        if (LogSegment.HEADER + payload.length > segmentSize) {
+            throw new IllegalArgumentException("Message of " + payload.length + " bytes exceeds segment size");
+        }
+
+        long seq = active != null ? active.nextSeq() : 1;
+        if (active == null || !active.hasRoom(payload.length)) {
+            roll(seq);
+        }
+        active.append(seq, payload);
+        bytes += LogSegment.HEADER + payload.length;
+        return seq;
+    }
+
+    // Segment mới bắt đầu từ seq; segment cũ được giữ lại để đọc cho tới khi hết retention
+    private void roll(long seq) {
+        try {
+            LogSegment previous = active;
+            active = LogSegment.create(dir, seq, segmentSize, indexInterval);
+            segments.put(seq, active);
+            if (previous != null && previous.takeDirty()) {
+                previous.sync();
+            }
+            while (segments.size() > retentionSegments) {
+                LogSegment oldest = segments.pollFirstEntry().getValue();
+                bytes -= oldest.size();
+                dropped(oldest);
+                oldest.delete();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot roll history segment in " + dir, e);
+        }
+    }
+
+    synchronized List<HistoryEntry> latest(int limit) {
+        long to = active != null ? active.nextSeq() : 1;
+        long first = segments.isEmpty() ? 1 : segments.firstKey();
+        return read(Math.max(first, to - limit), to);
+    }
+
+    synchronized List<HistoryEntry> before(long seq, int limit) {
+        long to = Math.min(seq, active != null ? active.nextSeq() : 1);
+        long first = segments.isEmpty() ? 1 : segments.firstKey();
+        return read(Math.max(first, to - limit), to);
+    }
+
+    synchronized List<HistoryEntry> after(long seq, int limit) {
+        long next = active != null ? active.nextSeq() : 1;
+        long first = segments.isEmpty() ? 1 : segments.firstKey();
+        long from = Math.max(first, seq + 1);
+        return read(from, Math.min(next, from + limit));
+    }
+
+    // [from, to) theo seq, đọc qua nhiều segment nếu cần
+    private List<HistoryEntry> read(long from, long to) {
+        List<HistoryEntry> result = new ArrayList<>((int) Math.max(0, Math.min(to - from, 1024)));
+        if (from >= to) {
+            return result;
+        }
+        Long start = segments.floorKey(from);
+        Map<Long, LogSegment> tail = segments.tailMap(start != null ? start : from, true);
+        for (LogSegment segment : tail.values()) {
+            if (segment.baseSeq() >= to) {
+                break;
+            }
+            segment.read(from, to, result);
+        }
+        return result;
+    }
+
+    /**
+     * Collects segments with unflushed appends; the caller syncs them outside
+     * the lock so appends are not blocked by msync.
+     */
+    synchronized List<LogSegment> takeDirty() {
+        List<LogSegment> dirty = new ArrayList<>(1);
+        for (LogSegment segment : segments.descendingMap().values()) {
+            if (segment.takeDirty()) {
+                dirty.add(segment);
+            }
+        }
+        return dirty;
+    }
+
+    String generation() {
+        return generation;
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    synchronized void close() throws IOException {
+        closed = true;
+        for (LogSegment segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private void dropped(LogSegment segment) {
+        List<HistoryEntry> entries = new ArrayList<>();
+        segment.read(segment.baseSeq(), segment.nextSeq(), entries);
+        entries.forEach(onDrop);
+    }
+
+    synchronized void delete() throws IOException {
+        for (LogSegment segment : segments.values()) {
+            dropped(segment);
+            segment.delete();
+        }
+        segments.clear();
+        active = null;
+        closed = true;
+        Files.deleteIfExists(dir.resolve("GENERATION"));
+        Files.deleteIfExists(dir.resolve(ROOM_FILE));
+        Files.deleteIfExists(dir);
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.demo.mailbox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * One append-only file per user mailbox, {@code <dir>/<shard>/<user>}, holding
+ * {@code [int length][UTF-8 frame]} records oldest first.
+ *
+ * Nothing is kept in memory per mailbox, so idle mailboxes cost disk space
+ * only, however many there are. A mailbox is read in batches from the start
+ * of its file; acknowledging a batch cuts it off the file, and the file is
+ * deleted once empty. Operations on one file are serialized by a striped
+ * lock.
+ */
+public class MailboxStore {
+
+    private static final int HEADER = 4;
+    private static final int STRIPES = 256;
+    // Tên file base64 dài hơn thế này -> dùng hash (giới hạn 255 byte của filesystem)
+    private static final int MAX_NAME_LENGTH = 200;
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Frames read from the head of a mailbox; {@code end} is the file offset
+     * right after the last one, passed back to {@link #ack}.
+     */
+    public record Batch(long end, List<String> frames) {
+    }
+
+    private final Path root;
+    private final long maxMailboxBytes;
+    private final long maxTotalBytes;
+    private final boolean fsync;
+    private final Object[] locks = new Object[STRIPES];
+
+    // Tổng dung lượng mọi hộp thư: đếm lại ở mỗi lần expire(), cộng trừ dần ở giữa
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    public MailboxStore(Path root, long maxMailboxBytes, long maxTotalBytes, boolean fsync) {
+        this.root = root;
+        this.maxMailboxBytes = maxMailboxBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.fsync = fsync;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open mailbox directory " + root, e);
+        }
+    }
+
+    /**
+     * Appends a frame to the user's mailbox.
+     *
+     * @return false if the mailbox or the store is full
+     */
+    public boolean append(String user, String frame) {
+        byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER + bytes.length;
+        if (totalBytes.get() + length > maxTotalBytes) {
+            return false;
+        }
+        Path file = file(user);
+        synchronized (lock(file)) {
+            try {
+                if (size(file) + length > maxMailboxBytes) {
+                    return false;
+                }
+                Files.createDirectories(file.getParent());
+                ByteBuffer record = ByteBuffer.allocate(length).putInt(bytes.length).put(bytes).flip();
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    while (record.hasRemaining()) {
+                        channel.write(record);
+                    }
+                    if (fsync) {
+                        channel.force(false);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write mailbox of " + user, e);
+            }
+        }
+        totalBytes.addAndGet(length);
+        return true;
+    }
+
+    public boolean isEmpty(String user) {
+        try {
+            return size(file(user)) == 0;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * The oldest frames of the mailbox, at most {@code maxFrames} and about
+     * {@code maxBytes} (at least one frame when not empty). Nothing is removed.
+     */
+    public Batch read(String user, int maxFrames, long maxBytes) {
+        Path file = file(user);
+        synchronized (lock(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                long position = 0;
+                long bytes = 0;
+                List<String> frames = new ArrayList<>();
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                while (position < size && frames.size() < maxFrames && (frames.isEmpty() || bytes < maxBytes)) {
+                    header.clear();
+                    int length = position + HEADER <= size && readFully(channel, header, position)
+                            ? header.getInt(0)
+                            : -1;
+                    if (length < 0 || position + HEADER + length > size) {
+                        // Record ghi dở (crash giữa lúc append): cắt bỏ
+                        channel.truncate(position);
+                        totalBytes.addAndGet(position - size);
+                        break;
+                    }
+                    ByteBuffer body = ByteBuffer.allocate(length);
+                    readFully(channel, body, position + HEADER);
+                    frames.add(new String(body.array(), StandardCharsets.UTF_8));
+                    position += HEADER + length;
+                    bytes += length;
+                }
+                if (frames.isEmpty()) {
+                    Files.deleteIfExists(file);
+                }
+                return new Batch(position, frames);
+            } catch (NoSuchFileException e) {
+                return new Batch(0, List.of());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read mailbox of " + user, e);
+            }
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the frames before {@code end}, as returned by {@link #read}.
+     * An {@code end} past the current file is ignored.
+     */
+    public void ack(String user, long end) {
+        Path file = file(user);
+        synchronized (lock(file)) {
+            try {
+                long size = size(file);
+                if (end <= 0 || end > size) {
+                    return;
+                }
+                if (end == size) {
+                    Files.deleteIfExists(file);
+                } else {
+                    // Chép phần chưa ack sang file tạm rồi rename, crash giữa chừng không mất gì
+                    Path tmp = file.resolveSibling(file.getFileName() + TMP_SUFFIX);
+                    try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+                            FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        for (long position = end; position < size;) {
+                            position += in.transferTo(position, size - position, out);
+                        }
+                        if (fsync) {
+                            out.force(false);
+                        }
+                    }
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                totalBytes.addAndGet(-end);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot update mailbox of " + user, e);
+            }
+        }
+    }
+
+    /**
+     * Deletes mailboxes that received nothing for {@code ttl} and recounts
+     * the size of the others.
+     *
+     * @return the number of mailboxes deleted
+     */
+    public int expire(Duration ttl) throws IOException {
+        long cutoff = System.currentTimeMillis() - ttl.toMillis();
+        int expired = 0;
+        long total = 0;
+        List<Path> shards;
+        try (Stream<Path> list = Files.list(root)) {
+            shards = list.filter(Files::isDirectory).toList();
+        }
+        for (Path shard : shards) {
+            List<Path> files;
+            try (Stream<Path> list = Files.list(shard)) {
+                files = list.toList();
+            }
+            for (Path file : files) {
+                synchronized (lock(file)) {
+                    try {
+                        long size = Files.size(file);
+                        boolean tmp = file.getFileName().toString().endsWith(TMP_SUFFIX);
+                        if (tmp || Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                            // .tmp còn sót lại là của một lần ack bị crash: file gốc vẫn nguyên
+                            Files.delete(file);
+                            expired += tmp ? 0 : 1;
+                        } else {
+                            total += size;
+                        }
+                    } catch (NoSuchFileException e) {
+                        // vừa được ack hết
+                    }
+                }
+            }
+        }
+        totalBytes.set(total);
+        return expired;
+    }
+
+    public long totalBytes() {
+        return totalBytes.get();
+    }
+
+    // ================= FILES =================
+
+    Path file(String user) {
+        byte[] bytes = user.getBytes(StandardCharsets.UTF_8);
+        String name = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        if (name.length() > MAX_NAME_LENGTH) {
+            name = "h" + sha256(bytes);
+        }
+        // Chia thư mục con theo hash để không có một thư mục triệu file
+        String shard = String.format("%02x", user.hashCode() & 0xFF);
+        return root.resolve(shard).resolve(name);
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // File .tmp dùng chung lock với file gốc
+    private Object lock(Path file) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(TMP_SUFFIX)) {
+            name = name.substring(0, name.length() - TMP_SUFFIX.length());
+        }
+        return locks[(name.hashCode() & 0x7FFF_FFFF) % STRIPES];
+    }
+
+    private static long size(Path file) throws IOException {
+        try {
+            return Files.size(file);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.demo.mailbox;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.cluster.ClusterBus;
+import com.example.demo.cluster.ClusterEvent;
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Store-and-forward for private frames whose target is not online on any
+ * node: they are appended to the target's {@link MailboxStore} file.
+ *
+ * When the user joins, the mailbox is sent to that session as
+ * {@code MAILBOX|batchId|["frame", ...]} batches of
+ * {@code chat.mailbox.batch-size}. A batch leaves the mailbox only when the
+ * client answers {@code MAILBOX_ACK|batchId}, then the next one is sent; a
+ * batch not acknowledged before the session closes is sent again on the next
+ * join. One session per user drains at a time, so the other tabs do not get
+ * the same frames twice.
+ *
+ * Mailboxes live on the node that accepted the message. When the user shows
+ * up on another node, the mailbox is handed over in the same batches as
+ * {@code MAILBOX} cluster events. The other node appends them to its own
+ * mailbox for the user and answers {@code MAILBOX_ACK}; only then does the
+ * batch leave this node. So a user who already left again finds the frames
+ * there on the next join, and a batch whose event or ack was lost is sent
+ * again on the next {@code PRESENCE_UP} (possibly twice, never zero times).
+ */
+@Component
+public class OfflineMailbox implements ClusterBus.Listener, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(OfflineMailbox.class);
+
+    // Batch chuyển sang node khác mà chưa có ack sau chừng này thì sweep bỏ drain (batch vẫn trong hộp thư)
+    private static final long HANDOFF_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    // Nơi đang nhận hộp thư và batch nó chưa ack: một session ở node này, hoặc node khác (session == null)
+    private static final class Drain {
+        final WebSocketSession session;
+        final String node;
+        volatile long batchId;
+        volatile int frames;
+        // Chỉ dùng khi chuyển sang node khác: id của event MAILBOX đang chờ ack
+        volatile String handoffId;
+        volatile long sentAt;
+
+        Drain(WebSocketSession session, String node) {
+            this.session = session;
+            this.node = node;
+        }
+
+        boolean remote() {
+            return session == null;
+        }
+
+        boolean stale() {
+            return remote() ? System.nanoTime() - sentAt > HANDOFF_TIMEOUT_NANOS : !session.isOpen();
+        }
+    }
+
+    private final MailboxStore store;
+    private final ChatRegistry registry;
+    private final ClusterBus bus;
+    private final ChatMetrics metrics;
+    private final int batchSize;
+    private final long batchBytes;
+    private final Duration ttl;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService sweeper;
+
+    // user -> drain đang chạy; chỉ user đang nhận hộp thư mới có entry
+    private final Map<String, Drain> draining = new ConcurrentHashMap<>();
+
+    public OfflineMailbox(ChatRegistry registry, ClusterBus bus, ChatMetrics metrics,
+            @Value("${chat.mailbox.dir:data/mailbox}") String dir,
+            @Value("${chat.mailbox.max-size:256KB}") DataSize maxSize,
+            @Value("${chat.mailbox.max-total-size:1GB}") DataSize maxTotalSize,
+            @Value("${chat.mailbox.batch-size:50}") int batchSize,
+            @Value("${chat.mailbox.batch-max-size:64KB}") DataSize batchMaxSize,
+            @Value("${chat.mailbox.ttl:30d}") Duration ttl,
+            @Value("${chat.mailbox.sweep-interval:PT1H}") Duration sweepInterval,
+            @Value("${chat.mailbox.fsync:false}") boolean fsync) {
+        this.store = new MailboxStore(Paths.get(dir), maxSize.toBytes(), maxTotalSize.toBytes(), fsync);
+        this.registry = registry;
+        this.bus = bus;
+        this.metrics = metrics;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchBytes = batchMaxSize.toBytes();
+        this.ttl = ttl;
+        bus.subscribe(this);
+
+        // Lần quét đầu (ngay khi start) cũng đếm lại dung lượng hộp thư trên đĩa
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mailbox-sweep");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(1, sweepInterval.toMillis());
+        sweeper.scheduleWithFixedDelay(this::sweep, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a frame for a user who is offline everywhere.
+     *
+     * @return false if the mailbox is full
+     */
+    public boolean enqueue(String user, String frame) {
+        if (!store.append(user, frame)) {
+            metrics.mailboxRejected();
+            return false;
+        }
+        metrics.mailboxQueued();
+        // User vừa JOIN giữa lúc kiểm tra online và lúc ghi: gửi luôn
+        deliverToLocalUser(user);
+        return true;
+    }
+
+    private void deliverToLocalUser(String user) {
+        for (WebSocketSession session : registry.sessionsOf(user)) {
+            if (session.isOpen()) {
+                deliver(session, user);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Starts sending the user's mailbox to {@code session}, unless another
+     * open session of the user is already receiving it.
+     */
+    public void deliver(WebSocketSession session, String user) {
+        if (user == null || store.isEmpty(user)) {
+            return;
+        }
+        Drain drain = new Drain(session, null);
+        // Session ở node này thay cho lần chuyển sang node khác: ack muộn của lần đó sẽ bị bỏ qua
+        Drain current = draining.compute(user, (u, d) -> d == null || d.remote() || !d.session.isOpen() ? drain : d);
+        if (current == drain) {
+            sendNextBatch(user, drain);
+        }
+    }
+
+    /**
+     * {@code MAILBOX_ACK|batchId}: drops the acknowledged batch and sends the
+     * next one. Acks for another batch or from another session are ignored.
+     */
+    public void ack(WebSocketSession session, String user, long batchId) {
+        Drain drain = user != null ? draining.get(user) : null;
+        if (drain == null || drain.session != session || drain.batchId != batchId) {
+            return;
+        }
+        store.ack(user, batchId);
+        metrics.mailboxDelivered(drain.frames);
+        sendNextBatch(user, drain);
+    }
+
+    private void sendNextBatch(String user, Drain drain) {
+        MailboxStore.Batch batch = store.read(user, batchSize, batchBytes);
+        if (batch.frames().isEmpty()) {
+            draining.remove(user, drain);
+            // Tin mới vào hộp thư sau lần đọc trên và trước khi bỏ drain
+            if (!drain.remote() && !store.isEmpty(user) && drain.session.isOpen()) {
+                deliver(drain.session, user);
+            }
+            return;
+        }
+        drain.batchId = batch.end();
+        drain.frames = batch.frames().size();
+        if (drain.remote()) {
+            drain.handoffId = UUID.randomUUID().toString();
+            drain.sentAt = System.nanoTime();
+            bus.publish(ClusterEvent.Type.MAILBOX, user,
+                    ChatCodec.encode(drain.node, drain.handoffId, toJson(batch.frames())));
+        } else {
+            registry.send(drain.session,
+                    ChatCodec.encode("MAILBOX", Long.toString(batch.end()), toJson(batch.frames())));
+        }
+    }
+
+    private String toJson(List<String> frames) {
+        try {
+            return objectMapper.writeValueAsString(frames);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<String> fromJson(String json) throws JsonProcessingException {
+        return objectMapper.readValue(json, new TypeReference<List<String>>() {
+        });
+    }
+
+    @Override
+    public void onEvent(ClusterEvent event) {
+        switch (event.type()) {
+            case PRESENCE_UP -> handOff(event.target(), event.origin());
+            case MAILBOX -> accept(event);
+            case MAILBOX_ACK -> handedOff(event);
+            default -> {
+            }
+        }
+    }
+
+    // User online ở node khác: chuyển hộp thư sang đó theo batch, batch chỉ rời hộp thư khi node kia ack
+    private void handOff(String user, String node) {
+        if (store.isEmpty(user) || !registry.sessionsOf(user).isEmpty()) {
+            return;
+        }
+        // Lần chuyển trước chưa được ack (event mất, node kia đã tắt) được thay bằng lần này
+        Drain drain = new Drain(null, node);
+        Drain current = draining.compute(user, (u, d) -> d == null || d.stale() || d.remote() ? drain : d);
+        if (current == drain) {
+            sendNextBatch(user, drain);
+        }
+    }
+
+    // Node khác chuyển hộp thư sang: ghi vào hộp thư ở node này trước rồi mới ack
+    private void accept(ClusterEvent event) {
+        ChatMessage message = ChatCodec.decode(event.payload());
+        if (!bus.nodeId().equals(message.get(0))) {
+            return;
+        }
+        String user = event.target();
+        List<String> frames;
+        try {
+            frames = fromJson(message.get(2));
+        } catch (JsonProcessingException e) {
+            log.warn("Invalid mailbox batch for {} from {}: {}", user, event.origin(), e.getMessage());
+            return;
+        }
+        int rejected = 0;
+        for (String frame : frames) {
+            if (!store.append(user, frame)) {
+                metrics.mailboxRejected();
+                rejected++;
+            }
+        }
+        if (rejected > 0) {
+            log.warn("Mailbox of {} is full, dropped {} frames handed over by {}", user, rejected, event.origin());
+        }
+        bus.publish(ClusterEvent.Type.MAILBOX_ACK, user, ChatCodec.encode(event.origin(), message.get(1)));
+        // User đã rời lại thì tin nằm trong hộp thư ở đây, gửi ở lần JOIN sau
+        deliverToLocalUser(user);
+    }
+
+    // Node kia đã ghi batch vào hộp thư của nó: bỏ batch khỏi hộp thư ở đây rồi chuyển batch tiếp
+    private void handedOff(ClusterEvent event) {
+        ChatMessage message = ChatCodec.decode(event.payload());
+        String user = event.target();
+        Drain drain = draining.get(user);
+        if (!bus.nodeId().equals(message.get(0)) || drain == null || !drain.remote()
+                || !message.get(1).equals(drain.handoffId)) {
+            return;
+        }
+        // Cắt hộp thư trong compute: deliver() không thể thay drain giữa lúc kiểm tra và lúc cắt
+        Drain current = draining.computeIfPresent(user, (u, d) -> {
+            if (d == drain) {
+                store.ack(user, d.batchId);
+            }
+            return d;
+        });
+        if (current == drain) {
+            sendNextBatch(user, drain);
+        }
+    }
+
+    private void sweep() {
+        try {
+            // Drain của session đã đóng / batch chuyển đi không được ack: batch còn nguyên, gửi lại lần sau
+            draining.entrySet().removeIf(e -> e.getValue().stale());
+            int expired = store.expire(ttl);
+            if (expired > 0) {
+                log.info("Deleted {} mailboxes idle for more than {}", expired, ttl);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Mailbox sweep failed: {}", e.getMessage());
+        }
+    }
+
+    public long totalBytes() {
+        return store.totalBytes();
+    }
+
+    public int drainingCount() {
+        return draining.size();
+    }
+
+    @Override
+    public void destroy() {
+        sweeper.shutdownNow();
+    }
+}
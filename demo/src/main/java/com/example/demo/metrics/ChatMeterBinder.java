@@ -0,0 +1,129 @@
+package com.example.demo.metrics;
+
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.admission.AdmissionController;
+import com.example.demo.history.HistoryStore;
+import com.example.demo.mailbox.OfflineMailbox;
+import com.example.demo.search.SearchIndex;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.OutboundDispatcher;
+import com.example.demo.ws.Room;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Gauges read from the chat state when metrics are scraped: sessions, rooms,
+ * outbound queues and history size.
+ *
+ * Per-room session counts are refreshed every
+ * {@code chat.metrics.room-interval} and limited to the
+ * {@code chat.metrics.max-room-tags} largest rooms to bound tag cardinality.
+ */
+@Component
+public class ChatMeterBinder implements MeterBinder {
+
+    private final ChatRegistry registry;
+    private final OutboundDispatcher outbound;
+    private final HistoryStore chatHistory;
+    private final SearchIndex searchIndex;
+    private final OfflineMailbox mailbox;
+    private final AdmissionController admission;
+    private final int maxRoomTags;
+
+    private volatile MultiGauge roomSessions;
+
+    public ChatMeterBinder(ChatRegistry registry, OutboundDispatcher outbound, HistoryStore chatHistory,
+            SearchIndex searchIndex, OfflineMailbox mailbox, AdmissionController admission,
+            @Value("${chat.metrics.max-room-tags:100}") int maxRoomTags) {
+        this.registry = registry;
+        this.outbound = outbound;
+        this.chatHistory = chatHistory;
+        this.searchIndex = searchIndex;
+        this.mailbox = mailbox;
+        this.admission = admission;
+        this.maxRoomTags = maxRoomTags;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meters) {
+        Gauge.builder("chat.sessions", registry, ChatRegistry::sessionCount)
+                .description("Open WebSocket sessions")
+                .register(meters);
+        Gauge.builder("chat.rooms", registry, r -> r.rooms().size()).register(meters);
+
+        Gauge.builder("chat.outbound.backlog", outbound, OutboundDispatcher::totalBacklog)
+                .description("Frames waiting in outbound queues")
+                .register(meters);
+        Gauge.builder("chat.outbound.backlog.bytes", outbound, OutboundDispatcher::totalBacklogBytes)
+                .baseUnit("bytes")
+                .register(meters);
+        FunctionCounter.builder("chat.outbound.frames", outbound, OutboundDispatcher::totalFramesSent)
+                .description("WebSocket frames written (a BATCH counts once)")
+                .register(meters);
+        FunctionCounter.builder("chat.outbound.events", outbound, OutboundDispatcher::totalEventsSent)
+                .description("Chat events delivered (each frame inside a BATCH counts)")
+                .register(meters);
+        FunctionCounter.builder("chat.outbound.bytes", outbound, OutboundDispatcher::totalBytesSent)
+                .baseUnit("bytes")
+                .register(meters);
+        Gauge.builder("chat.outbound.batch.delay", outbound, OutboundDispatcher::averageBatchDelayMicros)
+                .description("Mean wait of a BATCH frame before it is written")
+                .baseUnit("microseconds")
+                .register(meters);
+
+        Gauge.builder("chat.history.bytes", chatHistory, HistoryStore::totalBytes)
+                .description("Estimated size of the stored room history")
+                .baseUnit("bytes")
+                .register(meters);
+
+        Gauge.builder("chat.search.documents", searchIndex, SearchIndex::documents).register(meters);
+        Gauge.builder("chat.search.bytes", searchIndex, SearchIndex::bytes)
+                .description("Estimated heap used by the search index")
+                .baseUnit("bytes")
+                .register(meters);
+
+        Gauge.builder("chat.mailbox.bytes", mailbox, OfflineMailbox::totalBytes)
+                .description("Offline mailboxes on disk")
+                .baseUnit("bytes")
+                .register(meters);
+        Gauge.builder("chat.mailbox.draining", mailbox, OfflineMailbox::drainingCount).register(meters);
+
+        Gauge.builder("chat.admission.overloaded", admission, a -> a.isOverloaded() ? 1 : 0)
+                .description("1 while low-priority commands are being shed")
+                .register(meters);
+        Gauge.builder("chat.admission.cpu", admission, AdmissionController::getCpuLoad)
+                .description("Process CPU load last sampled by admission control")
+                .register(meters);
+
+        roomSessions = MultiGauge.builder("chat.room.sessions")
+                .description("Sessions per room (largest rooms only)")
+                .register(meters);
+        refreshRooms();
+    }
+
+    @Scheduled(fixedRateString = "${chat.metrics.room-interval:PT10S}")
+    public void refreshRooms() {
+        MultiGauge gauge = roomSessions;
+        if (gauge == null) {
+            return;
+        }
+        List<MultiGauge.Row<?>> rows = registry.rooms().stream()
+                .sorted(Comparator.comparingInt((Room room) -> room.members().size()).reversed())
+                .limit(maxRoomTags)
+                .<MultiGauge.Row<?>>map(room -> MultiGauge.Row.of(Tags.of("room", room.name()),
+                        room.members().size()))
+                .toList();
+        gauge.register(rows, true);
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.demo.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.ws.Command;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters recorded on the hot paths: inbound commands, room fan-out and file
+ * transfer bytes.
+ *
+ * Counters are always updated. Durations are timed for a
+ * {@code chat.metrics.sample-rate} fraction of calls only, so at low rates
+ * the cost per message is one random draw; the counts of the timers are
+ * then samples, not totals. {@code chat.metrics.histograms=false} also
+ * drops the percentile computation.
+ */
+@Component
+public class ChatMetrics {
+
+    private final double sampleRate;
+
+    // Meter dựng sẵn theo Command, không tra cứu registry trên hot path
+    private final Map<Command, Counter> received = new EnumMap<>(Command.class);
+    private final Map<Command, Timer> handled = new EnumMap<>(Command.class);
+    private final Map<Command, Counter> rateLimited = new EnumMap<>(Command.class);
+    private final Map<Command, Counter> shed = new EnumMap<>(Command.class);
+    private final Counter unknown;
+    private final Counter malformed;
+    private final Timer broadcast;
+    private final DistributionSummary fanOut;
+    private final Counter bytesIn;
+    private final Counter bytesOut;
+    private final Counter mailboxQueued;
+    private final Counter mailboxDelivered;
+    private final Counter mailboxRejected;
+
+    public ChatMetrics(MeterRegistry registry,
+            @Value("${chat.metrics.sample-rate:1.0}") double sampleRate,
+            @Value("${chat.metrics.histograms:true}") boolean histograms) {
+        this.sampleRate = sampleRate;
+        double[] percentiles = histograms ? new double[] { 0.5, 0.95, 0.99 } : new double[0];
+
+        for (Command command : Command.values()) {
+            received.put(command, Counter.builder("chat.messages.received")
+                    .description("Inbound WebSocket frames by command")
+                    .tag("command", command.name())
+                    .register(registry));
+            handled.put(command, Timer.builder("chat.command.duration")
+                    .description("Time spent in the command handler (sampled)")
+                    .tag("command", command.name())
+                    .publishPercentiles(percentiles)
+                    .register(registry));
+            rateLimited.put(command, Counter.builder("chat.admission.rejected")
+                    .description("Commands refused before their handler ran")
+                    .tags("command", command.name(), "reason", "rate")
+                    .register(registry));
+            shed.put(command, Counter.builder("chat.admission.rejected")
+                    .description("Commands refused before their handler ran")
+                    .tags("command", command.name(), "reason", "overload")
+                    .register(registry));
+        }
+        unknown = Counter.builder("chat.messages.rejected").tag("reason", "unknown").register(registry);
+        malformed = Counter.builder("chat.messages.rejected").tag("reason", "malformed").register(registry);
+
+        broadcast = Timer.builder("chat.broadcast.duration")
+                .description("Time to queue one frame for every member of a room (sampled)")
+                .publishPercentiles(percentiles)
+                .register(registry);
+        fanOut = DistributionSummary.builder("chat.broadcast.recipients")
+                .description("Sessions reached by one room broadcast (sampled)")
+                .publishPercentiles(percentiles)
+                .register(registry);
+
+        bytesIn = Counter.builder("chat.files.bytes").tag("direction", "in").baseUnit("bytes").register(registry);
+        bytesOut = Counter.builder("chat.files.bytes").tag("direction", "out").baseUnit("bytes").register(registry);
+
+        mailboxQueued = Counter.builder("chat.mailbox.messages").tag("result", "queued").register(registry);
+        mailboxDelivered = Counter.builder("chat.mailbox.messages").tag("result", "delivered").register(registry);
+        mailboxRejected = Counter.builder("chat.mailbox.messages").tag("result", "rejected").register(registry);
+    }
+
+    /**
+     * Start time for a sampled measurement, or {@code 0} if this call is not
+     * sampled.
+     */
+    public long start() {
+        if (sampleRate >= 1.0 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate)) {
+            return System.nanoTime();
+        }
+        return 0;
+    }
+
+    public void received(Command command) {
+        received.get(command).increment();
+    }
+
+    public void handled(Command command, long start) {
+        if (start != 0) {
+            handled.get(command).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Vượt token bucket của kết nối
+    public void rateLimited(Command command) {
+        rateLimited.get(command).increment();
+    }
+
+    // Bị bỏ khi server quá tải
+    public void shed(Command command) {
+        shed.get(command).increment();
+    }
+
+    public void unknownCommand() {
+        unknown.increment();
+    }
+
+    public void malformed() {
+        malformed.increment();
+    }
+
+    public void broadcast(long start, int recipients) {
+        if (start != 0) {
+            broadcast.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            fanOut.record(recipients);
+        }
+    }
+
+    public void uploaded(long bytes) {
+        bytesIn.increment(bytes);
+    }
+
+    public void downloaded(long bytes) {
+        bytesOut.increment(bytes);
+    }
+
+    public void mailboxQueued() {
+        mailboxQueued.increment();
+    }
+
+    public void mailboxDelivered(int frames) {
+        mailboxDelivered.increment(frames);
+    }
+
+    public void mailboxRejected() {
+        mailboxRejected.increment();
+    }
+}
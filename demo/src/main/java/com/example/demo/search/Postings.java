@@ -0,0 +1,89 @@
+package com.example.demo.search;
+
+import java.util.Arrays;
+
+/**
+ * Sorted sequence numbers of the messages containing one term, stored as a
+ * growable {@code int[]} (4 bytes per occurrence, no boxing).
+ */
+final class Postings {
+
+    private int[] docs = new int[2];
+    private int size;
+
+    /**
+     * Adds a message. Almost always the newest one, so this is an append;
+     * two appends racing into the index can arrive slightly out of order and
+     * are inserted in place.
+     */
+    void add(int doc) {
+        int i = size;
+        while (i > 0 && docs[i - 1] >= doc) {
+            if (docs[i - 1] == doc) {
+                return; // từ lặp lại trong cùng tin nhắn
+            }
+            i--;
+        }
+        if (size == docs.length) {
+            docs = Arrays.copyOf(docs, size + (size >> 1) + 2);
+        }
+        System.arraycopy(docs, i, docs, i + 1, size - i);
+        docs[i] = doc;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int index) {
+        return docs[index];
+    }
+
+    /**
+     * Index of {@code doc}, or {@code -(insertion point) - 1} as in
+     * {@link Arrays#binarySearch}, searching only {@code [0, to)}.
+     */
+    int find(int doc, int to) {
+        return Arrays.binarySearch(docs, 0, to, doc);
+    }
+
+    /**
+     * Like {@link #find} but probes backwards from {@code to} in growing
+     * steps first: cheap when walking a list newest first and the target is
+     * close to where the previous lookup stopped.
+     */
+    int findBefore(int doc, int to) {
+        int high = to;
+        int step = 1;
+        while (high - step >= 0 && docs[high - step] > doc) {
+            high -= step;
+            step <<= 1;
+        }
+        return Arrays.binarySearch(docs, Math.max(0, high - step), high, doc);
+    }
+
+    /**
+     * Drops every message older than {@code floor}.
+     *
+     * @return how many were dropped
+     */
+    int prune(int floor) {
+        int cut = find(floor, size);
+        if (cut < 0) {
+            cut = -cut - 1;
+        }
+        if (cut == 0) {
+            return 0;
+        }
+        size -= cut;
+        int[] kept = new int[Math.max(2, size + (size >> 2))];
+        System.arraycopy(docs, cut, kept, 0, size);
+        docs = kept;
+        return cut;
+    }
+
+    long bytes() {
+        return 16 + 4L * docs.length;
+    }
+}
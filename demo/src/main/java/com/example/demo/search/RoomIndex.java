@@ -0,0 +1,258 @@
+package com.example.demo.search;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index of one room: folded term -> {@link Postings} of message
+ * sequence numbers.
+ *
+ * Every query term must match (AND). The last term also matches as a prefix
+ * unless the query ends with a space, so results follow the user's typing.
+ * Hits are ranked by the summed idf of the terms they matched, a prefix
+ * match counting half, then newest first.
+ */
+final class RoomIndex {
+
+    /**
+     * One page of ranked hits and the number of matching messages.
+     */
+    record Hits(int total, List<Long> seqs) {
+    }
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    // Mọi tin đã index: số document cho idf và mốc để prune
+    private final Postings all = new Postings();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    void add(long seq, List<String> messageTerms) {
+        int doc = (int) seq;
+        lock.writeLock().lock();
+        try {
+            all.add(doc);
+            for (String term : messageTerms) {
+                terms.computeIfAbsent(term, t -> new Postings()).add(doc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets messages older than {@code floorSeq}, e.g. evicted from history.
+     */
+    void prune(long floorSeq) {
+        int floor = (int) Math.min(Integer.MAX_VALUE, floorSeq);
+        lock.writeLock().lock();
+        try {
+            if (all.size() == 0 || all.get(0) >= floor) {
+                return;
+            }
+            all.prune(floor);
+            Iterator<Postings> it = terms.values().iterator();
+            while (it.hasNext()) {
+                Postings postings = it.next();
+                postings.prune(floor);
+                if (postings.size() == 0) {
+                    it.remove();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int documents() {
+        lock.readLock().lock();
+        try {
+            return all.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long bytes() {
+        lock.readLock().lock();
+        try {
+            long total = all.bytes();
+            for (Map.Entry<String, Postings> entry : terms.entrySet()) {
+                // entry TreeMap + String + Postings
+                total += 64 + 2L * entry.getKey().length() + entry.getValue().bytes();
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ================= SEARCH =================
+
+    // Một postings khớp một từ của query; position đi lùi (mới -> cũ), bound là giới hạn trên khi dò
+    private static final class Cursor {
+        final float weight;
+        final Postings postings;
+        int position;
+        int bound;
+
+        Cursor(float weight, Postings postings) {
+            this.weight = weight;
+            this.postings = postings;
+            this.position = postings.size() - 1;
+            this.bound = postings.size();
+        }
+
+        int doc() {
+            return postings.get(position);
+        }
+    }
+
+    // Các postings cùng khớp một từ của query (từ chính xác + các từ mở rộng theo tiền tố)
+    private static final class Group {
+        final List<Cursor> cursors = new ArrayList<>(1);
+        long size;
+
+        void add(Cursor cursor) {
+            cursors.add(cursor);
+            size += cursor.postings.size();
+        }
+    }
+
+    Hits search(List<String> tokens, boolean prefixLast, int maxPrefixTerms, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            int documents = all.size();
+            List<Group> groups = new ArrayList<>(tokens.size());
+            for (int i = 0; i < tokens.size(); i++) {
+                String token = tokens.get(i);
+                Group group = new Group();
+                Postings exact = terms.get(token);
+                if (exact != null) {
+                    group.add(new Cursor(idf(documents, exact.size()), exact));
+                }
+                if (prefixLast && i == tokens.size() - 1) {
+                    NavigableMap<String, Postings> expansions = terms.subMap(token, false, token + Character.MAX_VALUE,
+                            false);
+                    int taken = 0;
+                    for (Postings postings : expansions.values()) {
+                        if (taken++ == maxPrefixTerms) {
+                            break;
+                        }
+                        group.add(new Cursor(idf(documents, postings.size()) / 2, postings));
+                    }
+                }
+                if (group.size == 0) {
+                    return new Hits(0, List.of()); // AND: một từ không có -> không có kết quả
+                }
+                groups.add(group);
+            }
+            return rank(groups, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static float idf(int documents, int frequency) {
+        return (float) Math.log(1 + (double) documents / frequency);
+    }
+
+    /**
+     * Walks the smallest group newest first and keeps messages found in every
+     * other group by galloping search, so the cost follows the rarest query
+     * term rather than the most common one. The best {@code offset + limit}
+     * hits are kept in a min-heap.
+     */
+    private static Hits rank(List<Group> groups, int offset, int limit) {
+        groups.sort((a, b) -> Long.compare(a.size, b.size));
+        Group driver = groups.get(0);
+        Ranking ranking = new Ranking(offset + limit);
+
+        if (driver.cursors.size() == 1) {
+            // Trường hợp thường gặp: đi thẳng trên mảng, không cần heap
+            Cursor cursor = driver.cursors.get(0);
+            for (int i = cursor.postings.size() - 1; i >= 0; i--) {
+                int doc = cursor.postings.get(i);
+                ranking.offer(doc, score(groups, doc, cursor.weight));
+            }
+        } else {
+            PriorityQueue<Cursor> queue = new PriorityQueue<>((a, b) -> Integer.compare(b.doc(), a.doc()));
+            queue.addAll(driver.cursors);
+            while (!queue.isEmpty()) {
+                int doc = queue.peek().doc();
+                float weight = 0;
+                while (!queue.isEmpty() && queue.peek().doc() == doc) {
+                    Cursor cursor = queue.poll();
+                    weight = Math.max(weight, cursor.weight);
+                    if (--cursor.position >= 0) {
+                        queue.add(cursor);
+                    }
+                }
+                ranking.offer(doc, score(groups, doc, weight));
+            }
+        }
+        return ranking.page(offset, limit);
+    }
+
+    // Điểm của doc khi có trong mọi group còn lại, 0 nếu thiếu một group
+    private static float score(List<Group> groups, int doc, float driverWeight) {
+        float score = driverWeight;
+        for (int g = 1; g < groups.size(); g++) {
+            float weight = 0;
+            for (Cursor cursor : groups.get(g).cursors) {
+                // Duyệt từ mới -> cũ nên chỉ cần tìm trong phần còn lại [0, bound)
+                int found = cursor.postings.findBefore(doc, cursor.bound);
+                cursor.bound = found >= 0 ? found : -found - 1;
+                if (found >= 0) {
+                    weight = Math.max(weight, cursor.weight);
+                }
+            }
+            if (weight == 0) {
+                return 0;
+            }
+            score += weight;
+        }
+        return score;
+    }
+
+    private static final class Ranking {
+        final int keep;
+        // score (float bits) << 32 | doc: so sánh long = so sánh điểm rồi tới độ mới
+        final PriorityQueue<Long> best;
+        int total;
+
+        Ranking(int keep) {
+            this.keep = keep;
+            this.best = new PriorityQueue<>(keep + 1);
+        }
+
+        void offer(int doc, float score) {
+            if (score == 0) {
+                return;
+            }
+            total++;
+            long key = (long) Float.floatToIntBits(score) << 32 | doc;
+            if (best.size() < keep) {
+                best.add(key);
+            } else if (key > best.peek()) {
+                best.poll();
+                best.add(key);
+            }
+        }
+
+        Hits page(int offset, int limit) {
+            List<Long> ranked = new ArrayList<>(best);
+            ranked.sort((a, b) -> Long.compare(b, a));
+            List<Long> page = new ArrayList<>(Math.min(limit, ranked.size()));
+            for (int i = offset; i < ranked.size(); i++) {
+                page.add(ranked.get(i) & 0xFFFF_FFFFL);
+            }
+            return new Hits(total, page);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.demo.search;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.history.HistoryEntry;
+import com.example.demo.history.HistoryStore;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Full-text search over room history, one {@link RoomIndex} per room.
+ *
+ * Handlers call {@link #index} right after appending a MSG or FILE frame to
+ * the {@link HistoryStore}, so the index follows the history incrementally;
+ * on startup it is rebuilt from whatever the store kept (the log store
+ * survives restarts). Only the message text and file names are indexed.
+ *
+ * The index never outgrows the history: every {@code PRUNE_EVERY} appends
+ * of a room it drops messages the store has already evicted, and it keeps
+ * at most {@code chat.search.max-documents} messages per room.
+ */
+@Component
+public class SearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndex.class);
+
+    private static final int PRUNE_EVERY = 1024;
+    private static final int MAX_QUERY_TERMS = 8;
+    private static final int REBUILD_PAGE = 1000;
+
+    /**
+     * One page of results: the frames as stored in history and the number of
+     * matching messages.
+     */
+    public record Result(int total, List<HistoryEntry> entries) {
+    }
+
+    private final HistoryStore chatHistory;
+    private final int maxDocuments;
+    private final int maxPrefixTerms;
+
+    private final Map<String, RoomIndex> rooms = new ConcurrentHashMap<>();
+    // Số lần index của mỗi phòng kể từ lần prune gần nhất
+    private final Map<String, Integer> sincePrune = new ConcurrentHashMap<>();
+
+    public SearchIndex(HistoryStore chatHistory,
+            @Value("${chat.search.max-documents:1000000}") int maxDocuments,
+            @Value("${chat.search.max-prefix-terms:64}") int maxPrefixTerms) {
+        this.chatHistory = chatHistory;
+        this.maxDocuments = maxDocuments;
+        this.maxPrefixTerms = maxPrefixTerms;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        long started = System.nanoTime();
+        long documents = 0;
+        for (String room : chatHistory.rooms()) {
+            List<HistoryEntry> newest = chatHistory.latest(room, 1);
+            if (newest.isEmpty()) {
+                continue;
+            }
+            // Cũ -> mới theo từng trang để postings luôn chỉ append
+            long seq = Math.max(0, newest.get(0).seq() - maxDocuments);
+            List<HistoryEntry> page;
+            while (!(page = chatHistory.after(room, seq, REBUILD_PAGE)).isEmpty()) {
+                for (HistoryEntry entry : page) {
+                    index(room, entry.seq(), entry.message());
+                }
+                documents += page.size();
+                seq = page.get(page.size() - 1).seq();
+            }
+        }
+        if (documents > 0) {
+            log.info("Indexed {} history messages of {} rooms in {} ms", documents, rooms.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        }
+    }
+
+    /**
+     * Indexes a frame just appended to the room's history as {@code seq}.
+     * Frames other than MSG and FILE are ignored.
+     */
+    public void index(String room, long seq, String frame) {
+        String text = searchableText(frame);
+        if (text == null || seq <= 0 || seq > Integer.MAX_VALUE) {
+            return;
+        }
+        RoomIndex index = rooms.computeIfAbsent(room, r -> new RoomIndex());
+        index.add(seq, TextFolding.terms(text));
+
+        if (sincePrune.merge(room, 1, Integer::sum) >= PRUNE_EVERY) {
+            sincePrune.put(room, 0);
+            prune(room, index, seq);
+        }
+    }
+
+    // MSG|user|text|ts và FILE|user|url|type|name|size|ts|thumb
+    private static String searchableText(String frame) {
+        ChatMessage message = ChatCodec.decode(frame);
+        return switch (message.get(0)) {
+            case "MSG" -> message.has(2) ? message.get(2) : null;
+            case "FILE" -> message.has(4) ? message.get(4) : null;
+            default -> null;
+        };
+    }
+
+    private void prune(String room, RoomIndex index, long newest) {
+        List<HistoryEntry> oldestKept = chatHistory.after(room, 0, 1);
+        long floor = oldestKept.isEmpty() ? newest + 1 : oldestKept.get(0).seq();
+        index.prune(Math.max(floor, newest - maxDocuments + 1));
+    }
+
+    public void remove(String room) {
+        rooms.remove(room);
+        sincePrune.remove(room);
+    }
+
+    /**
+     * Ranked matches of {@code query} in the room's history.
+     *
+     * @see RoomIndex
+     */
+    public Result search(String room, String query, int offset, int limit) {
+        RoomIndex index = rooms.get(room);
+        List<String> tokens = new ArrayList<>(new LinkedHashSet<>(TextFolding.terms(query)));
+        if (index == null || tokens.isEmpty() || limit <= 0) {
+            return new Result(0, List.of());
+        }
+        if (tokens.size() > MAX_QUERY_TERMS) {
+            tokens = tokens.subList(0, MAX_QUERY_TERMS);
+        }
+        // Đang gõ dở từ cuối -> cho khớp tiền tố
+        boolean prefixLast = !Character.isWhitespace(query.charAt(query.length() - 1));
+
+        RoomIndex.Hits hits = index.search(tokens, prefixLast, maxPrefixTerms, offset, limit);
+        List<HistoryEntry> entries = new ArrayList<>(hits.seqs().size());
+        for (long seq : hits.seqs()) {
+            List<HistoryEntry> found = chatHistory.after(room, seq - 1, 1);
+            // Tin đã bị history evict nhưng chưa prune khỏi index: bỏ qua
+            if (!found.isEmpty() && found.get(0).seq() == seq) {
+                entries.add(found.get(0));
+            }
+        }
+        return new Result(hits.total(), entries);
+    }
+
+    public int documents() {
+        return rooms.values().stream().mapToInt(RoomIndex::documents).sum();
+    }
+
+    /**
+     * Estimated heap used by all room indexes.
+     */
+    public long bytes() {
+        return rooms.values().stream().mapToLong(RoomIndex::bytes).sum();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.demo.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text into search terms: lower case, Vietnamese diacritics removed
+ * ({@code "Việt Nam"} -> {@code viet}, {@code nam}; {@code đ} -> {@code d}),
+ * so a query matches with or without accents.
+ */
+public final class TextFolding {
+
+    // Từ dài hơn chừng này (URL, chuỗi hash...) bị cắt, không làm phình từ điển
+    static final int MAX_TERM_LENGTH = 32;
+
+    private TextFolding() {
+    }
+
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean word = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                terms.add(folded.substring(start, Math.min(i, start + MAX_TERM_LENGTH)));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Lower case without combining marks. Pure ASCII text, the common case,
+     * skips Unicode normalization.
+     */
+    public static String fold(String text) {
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            return text.toLowerCase(Locale.ROOT);
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder out = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            // đ/Đ không tách được bằng NFD
+            out.append(c == 'đ' || c == 'Đ' ? 'd' : Character.toLowerCase(c));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,423 @@
+package com.example.demo.storage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Content-addressed store for uploaded files.
+ *
+ * File bytes live once under {@code blobs/<aa>/<sha256>}; every upload gets
+ * its own public id ({@code <uuid>.<ext>}) pointing at a blob, and blobs are
+ * reference-counted by those ids. The id -> blob index is an append-only
+ * journal ({@code blobs/index.log}) replayed and compacted on startup.
+ * Blobs without references are deleted by a background sweep.
+ *
+ * An id is released only by its owner: the chat message its uploader sent
+ * with the upload's {@link #claim} ({@link #adopt}), once that message leaves
+ * the history.
+ */
+@Component
+public class BlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobStore.class);
+
+    /**
+     * One public file id and the blob it points at.
+     */
+    public record FileEntry(String id, String hash, String originalName, long size) {
+    }
+
+    private final Path uploadDir;
+    private final Path blobDir;
+    private final Path tmpDir;
+    private final Path journalFile;
+    private final Duration gcGrace;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Chỉ đọc/ghi dưới lock của this
+    private final Map<String, FileEntry> files = new HashMap<>();
+    private final Map<String, Integer> refCounts = new HashMap<>();
+    // id -> tin nhắn sở hữu id (ChatCodec của epoch, phòng, seq); id chưa có chủ không bao giờ bị release
+    private final Map<String, String> owners = new HashMap<>();
+    // id -> token chỉ người upload nhận được; dùng một lần để nhận quyền sở hữu
+    private final Map<String, String> claims = new HashMap<>();
+    // hash -> thời điểm refcount về 0, để GC chờ qua grace period
+    private final Map<String, Long> unreferencedSince = new HashMap<>();
+    private BufferedWriter journal;
+
+    public BlobStore(
+            @Value("${chat.upload.dir:uploads/}") String uploadDir,
+            @Value("${chat.upload.gc-grace:1h}") Duration gcGrace,
+            @Value("${chat.upload.migrate-legacy:false}") boolean migrateLegacy) throws IOException {
+        this.uploadDir = Paths.get(uploadDir);
+        this.blobDir = this.uploadDir.resolve("blobs");
+        this.tmpDir = blobDir.resolve("tmp");
+        this.journalFile = blobDir.resolve("index.log");
+        this.gcGrace = gcGrace;
+
+        Files.createDirectories(tmpDir);
+        replay();
+        compact();
+        if (migrateLegacy) {
+            migrateLegacyFiles();
+        }
+    }
+
+    // ================= WRITE =================
+
+    /**
+     * Streams {@code in} to disk while hashing it, then stores the content
+     * under its SHA-256 (or drops the copy if that content is already known).
+     */
+    public FileEntry store(InputStream in, String originalName) throws IOException {
+        Path tmp = tmpDir.resolve(UUID.randomUUID() + ".tmp");
+        MessageDigest digest = sha256();
+        long size;
+        try (InputStream hashing = new DigestInputStream(in, digest);
+                OutputStream out = Files.newOutputStream(tmp)) {
+            size = hashing.transferTo(out);
+        }
+        return commit(tmp, HexFormat.of().formatHex(digest.digest()), size, originalName);
+    }
+
+    /**
+     * Stores a file already on disk (e.g. an assembled chunked upload) whose
+     * hash has been computed by the caller.
+     */
+    public FileEntry storeFile(Path file, String hash, String originalName) throws IOException {
+        return commit(file, hash, Files.size(file), originalName);
+    }
+
+    private FileEntry commit(Path tmp, String hash, long size, String originalName) throws IOException {
+        Path blob = blobPath(hash);
+        synchronized (this) {
+            if (Files.exists(blob)) {
+                // Nội dung đã có: bỏ bản vừa ghi, chỉ thêm reference
+                Files.delete(tmp);
+            } else {
+                Files.createDirectories(blob.getParent());
+                Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return addEntry(newId(originalName), hash, originalName, size);
+        }
+    }
+
+    /**
+     * Token handed to the uploader of {@code id} only, or null once the id
+     * has an owner.
+     */
+    public synchronized String claim(String id) {
+        return claims.get(id);
+    }
+
+    /**
+     * Records {@code owner} as the one reference holder allowed to release
+     * {@code id}. Needs the upload's {@link #claim}, so a message that merely
+     * repeats someone else's file URL cannot become the owner and drop it.
+     *
+     * @return whether {@code owner} now owns the id
+     */
+    public synchronized boolean adopt(String id, String owner, String claim) throws IOException {
+        String expected = claims.get(id);
+        if (expected == null || claim == null || !MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.UTF_8), claim.getBytes(StandardCharsets.UTF_8))) {
+            return false;
+        }
+        claims.remove(id);
+        owners.put(id, owner);
+        writeJournal(Map.of("op", "own", "id", id, "owner", owner));
+        return true;
+    }
+
+    /**
+     * Releases every owned id whose owner {@code orphaned} accepts, e.g.
+     * owners keyed to a history that did not survive a restart.
+     *
+     * @return the number of ids released
+     */
+    public synchronized int releaseOwners(Predicate<String> orphaned) throws IOException {
+        List<String> ids = owners.entrySet().stream()
+                .filter(owner -> orphaned.test(owner.getValue()))
+                .map(Map.Entry::getKey)
+                .toList();
+        for (String id : ids) {
+            release(id);
+        }
+        return ids.size();
+    }
+
+    /**
+     * Drops the reference {@code id} if {@code owner} owns it; the blob is
+     * garbage-collected once unreferenced.
+     */
+    public synchronized boolean release(String id, String owner) throws IOException {
+        if (!owner.equals(owners.get(id))) {
+            return false;
+        }
+        return release(id);
+    }
+
+    synchronized boolean release(String id) throws IOException {
+        FileEntry entry = files.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        owners.remove(id);
+        claims.remove(id);
+        decrement(entry.hash());
+        writeJournal(Map.of("op", "del", "id", id));
+        return true;
+    }
+
+    private FileEntry addEntry(String id, String hash, String originalName, long size) throws IOException {
+        FileEntry entry = new FileEntry(id, hash, originalName, size);
+        files.put(id, entry);
+        refCounts.merge(hash, 1, Integer::sum);
+        unreferencedSince.remove(hash);
+        String claim = UUID.randomUUID().toString();
+        claims.put(id, claim);
+
+        Map<String, Object> op = new HashMap<>();
+        op.put("op", "put");
+        op.put("id", id);
+        op.put("hash", hash);
+        op.put("name", originalName);
+        op.put("size", size);
+        op.put("claim", claim);
+        writeJournal(op);
+        return entry;
+    }
+
+    private void decrement(String hash) {
+        Integer refs = refCounts.merge(hash, -1, Integer::sum);
+        if (refs != null && refs <= 0) {
+            refCounts.remove(hash);
+            unreferencedSince.put(hash, System.currentTimeMillis());
+        }
+    }
+
+    // ================= READ =================
+
+    public synchronized FileEntry get(String id) {
+        return files.get(id);
+    }
+
+    public Path blobPath(String hash) {
+        return blobDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    // ================= JOURNAL =================
+
+    private void writeJournal(Map<String, Object> op) throws IOException {
+        journal.write(objectMapper.writeValueAsString(op));
+        journal.newLine();
+        journal.flush();
+    }
+
+    private void replay() throws IOException {
+        if (!Files.exists(journalFile)) {
+            return;
+        }
+        for (String line : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            Map<?, ?> op;
+            try {
+                op = objectMapper.readValue(line, Map.class);
+            } catch (IOException e) {
+                log.warn("Skipping unreadable blob index line: {}", e.getMessage());
+                continue; // dòng cuối ghi dở khi crash
+            }
+            String id = (String) op.get("id");
+            if ("put".equals(op.get("op"))) {
+                FileEntry entry = new FileEntry(id, (String) op.get("hash"), (String) op.get("name"),
+                        ((Number) op.get("size")).longValue());
+                FileEntry previous = files.put(id, entry);
+                if (previous != null) {
+                    decrement(previous.hash());
+                }
+                refCounts.merge(entry.hash(), 1, Integer::sum);
+                unreferencedSince.remove(entry.hash());
+                if (op.get("owner") != null) {
+                    owners.put(id, (String) op.get("owner"));
+                } else if (op.get("claim") != null) {
+                    claims.put(id, (String) op.get("claim"));
+                }
+            } else if ("own".equals(op.get("op"))) {
+                if (files.containsKey(id)) {
+                    claims.remove(id);
+                    owners.put(id, (String) op.get("owner"));
+                }
+            } else if ("del".equals(op.get("op"))) {
+                owners.remove(id);
+                claims.remove(id);
+                FileEntry entry = files.remove(id);
+                if (entry != null) {
+                    decrement(entry.hash());
+                }
+            }
+        }
+    }
+
+    // Ghi lại journal chỉ với các entry còn sống
+    private synchronized void compact() throws IOException {
+        Path tmp = blobDir.resolve("index.log.tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (FileEntry entry : files.values()) {
+                Map<String, Object> op = new HashMap<>();
+                op.put("op", "put");
+                op.put("id", entry.id());
+                op.put("hash", entry.hash());
+                op.put("name", entry.originalName());
+                op.put("size", entry.size());
+                if (owners.containsKey(entry.id())) {
+                    op.put("owner", owners.get(entry.id()));
+                } else if (claims.containsKey(entry.id())) {
+                    op.put("claim", claims.get(entry.id()));
+                }
+                out.write(objectMapper.writeValueAsString(op));
+                out.newLine();
+            }
+        }
+        Files.move(tmp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    // File cũ nằm thẳng trong uploads/ (trước khi có blob store): chuyển vào store, giữ nguyên id
+    private void migrateLegacyFiles() throws IOException {
+        List<Path> legacy;
+        try (Stream<Path> list = Files.list(uploadDir)) {
+            legacy = list.filter(Files::isRegularFile).toList();
+        }
+        for (Path file : legacy) {
+            String id = file.getFileName().toString();
+            if (files.containsKey(id)) {
+                continue;
+            }
+            String hash = hashFile(file);
+            Path blob = blobPath(hash);
+            synchronized (this) {
+                if (Files.exists(blob)) {
+                    Files.delete(file);
+                } else {
+                    Files.createDirectories(blob.getParent());
+                    Files.move(file, blob);
+                }
+                addEntry(id, hash, id, Files.size(blob));
+            }
+        }
+        if (!legacy.isEmpty()) {
+            log.info("Migrated {} legacy uploads into the blob store", legacy.size());
+        }
+    }
+
+    // ================= GC =================
+
+    @Scheduled(fixedDelayString = "${chat.upload.gc-interval:PT10M}", initialDelayString = "PT1M")
+    public void collectGarbage() {
+        long cutoff = System.currentTimeMillis() - gcGrace.toMillis();
+        int deleted = 0;
+        try (Stream<Path> shards = Files.list(blobDir)) {
+            for (Path shard : (Iterable<Path>) shards.filter(d -> d.getFileName().toString().length() == 2)::iterator) {
+                try (Stream<Path> blobs = Files.list(shard)) {
+                    for (Path blob : (Iterable<Path>) blobs::iterator) {
+                        if (deleteIfUnreferenced(blob.getFileName().toString(), blob, cutoff)) {
+                            deleted++;
+                        }
+                    }
+                }
+            }
+            // File tạm của upload bị gián đoạn
+            try (Stream<Path> tmps = Files.list(tmpDir)) {
+                for (Path tmp : (Iterable<Path>) tmps::iterator) {
+                    if (Files.getLastModifiedTime(tmp).toMillis() < cutoff) {
+                        Files.deleteIfExists(tmp);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Blob garbage collection failed: {}", e.getMessage());
+        }
+        if (deleted > 0) {
+            log.info("Deleted {} unreferenced blobs", deleted);
+        }
+    }
+
+    private synchronized boolean deleteIfUnreferenced(String hash, Path blob, long cutoff) throws IOException {
+        if (refCounts.containsKey(hash)) {
+            return false;
+        }
+        // Blob mồ côi (crash giữa move và ghi journal) cũng được tính từ mtime
+        long since = unreferencedSince.getOrDefault(hash, Files.getLastModifiedTime(blob).toMillis());
+        if (since > cutoff) {
+            return false;
+        }
+        unreferencedSince.remove(hash);
+        return Files.deleteIfExists(blob);
+    }
+
+    // ================= UTILS =================
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hashFile(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String newId(String originalName) {
+        int dot = originalName != null ? originalName.lastIndexOf('.') : -1;
+        return UUID.randomUUID() + (dot >= 0 ? originalName.substring(dot) : "");
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        journal.close();
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.demo.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * State of one resumable upload: the preallocated {@code .part} file and
+ * which fixed-size chunks of it have been written.
+ */
+public class ChunkedUpload {
+
+    private final String id;
+    private final String originalFilename;
+    private final long size;
+    private final int chunkSize;
+    private final Path partFile;
+    private final BitSet received;
+    // Chunk đang được ghi: không cho request khác ghi cùng chunk
+    private final BitSet writing = new BitSet();
+
+    private FileChannel channel;
+    private volatile long lastTouched = System.currentTimeMillis();
+
+    // SHA-256 tính dần theo thứ tự chunk: chunk liền mạch đã nhận được hash ngay
+    // (đọc lại từ page cache), lúc complete chỉ còn phần chưa hash. Sau restart hash lại từ đầu.
+    private final Object hashLock = new Object();
+    private final MessageDigest digest = BlobStore.sha256();
+    private int hashedChunks;
+    private String hash;
+
+    ChunkedUpload(String id, String originalFilename, long size, int chunkSize, Path partFile, BitSet received) {
+        this.id = id;
+        this.originalFilename = originalFilename;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.partFile = partFile;
+        this.received = received;
+    }
+
+    // Mở lazily: sau restart upload được nạp lại từ file .json nhưng chưa mở channel
+    synchronized FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+    synchronized void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    public int chunkCount() {
+        return (int) ((size + chunkSize - 1) / chunkSize);
+    }
+
+    // Độ dài đúng của chunk thứ index (chunk cuối có thể ngắn hơn)
+    public long chunkLength(int index) {
+        return Math.min(chunkSize, size - (long) index * chunkSize);
+    }
+
+    /**
+     * Reserves chunk {@code index} for one writer. Fails if the chunk is
+     * being written or already received: its bytes may already be in the
+     * digest, so they must never change again.
+     */
+    synchronized boolean claim(int index) {
+        if (received.get(index) || writing.get(index)) {
+            return false;
+        }
+        writing.set(index);
+        return true;
+    }
+
+    // Ghi lỗi: trả chunk lại để client gửi lại
+    synchronized void unclaim(int index) {
+        writing.clear(index);
+    }
+
+    synchronized void markReceived(int index) {
+        writing.clear(index);
+        received.set(index);
+        lastTouched = System.currentTimeMillis();
+    }
+
+    synchronized boolean isReceived(int index) {
+        return received.get(index);
+    }
+
+    /**
+     * Feeds every contiguous received chunk not yet hashed into the digest.
+     */
+    void advanceHash() throws IOException {
+        synchronized (hashLock) {
+            ByteBuffer buffer = null;
+            while (hashedChunks < chunkCount() && isReceived(hashedChunks)) {
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocateDirect(64 * 1024);
+                }
+                long position = (long) hashedChunks * chunkSize;
+                long end = position + chunkLength(hashedChunks);
+                FileChannel ch = channel();
+                while (position < end) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                    int read = ch.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of " + partFile);
+                    }
+                    buffer.flip();
+                    digest.update(buffer);
+                    position += read;
+                }
+                hashedChunks++;
+            }
+        }
+    }
+
+    /**
+     * Hex SHA-256 of the whole file; only valid once every chunk is received.
+     */
+    String finishHash() throws IOException {
+        advanceHash();
+        synchronized (hashLock) {
+            if (hashedChunks < chunkCount()) {
+                throw new IllegalStateException("Upload " + id + " is missing chunks");
+            }
+            if (hash == null) {
+                hash = HexFormat.of().formatHex(digest.digest());
+            }
+            return hash;
+        }
+    }
+
+    public synchronized boolean isComplete() {
+        return received.cardinality() == chunkCount();
+    }
+
+    public synchronized List<Integer> receivedChunks() {
+        List<Integer> chunks = new ArrayList<>(received.cardinality());
+        for (int i = received.nextSetBit(0); i >= 0; i = received.nextSetBit(i + 1)) {
+            chunks.add(i);
+        }
+        return chunks;
+    }
+
+    synchronized long[] receivedBits() {
+        return received.toLongArray();
+    }
+
+    void touch() {
+        lastTouched = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    Path getPartFile() {
+        return partFile;
+    }
+
+    long getLastTouched() {
+        return lastTouched;
+    }
+}
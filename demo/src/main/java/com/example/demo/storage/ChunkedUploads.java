@@ -0,0 +1,219 @@
+package com.example.demo.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Resumable, chunked uploads written straight into a preallocated file.
+ *
+ * Chunks may arrive in any order and in parallel; each one is written with a
+ * positional {@link FileChannel#write(ByteBuffer, long)} at its own offset, so
+ * the body is stored once with no multipart temp file. The set of received
+ * chunks is persisted next to the {@code .part} file, which lets a client
+ * resume after a dropped connection or a server restart.
+ */
+@Component
+public class ChunkedUploads {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkedUploads.class);
+
+    private final Map<String, ChunkedUpload> uploads = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path partialDir;
+    private final int chunkSize;
+    private final long maxSize;
+    private final Duration expiry;
+    private final BlobStore blobStore;
+
+    public ChunkedUploads(
+            BlobStore blobStore,
+            @Value("${chat.upload.dir:uploads/}") String uploadDir,
+            @Value("${chat.upload.chunk-size:8MB}") DataSize chunkSize,
+            @Value("${chat.upload.max-size:10GB}") DataSize maxSize,
+            @Value("${chat.upload.expiry:24h}") Duration expiry) throws IOException {
+        this.partialDir = Paths.get(uploadDir, ".partial");
+        this.chunkSize = (int) chunkSize.toBytes();
+        this.maxSize = maxSize.toBytes();
+        this.expiry = expiry;
+        this.blobStore = blobStore;
+        Files.createDirectories(partialDir);
+        reload();
+    }
+
+    public ChunkedUpload init(String originalFilename, long size) throws IOException {
+        if (size < 0 || size > maxSize) {
+            throw new IllegalArgumentException("File size must be between 0 and " + maxSize + " bytes");
+        }
+        String id = UUID.randomUUID().toString();
+        Path partFile = partialDir.resolve(id + ".part");
+
+        // Cấp trước đủ kích thước để các chunk ghi song song vào đúng offset
+        try (RandomAccessFile file = new RandomAccessFile(partFile.toFile(), "rw")) {
+            file.setLength(size);
+        }
+
+        ChunkedUpload upload = new ChunkedUpload(id, originalFilename, size, chunkSize, partFile, new BitSet());
+        saveState(upload);
+        uploads.put(id, upload);
+        return upload;
+    }
+
+    public ChunkedUpload get(String id) {
+        ChunkedUpload upload = uploads.get(id);
+        if (upload != null) {
+            upload.touch();
+        }
+        return upload;
+    }
+
+    /**
+     * Writes one chunk read from {@code body} at {@code offset}. The offset must
+     * be a chunk boundary and the body exactly that chunk's length; a chunk is
+     * written once (IllegalStateException if it was already received). A
+     * zero-byte upload has no chunks and takes no PUT at all.
+     */
+    public void writeChunk(ChunkedUpload upload, long offset, InputStream body) throws IOException {
+        if (offset < 0 || offset % upload.getChunkSize() != 0 || offset >= upload.getSize()) {
+            throw new IllegalArgumentException("Offset " + offset + " is not a chunk boundary");
+        }
+        int index = (int) (offset / upload.getChunkSize());
+        long expected = upload.chunkLength(index);
+        if (!upload.claim(index)) {
+            throw new IllegalStateException("Chunk " + index + " was already received");
+        }
+        try {
+            write(upload, index, offset, expected, body);
+        } catch (IOException | RuntimeException e) {
+            upload.unclaim(index);
+            throw e;
+        }
+        upload.markReceived(index);
+        saveState(upload);
+        upload.advanceHash();
+    }
+
+    private void write(ChunkedUpload upload, int index, long offset, long expected, InputStream body)
+            throws IOException {
+        FileChannel channel = upload.channel();
+        ReadableByteChannel in = Channels.newChannel(body);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        long written = 0;
+        while (true) {
+            int read = in.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            if (written + buffer.position() > expected) {
+                throw new IllegalArgumentException("Chunk " + index + " is longer than " + expected + " bytes");
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer, offset + written);
+            }
+            buffer.clear();
+        }
+        if (written != expected) {
+            throw new IllegalArgumentException("Chunk " + index + " has " + written + " of " + expected + " bytes");
+        }
+    }
+
+    /**
+     * Hands a fully received upload to the {@link BlobStore} and forgets it.
+     */
+    public BlobStore.FileEntry complete(ChunkedUpload upload) throws IOException {
+        if (!upload.isComplete()) {
+            throw new IllegalStateException("Upload " + upload.getId() + " is missing chunks");
+        }
+        String hash = upload.finishHash();
+        upload.channel().force(false);
+        upload.closeChannel();
+        BlobStore.FileEntry entry = blobStore.storeFile(upload.getPartFile(), hash, upload.getOriginalFilename());
+        Files.deleteIfExists(stateFile(upload.getId()));
+        uploads.remove(upload.getId());
+        return entry;
+    }
+
+    private Path stateFile(String id) {
+        return partialDir.resolve(id + ".json");
+    }
+
+    // Ghi ra file tạm rồi rename để không bao giờ để lại file .json ghi dở
+    private void saveState(ChunkedUpload upload) throws IOException {
+        Map<String, Object> state = new HashMap<>();
+        state.put("filename", upload.getOriginalFilename());
+        state.put("size", upload.getSize());
+        state.put("chunkSize", upload.getChunkSize());
+        state.put("received", upload.receivedBits());
+
+        Path tmp = partialDir.resolve(upload.getId() + ".json.tmp");
+        synchronized (upload) {
+            objectMapper.writeValue(tmp.toFile(), state);
+            Files.move(tmp, stateFile(upload.getId()), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private void reload() throws IOException {
+        try (Stream<Path> files = Files.list(partialDir)) {
+            for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".json"))::iterator) {
+                String name = file.getFileName().toString();
+                String id = name.substring(0, name.length() - ".json".length());
+                try {
+                    Map<?, ?> state = objectMapper.readValue(file.toFile(), Map.class);
+                    long[] bits = objectMapper.convertValue(state.get("received"), long[].class);
+                    ChunkedUpload upload = new ChunkedUpload(id, (String) state.get("filename"),
+                            ((Number) state.get("size")).longValue(), ((Number) state.get("chunkSize")).intValue(),
+                            partialDir.resolve(id + ".part"), BitSet.valueOf(bits));
+                    uploads.put(id, upload);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Dropping unreadable upload state {}: {}", file, e.getMessage());
+                    Files.deleteIfExists(file);
+                    Files.deleteIfExists(partialDir.resolve(id + ".part"));
+                }
+            }
+        }
+    }
+
+    // Dọn các upload bỏ dở quá hạn
+    @Scheduled(fixedDelay = 10 * 60 * 1000)
+    public void expire() {
+        long cutoff = System.currentTimeMillis() - expiry.toMillis();
+        for (ChunkedUpload upload : uploads.values()) {
+            if (upload.getLastTouched() < cutoff && uploads.remove(upload.getId(), upload)) {
+                try {
+                    upload.closeChannel();
+                    Files.deleteIfExists(upload.getPartFile());
+                    Files.deleteIfExists(stateFile(upload.getId()));
+                } catch (IOException e) {
+                    log.warn("Cannot delete expired upload {}: {}", upload.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+}
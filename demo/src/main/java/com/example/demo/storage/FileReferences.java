@@ -0,0 +1,94 @@
+package com.example.demo.storage;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.history.HistoryEntry;
+import com.example.demo.history.HistoryStore;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+
+/**
+ * Ties an uploaded file to the room message that shared it: the file's
+ * {@link BlobStore} reference is dropped when that message leaves the history
+ * (retention or room deletion), after which the blob can be collected.
+ */
+@Component
+public class FileReferences implements HistoryStore.EvictionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(FileReferences.class);
+
+    private static final String FILE_URL_PREFIX = "/api/files/";
+
+    private final BlobStore blobStore;
+    private final HistoryStore chatHistory;
+
+    public FileReferences(BlobStore blobStore, HistoryStore chatHistory) {
+        this.blobStore = blobStore;
+        this.chatHistory = chatHistory;
+        chatHistory.setEvictionListener(this);
+        releaseOrphans();
+    }
+
+    /**
+     * Makes the FILE message stored at {@code seq} the owner of the upload
+     * behind {@code fileUrl}, if {@code claim} is the one its uploader got.
+     */
+    public void adopt(String room, long seq, String fileUrl, String claim) {
+        String id = fileId(fileUrl);
+        if (id == null) {
+            return;
+        }
+        try {
+            blobStore.adopt(id, owner(room, seq), claim);
+        } catch (IOException e) {
+            log.warn("Cannot record owner of file {}: {}", id, e.getMessage());
+        }
+    }
+
+    @Override
+    public void evicted(String room, HistoryEntry entry) {
+        if (!entry.message().startsWith("FILE|")) {
+            return;
+        }
+        ChatMessage frame = ChatCodec.decode(entry.message());
+        String id = fileId(frame.get(2, ""));
+        if (id == null) {
+            return;
+        }
+        try {
+            blobStore.release(id, owner(room, entry.seq()));
+        } catch (IOException e) {
+            log.warn("Cannot release file {}: {}", id, e.getMessage());
+        }
+    }
+
+    // Tin sở hữu thuộc epoch khác (vd. history trong RAM sau restart) không bao giờ bị evict nữa
+    private void releaseOrphans() {
+        String current = chatHistory.epoch() + "|";
+        try {
+            int released = blobStore.releaseOwners(owner -> !owner.startsWith(current));
+            if (released > 0) {
+                log.info("Released {} files owned by messages of an earlier history", released);
+            }
+        } catch (IOException e) {
+            log.warn("Cannot release files of an earlier history: {}", e.getMessage());
+        }
+    }
+
+    // Seq chỉ duy nhất trong một epoch của history store
+    private String owner(String room, long seq) {
+        return ChatCodec.encode(chatHistory.epoch(), room, Long.toString(seq));
+    }
+
+    private static String fileId(String fileUrl) {
+        if (fileUrl == null || !fileUrl.startsWith(FILE_URL_PREFIX)) {
+            return null;
+        }
+        String id = fileUrl.substring(FILE_URL_PREFIX.length());
+        return id.isEmpty() || id.contains("/") ? null : id;
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.demo.storage;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Downscaled previews of image uploads.
+ *
+ * Thumbnails are rendered with {@code javax.imageio} on a small bounded pool
+ * right after upload and cached on disk by blob hash, so identical images
+ * share one thumbnail. The cache is evicted least-recently-used once it
+ * exceeds {@code chat.thumbnail.cache-size}.
+ */
+@Component
+public class ThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailService.class);
+
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of(".jpg", ".jpeg", ".png", ".gif", ".bmp", ".webp");
+
+    private final BlobStore blobStore;
+    private final Path thumbDir;
+    private final int maxDimension;
+    private final long maxSourceBytes;
+    private final long cacheBytes;
+    private final ThreadPoolExecutor executor;
+
+    // hash -> job đang chạy, để nhiều request cùng ảnh chỉ render một lần
+    private final Map<String, CompletableFuture<Path>> pending = new ConcurrentHashMap<>();
+
+    // LRU theo thứ tự truy cập: file thumbnail -> kích thước
+    private final LinkedHashMap<Path, Long> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+
+    public ThumbnailService(
+            BlobStore blobStore,
+            @Value("${chat.upload.dir:uploads/}") String uploadDir,
+            @Value("${chat.thumbnail.max-dimension:320}") int maxDimension,
+            @Value("${chat.thumbnail.max-source-size:40MB}") DataSize maxSourceSize,
+            @Value("${chat.thumbnail.cache-size:256MB}") DataSize cacheSize,
+            @Value("${chat.thumbnail.threads:2}") int threads,
+            @Value("${chat.thumbnail.queue:256}") int queue) throws IOException {
+        this.blobStore = blobStore;
+        this.thumbDir = Paths.get(uploadDir, "thumbs");
+        this.maxDimension = maxDimension;
+        this.maxSourceBytes = maxSourceSize.toBytes();
+        this.cacheBytes = cacheSize.toBytes();
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queue), r -> {
+                    Thread t = new Thread(r, "thumb-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+
+        // Không để ImageIO ghi file tạm ra java.io.tmpdir
+        ImageIO.setUseCache(false);
+        Files.createDirectories(thumbDir);
+        loadCache();
+    }
+
+    /**
+     * Whether a thumbnail can be made for this file: an image format the
+     * installed ImageIO readers understand, and not too large to decode.
+     */
+    public boolean supports(BlobStore.FileEntry entry) {
+        String extension = extension(entry.id());
+        return IMAGE_EXTENSIONS.contains(extension) && entry.size() <= maxSourceBytes
+                && ImageIO.getImageReadersBySuffix(extension.substring(1)).hasNext();
+    }
+
+    /**
+     * {@code <url>?variant=thumb} for an uploaded image, or {@code ""} when
+     * the URL is not a blob-store file with a thumbnail.
+     */
+    public String thumbnailUrl(String fileUrl) {
+        String prefix = "/api/files/";
+        if (fileUrl == null || !fileUrl.startsWith(prefix)) {
+            return "";
+        }
+        BlobStore.FileEntry entry = blobStore.get(fileUrl.substring(prefix.length()));
+        return entry != null && supports(entry) ? fileUrl + "?variant=thumb" : "";
+    }
+
+    /**
+     * Queues thumbnail generation right after upload.
+     */
+    public void prefetch(BlobStore.FileEntry entry) {
+        if (supports(entry)) {
+            thumbnail(entry);
+        }
+    }
+
+    /**
+     * The cached thumbnail, rendering it on the pool if needed. Completes with
+     * {@code null} when the image cannot be decoded or the pool is saturated.
+     */
+    public CompletableFuture<Path> thumbnail(BlobStore.FileEntry entry) {
+        Path target = thumbDir.resolve(entry.hash() + ".jpg");
+        Path alphaTarget = thumbDir.resolve(entry.hash() + ".png");
+        for (Path path : List.of(target, alphaTarget)) {
+            if (touch(path)) {
+                return CompletableFuture.completedFuture(path);
+            }
+        }
+        CompletableFuture<Path> job = pending.computeIfAbsent(entry.hash(), hash -> {
+            CompletableFuture<Path> future = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    try {
+                        future.complete(render(blobStore.blobPath(hash), hash));
+                    } catch (IOException | RuntimeException e) {
+                        log.warn("Cannot create thumbnail for {}: {}", entry.id(), e.getMessage());
+                        future.complete(null);
+                    } finally {
+                        pending.remove(hash);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Hàng đợi đầy: trả ảnh gốc, lần xem sau sẽ thử lại (không sửa pending trong computeIfAbsent)
+                future.complete(null);
+            }
+            return future;
+        });
+        if (job.isDone() && job.getNow(null) == null) {
+            // Job bị từ chối (hoặc vừa lỗi): bỏ khỏi pending để lần sau render lại
+            pending.remove(entry.hash(), job);
+        }
+        return job;
+    }
+
+    // ================= RENDER =================
+
+    private Path render(Path source, String hash) throws IOException {
+        BufferedImage image = read(source);
+        if (image == null) {
+            return null;
+        }
+
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        boolean alpha = image.getColorModel().hasAlpha();
+
+        BufferedImage thumb = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumb.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+
+        // Ảnh trong suốt giữ PNG, còn lại JPEG (nhỏ hơn nhiều cho ảnh chụp)
+        Path target = thumbDir.resolve(hash + (alpha ? ".png" : ".jpg"));
+        Path tmp = thumbDir.resolve(hash + ".tmp");
+        write(thumb, alpha ? "png" : "jpg", tmp);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        add(target, Files.size(target));
+        return target;
+    }
+
+    // Đọc với subsampling để ảnh 24MP không phải giải mã hết độ phân giải gốc
+    private BufferedImage read(Path source) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int step = Math.max(1, longest / (maxDimension * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void write(BufferedImage image, String format, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && "jpg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(0.8f);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    // ================= LRU CACHE =================
+
+    private void loadCache() throws IOException {
+        try (Stream<Path> files = Files.list(thumbDir)) {
+            // Cũ nhất trước để thứ tự LRU gần đúng sau restart
+            List<Path> thumbs = files.filter(f -> !f.toString().endsWith(".tmp"))
+                    .sorted(Comparator.comparingLong(ThumbnailService::lastModified))
+                    .toList();
+            for (Path thumb : thumbs) {
+                add(thumb, Files.size(thumb));
+            }
+        }
+    }
+
+    private synchronized boolean touch(Path thumb) {
+        return cache.get(thumb) != null;
+    }
+
+    private synchronized void add(Path thumb, long size) {
+        Long previous = cache.put(thumb, size);
+        cachedBytes += size - (previous != null ? previous : 0);
+
+        Iterator<Map.Entry<Path, Long>> eldest = cache.entrySet().iterator();
+        while (cachedBytes > cacheBytes && eldest.hasNext()) {
+            Map.Entry<Path, Long> entry = eldest.next();
+            if (entry.getKey().equals(thumb)) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(entry.getKey());
+            } catch (IOException e) {
+                log.warn("Cannot delete thumbnail {}: {}", entry.getKey(), e.getMessage());
+            }
+            cachedBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String extension(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot >= 0 ? filename.substring(dot).toLowerCase(Locale.ROOT) : "";
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.demo.ws;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Wire format of the chat protocol.
+ *
+ * Text frames are {@code |}-separated fields where a literal {@code |} or
+ * {@code \} inside a field is escaped as {@code \|} / {@code \\}. Binary
+ * frames carry the same fields, each as a varint byte length followed by
+ * its UTF-8 bytes. Both are parsed in a single pass over the frame.
+ */
+public final class ChatCodec {
+
+    public static final char SEPARATOR = '|';
+    public static final char ESCAPE = '\\';
+
+    // Session gửi frame nhị phân thì server cũng trả lời bằng frame nhị phân
+    private static final String BINARY_ATTRIBUTE = "chat.binaryFraming";
+
+    private ChatCodec() {
+    }
+
+    public static boolean isBinary(WebSocketSession session) {
+        return Boolean.TRUE.equals(session.getAttributes().get(BINARY_ATTRIBUTE));
+    }
+
+    public static void useBinary(WebSocketSession session) {
+        session.getAttributes().put(BINARY_ATTRIBUTE, Boolean.TRUE);
+    }
+
+    // ================= DECODE =================
+
+    public static ChatMessage decode(String text) {
+        int[] ends = new int[8];
+        int count = 0;
+        long escaped = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == ESCAPE) {
+                escaped |= 1L << Math.min(count, 63);
+                i++;
+            } else if (c == SEPARATOR) {
+                if (count == ends.length) {
+                    ends = Arrays.copyOf(ends, count * 2);
+                }
+                ends[count++] = i;
+            }
+        }
+        if (count == ends.length) {
+            ends = Arrays.copyOf(ends, count + 1);
+        }
+        ends[count++] = length;
+
+        Command command = (escaped & 1) == 0 ? Command.lookup(text, 0, ends[0]) : null;
+        return new ChatMessage(command, text, ends, count, escaped);
+    }
+
+    public static ChatMessage decode(byte[] bytes) {
+        int[] starts = new int[8];
+        int[] ends = new int[8];
+        int count = 0;
+        int position = 0;
+        while (position < bytes.length) {
+            // varint: 7 bit mỗi byte, bit cao = còn byte tiếp theo
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (position >= bytes.length || shift > 28) {
+                    throw new IllegalArgumentException("Malformed field length in binary frame");
+                }
+                b = bytes[position++];
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (length < 0 || length > bytes.length - position) {
+                throw new IllegalArgumentException("Field of " + length + " bytes exceeds binary frame");
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = position;
+            ends[count++] = position + length;
+            position += length;
+        }
+        Command command = count > 0 ? Command.lookup(bytes, starts[0], ends[0]) : null;
+        return new ChatMessage(command, bytes, starts, ends, count);
+    }
+
+    static String unescape(String text, int start, int end) {
+        StringBuilder out = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == ESCAPE && i + 1 < end) {
+                c = text.charAt(++i);
+            }
+            out.append(c);
+        }
+        return out.toString();
+    }
+
+    // ================= ENCODE =================
+
+    /**
+     * Joins fields into a text frame, escaping separators inside them.
+     */
+    public static String encode(String... fields) {
+        int capacity = fields.length;
+        for (String field : fields) {
+            capacity += field != null ? field.length() : 0;
+        }
+        StringBuilder out = new StringBuilder(capacity + 8);
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.append(SEPARATOR);
+            }
+            escape(out, fields[i]);
+        }
+        return out.toString();
+    }
+
+    public static void escape(StringBuilder out, String field) {
+        if (field == null) {
+            return;
+        }
+        // Đa số field không có ký tự đặc biệt: append nguyên chuỗi
+        if (field.indexOf(SEPARATOR) < 0 && field.indexOf(ESCAPE) < 0) {
+            out.append(field);
+            return;
+        }
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == SEPARATOR || c == ESCAPE) {
+                out.append(ESCAPE);
+            }
+            out.append(c);
+        }
+    }
+
+    /**
+     * Re-encodes a text frame as a binary frame with the same fields.
+     */
+    public static byte[] toBinary(String text) {
+        ChatMessage message = decode(text);
+        byte[][] fields = new byte[message.size()][];
+        int total = 0;
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = message.get(i).getBytes(StandardCharsets.UTF_8);
+            total += varintLength(fields[i].length) + fields[i].length;
+        }
+        byte[] out = new byte[total];
+        int position = 0;
+        for (byte[] field : fields) {
+            int length = field.length;
+            while (length >= 0x80) {
+                out[position++] = (byte) ((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            out[position++] = (byte) length;
+            System.arraycopy(field, 0, out, position, field.length);
+            position += field.length;
+        }
+        return out;
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while (value >= 0x80) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+}
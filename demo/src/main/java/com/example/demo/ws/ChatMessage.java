@@ -0,0 +1,95 @@
+package com.example.demo.ws;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One decoded inbound frame. Field 0 is the command, the arguments follow
+ * (the same indexing the old {@code parts[]} array had).
+ *
+ * Only field boundaries are recorded while parsing; a field becomes a
+ * {@code String} when a handler asks for it, and only fields that actually
+ * contain escapes are unescaped.
+ */
+public final class ChatMessage {
+
+    private final Command command;
+
+    // Frame text: ends[i] là vị trí kết thúc (exclusive) của field i, field i+1 bắt đầu sau dấu '|'
+    private final String text;
+    // Frame nhị phân: starts[i]/ends[i] là khoảng byte UTF-8 của field i
+    private final byte[] bytes;
+    private final int[] starts;
+    private final int[] ends;
+    private final int count;
+    // bit i = field i có ký tự escape
+    private final long escaped;
+
+    ChatMessage(Command command, String text, int[] ends, int count, long escaped) {
+        this.command = command;
+        this.text = text;
+        this.bytes = null;
+        this.starts = null;
+        this.ends = ends;
+        this.count = count;
+        this.escaped = escaped;
+    }
+
+    ChatMessage(Command command, byte[] bytes, int[] starts, int[] ends, int count) {
+        this.command = command;
+        this.text = null;
+        this.bytes = bytes;
+        this.starts = starts;
+        this.ends = ends;
+        this.count = count;
+        this.escaped = 0;
+    }
+
+    /**
+     * The command, or {@code null} if field 0 is not a known command.
+     */
+    public Command command() {
+        return command;
+    }
+
+    /**
+     * Number of fields including the command.
+     */
+    public int size() {
+        return count;
+    }
+
+    public boolean has(int index) {
+        return index < count;
+    }
+
+    /**
+     * A required field.
+     *
+     * @throws IllegalArgumentException if the frame has fewer fields
+     */
+    public String get(int index) {
+        if (index >= count) {
+            throw new IllegalArgumentException(command + " needs at least " + (index + 1) + " fields");
+        }
+        if (bytes != null) {
+            return new String(bytes, starts[index], ends[index] - starts[index], StandardCharsets.UTF_8);
+        }
+        int start = index == 0 ? 0 : ends[index - 1] + 1;
+        // Field >= 64 không có bit riêng: coi như có escape
+        boolean hasEscapes = index >= 64 || (escaped & (1L << index)) != 0;
+        return hasEscapes ? ChatCodec.unescape(text, start, ends[index]) : text.substring(start, ends[index]);
+    }
+
+    public String get(int index, String fallback) {
+        return index < count ? get(index) : fallback;
+    }
+
+    // NumberFormatException cũng là IllegalArgumentException
+    public long getLong(int index) {
+        return Long.parseLong(get(index));
+    }
+
+    public int getInt(int index) {
+        return Integer.parseInt(get(index));
+    }
+}
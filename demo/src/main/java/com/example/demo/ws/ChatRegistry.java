@@ -0,0 +1,577 @@
+package com.example.demo.ws;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.cluster.ClusterBus;
+import com.example.demo.cluster.ClusterEvent;
+import com.example.demo.history.HistoryEntry;
+import com.example.demo.metrics.ChatMetrics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Rooms, who is in them, and the helpers every command uses to reach them.
+ *
+ * Each connection has one immutable {@link ChatSession} in {@code sessions};
+ * a command needs a single lookup to know the sender's name and room.
+ * Membership changes (join, leave, delete room) are serialized on this
+ * registry so the session, its room and the user index move together.
+ * A user may have several sessions open (tabs, devices); the user index
+ * keeps all of them and the user goes offline when the last one leaves.
+ *
+ * Presence is sent as deltas: the joiner gets one {@code USERS} snapshot,
+ * the rest of the room a {@code USER_JOINED}/{@code USER_LEFT} frame.
+ * Room-list changes are coalesced for {@code chat.presence.room-list-debounce}
+ * and sent as {@code ROOM_COUNT} frames, or as one cached {@code ROOMS}
+ * snapshot when rooms were created or deleted.
+ */
+@Component
+public class ChatRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatRegistry.class);
+
+    // Nhiều phòng đổi số người trong một cửa sổ debounce thì gửi luôn snapshot
+    private static final int MAX_ROOM_COUNT_DELTAS = 8;
+
+    // sessionId -> trạng thái của kết nối
+    private final Map<String, ChatSession> sessions = new ConcurrentHashMap<>();
+
+    // room name -> room
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private final AtomicInteger nextRoomId = new AtomicInteger();
+    // Phòng đã có ở node khác -> hash mật khẩu ở đó; JOIN tạo phòng ở node này phải khớp hash này
+    private final Map<String, String> remotePasswords = new ConcurrentHashMap<>();
+
+    // username -> mọi session của user (nhiều tab / thiết bị), cho tin nhắn riêng
+    private final Map<String, Set<WebSocketSession>> userSessions = new ConcurrentHashMap<>();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Mỗi session một hàng đợi gửi riêng, không gửi trực tiếp trên thread của người gửi
+    private final OutboundDispatcher outbound;
+
+    // Frame của phòng và presence được chuyển tiếp sang các node khác
+    private final ClusterBus bus;
+    private final ChatMetrics metrics;
+
+    // Room list: gom thay đổi trong một cửa sổ debounce, JSON cache tới khi có thay đổi
+    private final TaskScheduler scheduler;
+    private final Duration roomListDebounce;
+    private final AtomicBoolean roomListFlushScheduled = new AtomicBoolean();
+    private final AtomicBoolean roomsChanged = new AtomicBoolean();
+    private final Set<Room> roomCountsChanged = ConcurrentHashMap.newKeySet();
+    private final AtomicLong roomListVersion = new AtomicLong();
+    private volatile RoomListJson roomsJson;
+
+    private record RoomListJson(long version, String json) {
+    }
+
+    public ChatRegistry(OutboundDispatcher outbound, ClusterBus bus, ChatMetrics metrics, TaskScheduler scheduler,
+            @Value("${chat.presence.room-list-debounce:250ms}") Duration roomListDebounce) {
+        this.outbound = outbound;
+        this.bus = bus;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+        this.roomListDebounce = roomListDebounce;
+    }
+
+    // ================= SESSIONS =================
+
+    public void open(WebSocketSession session) {
+        sessions.put(session.getId(), ChatSession.connected(session, getClientIp(session),
+                generateUniqueId(session.getId())));
+    }
+
+    /**
+     * State of the connection, or {@code null} once it is closed.
+     */
+    public ChatSession get(WebSocketSession session) {
+        return sessions.get(session.getId());
+    }
+
+    /**
+     * Every session the user has open on this node, one per tab or device.
+     */
+    public Set<WebSocketSession> sessionsOf(String user) {
+        Set<WebSocketSession> devices = userSessions.get(user);
+        return devices != null ? Collections.unmodifiableSet(devices) : Set.of();
+    }
+
+    /**
+     * Users connected to this node.
+     */
+    public Set<String> localUsers() {
+        return Collections.unmodifiableSet(userSessions.keySet());
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Every connection open on this node.
+     */
+    public Collection<ChatSession> sessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    public Collection<Room> rooms() {
+        return Collections.unmodifiableCollection(rooms.values());
+    }
+
+    public boolean roomExists(String room) {
+        return rooms.containsKey(room);
+    }
+
+    /**
+     * Puts the session into {@code room}, leaving its current room first.
+     *
+     * @return false if the room exists with a different password
+     */
+    public boolean join(WebSocketSession session, String room, String user, String avatar, String password)
+            throws Exception {
+        // Check if user already in a room
+        ChatSession current = sessions.get(session.getId());
+        if (current == null) {
+            return false;
+        }
+        if (current.room() != null) {
+            leave(session);
+        }
+
+        Room target;
+        boolean created;
+        synchronized (this) {
+            // Check password, create new room with password (hoặc mật khẩu phòng cùng tên ở node khác)
+            Room existing = rooms.get(room);
+            created = existing == null;
+            if (created) {
+                String remote = remotePasswords.get(room);
+                target = new Room(nextRoomId.incrementAndGet(), room,
+                        remote != null ? remote : Room.hash(room, password));
+            } else {
+                target = existing;
+            }
+            if (!target.checkPassword(password)) {
+                return false;
+            }
+            if (created) {
+                rooms.put(room, target);
+                roomsChanged.set(true);
+            }
+
+            ChatSession state = sessions.computeIfPresent(session.getId(), (id, s) -> s.joined(user, avatar, target));
+            if (state == null) {
+                return false; // đã đóng trong lúc join
+            }
+            target.members().add(session);
+            userSessions.computeIfAbsent(user, u -> ConcurrentHashMap.newKeySet()).add(session);
+
+            // Delta xếp hàng ngay dưới lock để mọi người nhận theo đúng thứ tự version
+            long version = target.nextPresenceVersion();
+            broadcastExcept(target, session,
+                    ChatCodec.encode("USER_JOINED", Long.toString(version), userJson(state)), false);
+            sendUserSnapshot(session, target);
+        }
+        if (created) {
+            bus.publish(ClusterEvent.Type.ROOM_PASSWORD, room, target.passwordHash());
+        }
+        bus.publish(ClusterEvent.Type.PRESENCE_UP, user, "");
+        roomCountChanged(target);
+        return true;
+    }
+
+    /**
+     * Checks a room event from another node against the room here, and
+     * remembers the password hash that node has for it.
+     *
+     * @return false if the room exists on this node with another password;
+     *         the event must then reach neither its members nor its history
+     */
+    public boolean acceptRemoteRoom(String room, String passwordHash) {
+        Room local = rooms.get(room);
+        if (local != null) {
+            return local.passwordHash().equals(passwordHash);
+        }
+        remotePasswords.put(room, passwordHash);
+        return true;
+    }
+
+    public void leave(WebSocketSession session) throws Exception {
+        ChatSession previous;
+        synchronized (this) {
+            previous = sessions.get(session.getId());
+            if (previous == null || previous.room() == null) {
+                return;
+            }
+            sessions.computeIfPresent(session.getId(), (id, s) -> s.left());
+            Room room = previous.room();
+            room.members().remove(session);
+            if (removeUserSession(previous.user(), session)) {
+                bus.publish(ClusterEvent.Type.PRESENCE_DOWN, previous.user(), "");
+            }
+
+            long version = room.nextPresenceVersion();
+            broadcast(room, ChatCodec.encode("USER_LEFT", Long.toString(version), previous.uniqueId(),
+                    previous.user()));
+        }
+
+        String room = previous.roomName();
+        if (rooms.get(room) == previous.room()) {
+            publish(previous.room(), ChatCodec.encode("SYS", previous.user() + " left room"));
+
+            // // XÓA PHÒNG + LỊCH SỬ NẾU RỖNG (ĐÃ TẮT - GIỮ PHÒNG VÀ LỊCH SỬ)
+            // if (rooms.get(room).isEmpty()) {
+            //     rooms.remove(room);
+            //     chatHistory.remove(room);
+            // }
+
+            roomCountChanged(previous.room());
+        }
+    }
+
+    public void close(WebSocketSession session) throws Exception {
+        leave(session);
+        sessions.remove(session.getId());
+    }
+
+    /**
+     * Sends {@code ROOM_DELETED} to everyone in the room and drops the room.
+     */
+    public void deleteRoom(String roomToDelete) {
+        Room room;
+        synchronized (this) {
+            room = rooms.remove(roomToDelete);
+            if (room == null) {
+                return;
+            }
+            for (WebSocketSession s : room.members()) {
+                // Xóa session khỏi phòng và khỏi userSessions (cùng lúc, không để sót entry)
+                ChatSession previous = sessions.get(s.getId());
+                sessions.computeIfPresent(s.getId(), (id, state) -> state.room() == room ? state.left() : state);
+                if (previous != null && previous.user() != null && removeUserSession(previous.user(), s)) {
+                    bus.publish(ClusterEvent.Type.PRESENCE_DOWN, previous.user(), "");
+                }
+            }
+            roomCountsChanged.remove(room);
+            roomsChanged.set(true);
+        }
+        scheduleRoomListFlush();
+
+        // Gửi lệnh rời phòng
+        Frame frame = Frame.text(ChatCodec.encode("ROOM_DELETED", roomToDelete));
+        for (WebSocketSession s : room.members()) {
+            if (s.isOpen()) {
+                outbound.send(s, frame);
+            }
+        }
+        room.members().clear();
+    }
+
+    // Gọi dưới lock; true khi đó là session cuối của user trên node này
+    private boolean removeUserSession(String user, WebSocketSession session) {
+        Set<WebSocketSession> devices = userSessions.get(user);
+        if (devices == null || !devices.remove(session)) {
+            return false;
+        }
+        if (devices.isEmpty()) {
+            userSessions.remove(user, devices);
+            return true;
+        }
+        return false;
+    }
+
+    // ================= SEND =================
+
+    public void broadcast(String room, String msg) {
+        Room target = rooms.get(room);
+        if (target != null) {
+            broadcast(target, msg);
+        }
+    }
+
+    // Encode một lần cho cả phòng, mọi session dùng chung một Frame
+    public void broadcast(Room room, String msg) {
+        long start = metrics.start();
+        Frame frame = Frame.text(msg);
+        int recipients = 0;
+        for (WebSocketSession s : room.members()) {
+            if (s.isOpen()) {
+                outbound.send(s, frame);
+                recipients++;
+            }
+        }
+        metrics.broadcast(start, recipients);
+    }
+
+    /**
+     * Broadcasts to the room on this node and on every other node.
+     */
+    public void publish(Room room, String msg) {
+        broadcast(room, msg);
+        bus.publish(ClusterEvent.Type.ROOM, room.name(), ChatCodec.encode(room.passwordHash(), msg));
+    }
+
+    /**
+     * Like {@link #publish} for a frame the caller just appended to the room
+     * history as {@code seq}. Other nodes append it to their own history.
+     *
+     * @see #broadcastStored
+     */
+    public void publishStored(Room room, String msg, long seq) {
+        broadcast(room, withSeq(msg, seq));
+        bus.publish(ClusterEvent.Type.ROOM_STORED, room.name(), ChatCodec.encode(room.passwordHash(), msg));
+    }
+
+    /**
+     * Broadcasts a stored frame with its history seq appended as a last
+     * field, so clients know where to {@code RESUME} from.
+     */
+    public void broadcastStored(String room, String msg, long seq) {
+        broadcast(room, withSeq(msg, seq));
+    }
+
+    private static String withSeq(String msg, long seq) {
+        return msg + ChatCodec.SEPARATOR + seq;
+    }
+
+    public void broadcastExcept(Room room, WebSocketSession except, String msg, boolean lowPriority) {
+        Frame frame = Frame.text(msg);
+        for (WebSocketSession s : room.members()) {
+            if (s.isOpen() && !s.getId().equals(except.getId())) {
+                outbound.send(s, frame, lowPriority);
+            }
+        }
+    }
+
+    public void send(WebSocketSession session, String msg) {
+        outbound.send(session, Frame.text(msg));
+    }
+
+    // ================= PRESENCE =================
+
+    /**
+     * Sends {@code USERS|<json>|<version>} for the session's room, e.g. when
+     * the client detected a gap in the presence versions.
+     */
+    public void sendUserSnapshot(WebSocketSession session) {
+        ChatSession state = sessions.get(session.getId());
+        if (state != null && state.room() != null) {
+            synchronized (this) {
+                sendUserSnapshot(session, state.room());
+            }
+        }
+    }
+
+    // Gọi dưới lock: version và JSON phải khớp nhau
+    private void sendUserSnapshot(WebSocketSession session, Room room) {
+        String json = room.cachedUsersJson();
+        if (json == null) {
+            List<Map<String, String>> users = room.members().stream()
+                    .map(s -> sessions.get(s.getId()))
+                    .filter(state -> state != null && state.room() == room)
+                    .map(this::userInfo)
+                    .collect(Collectors.toList());
+            json = toJson(users);
+            room.cacheUsersJson(json);
+        }
+        send(session, ChatCodec.encode("USERS", json, Long.toString(room.presenceVersion())));
+    }
+
+    private Map<String, String> userInfo(ChatSession state) {
+        Map<String, String> user = new HashMap<>();
+        user.put("username", state.user());
+        user.put("avatar", state.avatar());
+        user.put("ip", state.ip());
+        user.put("uniqueId", state.uniqueId());
+        return user;
+    }
+
+    private String userJson(ChatSession state) {
+        return toJson(userInfo(state));
+    }
+
+    public void sendRoomList(WebSocketSession session) throws Exception {
+        if (session.isOpen()) {
+            send(session, ChatCodec.encode("ROOMS", roomListJson()));
+        }
+    }
+
+    private void roomCountChanged(Room room) {
+        roomCountsChanged.add(room);
+        scheduleRoomListFlush();
+    }
+
+    private void scheduleRoomListFlush() {
+        roomListVersion.incrementAndGet();
+        if (roomListFlushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(this::flushRoomList, Instant.now().plus(roomListDebounce));
+            } catch (TaskRejectedException e) {
+                // Scheduler đã dừng khi app tắt (GracefulDrain đóng socket): không còn ai để gửi room list
+                roomListFlushScheduled.set(false);
+            }
+        }
+    }
+
+    // Gửi mọi thay đổi room list gom được trong cửa sổ debounce
+    private void flushRoomList() {
+        roomListFlushScheduled.set(false);
+        try {
+            List<Frame> frames = new ArrayList<>();
+            boolean snapshot = roomsChanged.getAndSet(false) || roomCountsChanged.size() > MAX_ROOM_COUNT_DELTAS;
+            if (snapshot) {
+                roomCountsChanged.clear();
+                frames.add(Frame.text(ChatCodec.encode("ROOMS", roomListJson())));
+            } else {
+                for (Room room : roomCountsChanged) {
+                    roomCountsChanged.remove(room);
+                    frames.add(Frame.text(ChatCodec.encode("ROOM_COUNT", room.name(),
+                            Integer.toString(room.members().size()))));
+                }
+            }
+            if (frames.isEmpty()) {
+                return;
+            }
+            for (Set<WebSocketSession> devices : userSessions.values()) {
+                for (WebSocketSession s : devices) {
+                    if (s.isOpen()) {
+                        for (Frame frame : frames) {
+                            outbound.send(s, frame);
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Room list update failed: {}", e.getMessage());
+        }
+    }
+
+    private String roomListJson() {
+        RoomListJson cached = roomsJson;
+        long version = roomListVersion.get();
+        if (cached != null && cached.version() == version) {
+            return cached.json();
+        }
+        List<Map<String, Object>> roomList = rooms.values().stream()
+                .map(room -> {
+                    Map<String, Object> roomInfo = new HashMap<>();
+                    roomInfo.put("name", room.name());
+                    roomInfo.put("count", room.members().size());
+                    roomInfo.put("hasPassword", room.hasPassword());
+                    return roomInfo;
+                })
+                .collect(Collectors.toList());
+        String json = toJson(roomList);
+        // Gắn với version đọc trước khi build: có thay đổi giữa chừng thì lần sau build lại
+        roomsJson = new RoomListJson(version, json);
+        return json;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // HISTORY_BATCH|{"room","older","hasMore","messages":[{"seq","frame"}]}
+    // entries được lấy dư một phần tử để biết còn tin cũ hơn hay không
+    public void sendHistoryBatch(WebSocketSession session, String room, List<HistoryEntry> entries, int limit,
+            boolean older) throws Exception {
+        boolean hasMore = entries.size() > limit;
+        if (hasMore) {
+            entries = entries.subList(entries.size() - limit, entries.size());
+        }
+        sendHistoryBatch(session, room, entries, older, hasMore, false);
+    }
+
+    // HISTORY_BATCH|{..., "resume":true}: chỉ các tin client bỏ lỡ sau lastSeq, nối vào cuối
+    public void sendMissedMessages(WebSocketSession session, String room, List<HistoryEntry> entries)
+            throws Exception {
+        sendHistoryBatch(session, room, entries, false, false, true);
+    }
+
+    private void sendHistoryBatch(WebSocketSession session, String room, List<HistoryEntry> entries, boolean older,
+            boolean hasMore, boolean resume) throws Exception {
+        List<Map<String, Object>> messages = new ArrayList<>(entries.size());
+        for (HistoryEntry entry : entries) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("seq", entry.seq());
+            item.put("frame", entry.message());
+            messages.add(item);
+        }
+
+        Map<String, Object> batch = new HashMap<>();
+        batch.put("room", room);
+        batch.put("older", older);
+        batch.put("hasMore", hasMore);
+        batch.put("resume", resume);
+        batch.put("messages", messages);
+        send(session, ChatCodec.encode("HISTORY_BATCH", objectMapper.writeValueAsString(batch)));
+    }
+
+    // SEARCH_RESULT|{"query","total","offset","tookMicros","messages":[{seq, frame}]}, xếp theo độ liên quan
+    public void sendSearchResult(WebSocketSession session, String query, int offset, int total,
+            List<HistoryEntry> entries, long tookMicros) throws Exception {
+        List<Map<String, Object>> messages = new ArrayList<>(entries.size());
+        for (HistoryEntry entry : entries) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("seq", entry.seq());
+            item.put("frame", entry.message());
+            messages.add(item);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("query", query);
+        result.put("total", total);
+        result.put("offset", offset);
+        result.put("tookMicros", tookMicros);
+        result.put("messages", messages);
+        send(session, ChatCodec.encode("SEARCH_RESULT", objectMapper.writeValueAsString(result)));
+    }
+
+    // ================= UTILS =================
+
+    private String getClientIp(WebSocketSession session) {
+        try {
+            // Lấy IP từ RemoteAddress
+            if (session.getRemoteAddress() != null && session.getRemoteAddress().getAddress() != null) {
+                return session.getRemoteAddress().getAddress().getHostAddress();
+            }
+        } catch (Exception e) {
+            // Nếu không lấy được, trả về unknown
+        }
+        return "Unknown";
+    }
+
+    private String generateUniqueId(String sessionId) {
+        // Tạo ID ngắn từ 6 ký tự cuối của session ID
+        if (sessionId.length() >= 6) {
+            return sessionId.substring(sessionId.length() - 6).toUpperCase();
+        }
+        return sessionId.substring(0, Math.min(6, sessionId.length())).toUpperCase();
+    }
+}
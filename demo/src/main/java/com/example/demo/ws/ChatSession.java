@@ -0,0 +1,33 @@
+package com.example.demo.ws;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Everything the server knows about one connection, replaced as a whole on
+ * every change so readers never see a half-updated state.
+ *
+ * {@code user}, {@code avatar} and {@code room} are {@code null} until the
+ * connection joins a room.
+ */
+public record ChatSession(WebSocketSession socket, String ip, String uniqueId, String user, String avatar, Room room) {
+
+    static ChatSession connected(WebSocketSession socket, String ip, String uniqueId) {
+        return new ChatSession(socket, ip, uniqueId, null, null, null);
+    }
+
+    ChatSession joined(String user, String avatar, Room room) {
+        return new ChatSession(socket, ip, uniqueId, user, avatar, room);
+    }
+
+    ChatSession left() {
+        return new ChatSession(socket, ip, uniqueId, null, null, null);
+    }
+
+    public String id() {
+        return socket.getId();
+    }
+
+    public String roomName() {
+        return room != null ? room.name() : null;
+    }
+}
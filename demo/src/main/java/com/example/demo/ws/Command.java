@@ -0,0 +1,52 @@
+package com.example.demo.ws;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Client -> server commands, i.e. the first field of an inbound frame.
+ */
+public enum Command {
+    JOIN,
+    RESUME,
+    HISTORY_BEFORE,
+    MSG,
+    PRIVATE,
+    PRIVATE_FILE,
+    TYPING,
+    FILE,
+    GET_ROOMS,
+    GET_USERS,
+    SEARCH,
+    MAILBOX_ACK,
+    DELETE_ROOM;
+
+    private static final Command[] VALUES = values();
+
+    // Tên lệnh dạng ASCII để so sánh thẳng trên byte[] của frame nhị phân
+    private final byte[] ascii = name().getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The command spelled by {@code text[start, end)}, or {@code null}.
+     * Compares in place, so no substring is created per frame.
+     */
+    static Command lookup(String text, int start, int end) {
+        int length = end - start;
+        for (Command command : VALUES) {
+            if (command.ascii.length == length && text.regionMatches(start, command.name(), 0, length)) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    static Command lookup(byte[] bytes, int start, int end) {
+        int length = end - start;
+        for (Command command : VALUES) {
+            if (command.ascii.length == length && Arrays.equals(bytes, start, end, command.ascii, 0, length)) {
+                return command;
+            }
+        }
+        return null;
+    }
+}
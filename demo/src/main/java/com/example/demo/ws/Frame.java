@@ -0,0 +1,57 @@
+package com.example.demo.ws;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * Immutable text frame encoded to UTF-8 exactly once.
+ *
+ * A broadcast builds one {@code Frame} and hands the same {@link TextMessage}
+ * to every recipient's queue. {@code TextMessage} built from a {@code String}
+ * re-encodes the payload on every {@code getPayloadLength()}/{@code asBytes()}
+ * call; built from bytes it keeps them, so the queue's byte accounting and
+ * the message object are shared. The send itself still encodes once per
+ * recipient: Tomcat only takes text as a {@code String}.
+ *
+ * Sessions using binary framing get the {@link ChatCodec#toBinary binary}
+ * form, also encoded once per frame, on first use. Only the bytes are shared:
+ * sending a {@code BinaryMessage} consumes its {@code ByteBuffer}, so every
+ * recipient needs its own buffer over them.
+ */
+public final class Frame {
+
+    private final TextMessage message;
+    private volatile byte[] binary;
+
+    private Frame(byte[] utf8) {
+        this.message = new TextMessage(utf8);
+    }
+
+    public static Frame text(String payload) {
+        return new Frame(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public TextMessage message() {
+        return message;
+    }
+
+    // Race vô hại: hai thread có thể cùng encode, kết quả như nhau. Không được sửa mảng trả về
+    public byte[] binary() {
+        byte[] result = binary;
+        if (result == null) {
+            result = ChatCodec.toBinary(payload());
+            binary = result;
+        }
+        return result;
+    }
+
+    public String payload() {
+        return message.getPayload();
+    }
+
+    // Số byte UTF-8 của payload, không encode lại
+    public int length() {
+        return message.getPayloadLength();
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.demo.ws;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.util.unit.DataSize;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Owns one {@link OutboundQueue} per connected session and the shared pool
+ * that drains them.
+ *
+ * With {@code spring.threads.virtual.enabled} on Java 21+ (the
+ * {@code vthreads} profile) every drain runs on its own virtual thread
+ * instead, so a blocking {@code sendMessage} costs no platform thread.
+ *
+ * {@code chat.outbound.batch.window > 0} turns on micro-batching: frames
+ * queued within the window go out as one {@code BATCH} frame.
+ */
+@Component
+public class OutboundDispatcher {
+
+    private final Map<String, OutboundQueue> queues = new ConcurrentHashMap<>();
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final long sendTimeLimitMs;
+    private final Executor executor;
+    // null khi tắt gom batch
+    private final ScheduledExecutorService batchTimer;
+    private final long batchWindowMicros;
+    private final int batchMaxBytes;
+
+    // Thống kê của các session đã đóng, để tổng không giảm khi session rời đi
+    private final LongAdder closedFrames = new LongAdder();
+    private final LongAdder closedEvents = new LongAdder();
+    private final LongAdder closedBytes = new LongAdder();
+    private final LongAdder closedBatches = new LongAdder();
+    private final LongAdder closedBatchDelayNanos = new LongAdder();
+
+    public OutboundDispatcher(
+            @Value("${chat.outbound.capacity:1024}") int capacity,
+            @Value("${chat.outbound.overflow-policy:DROP_TYPING_FIRST}") OverflowPolicy policy,
+            @Value("${chat.outbound.send-time-limit-ms:10000}") long sendTimeLimitMs,
+            @Value("${chat.outbound.threads:0}") int threads,
+            @Value("${chat.outbound.batch.window:0ms}") Duration batchWindow,
+            @Value("${chat.outbound.batch.max-size:32KB}") DataSize batchMaxSize,
+            Environment environment) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.executor = Threading.VIRTUAL.isActive(environment)
+                ? new VirtualThreadTaskExecutor("chat-out-")
+                : newPool(threads);
+
+        this.batchWindowMicros = batchWindow.toNanos() / 1000;
+        this.batchMaxBytes = (int) Math.min(Integer.MAX_VALUE, batchMaxSize.toBytes());
+        this.batchTimer = batchWindowMicros > 0 ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-batch");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    private static ThreadPoolExecutor newPool(int threads) {
+        int poolSize = threads > 0 ? threads : Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "chat-out-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    public OutboundQueue register(WebSocketSession session) {
+        return queues.computeIfAbsent(session.getId(),
+                id -> new OutboundQueue(session, executor, capacity, policy, sendTimeLimitMs,
+                        batchTimer, batchWindowMicros, batchMaxBytes));
+    }
+
+    public void unregister(WebSocketSession session) {
+        OutboundQueue queue = queues.remove(session.getId());
+        if (queue != null) {
+            queue.clear();
+            closedFrames.add(queue.getSent());
+            closedEvents.add(queue.getEvents());
+            closedBytes.add(queue.getBytesSent());
+            closedBatches.add(queue.getBatches());
+            closedBatchDelayNanos.add(queue.getBatchDelayNanos());
+        }
+    }
+
+    public boolean send(WebSocketSession session, WebSocketMessage<?> message) {
+        return send(session, message, false);
+    }
+
+    public boolean send(WebSocketSession session, Frame frame) {
+        return send(session, frame, false);
+    }
+
+    public boolean send(WebSocketSession session, Frame frame, boolean lowPriority) {
+        // Mỗi người nhận một ByteBuffer riêng (không copy): gửi đi làm thay đổi position của buffer
+        WebSocketMessage<?> message = ChatCodec.isBinary(session)
+                ? new BinaryMessage(ByteBuffer.wrap(frame.binary()))
+                : frame.message();
+        return send(session, message, lowPriority);
+    }
+
+    /**
+     * Queues a frame for the session. Low-priority frames (TYPING) are only
+     * written once the session has no regular frames waiting.
+     */
+    public boolean send(WebSocketSession session, WebSocketMessage<?> message, boolean lowPriority) {
+        OutboundQueue queue = queues.get(session.getId());
+        if (queue == null) {
+            // Session chưa qua afterConnectionEstablished (hoặc đã đóng)
+            if (!session.isOpen()) {
+                return false;
+            }
+            queue = register(session);
+        }
+        return queue.offer(message, lowPriority);
+    }
+
+    // ================= METRICS =================
+    public Collection<OutboundQueue> queues() {
+        return Collections.unmodifiableCollection(queues.values());
+    }
+
+    public int backlog(String sessionId) {
+        OutboundQueue queue = queues.get(sessionId);
+        return queue != null ? queue.getBacklog() : 0;
+    }
+
+    public long totalBacklogBytes() {
+        long total = 0;
+        for (OutboundQueue queue : queues.values()) {
+            total += queue.getBacklogBytes();
+        }
+        return total;
+    }
+
+    public long totalBacklog() {
+        long total = 0;
+        for (OutboundQueue queue : queues.values()) {
+            total += queue.getBacklog();
+        }
+        return total;
+    }
+
+    // ================= STATS =================
+    // frames/bytes thực sự ghi ra socket so với số event: tỉ lệ gom được của BATCH
+
+    public long totalFramesSent() {
+        return closedFrames.sum() + queues.values().stream().mapToLong(OutboundQueue::getSent).sum();
+    }
+
+    public long totalEventsSent() {
+        return closedEvents.sum() + queues.values().stream().mapToLong(OutboundQueue::getEvents).sum();
+    }
+
+    public long totalBytesSent() {
+        return closedBytes.sum() + queues.values().stream().mapToLong(OutboundQueue::getBytesSent).sum();
+    }
+
+    /**
+     * Mean time a batch waited between its drain being scheduled and being
+     * written, in microseconds; the latency cost of the batch window.
+     */
+    public double averageBatchDelayMicros() {
+        long batches = closedBatches.sum() + queues.values().stream().mapToLong(OutboundQueue::getBatches).sum();
+        long nanos = closedBatchDelayNanos.sum()
+                + queues.values().stream().mapToLong(OutboundQueue::getBatchDelayNanos).sum();
+        return batches == 0 ? 0 : nanos / 1000.0 / batches;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (batchTimer != null) {
+            batchTimer.shutdownNow();
+        }
+        if (executor instanceof ExecutorService pool) {
+            pool.shutdown();
+        }
+    }
+}
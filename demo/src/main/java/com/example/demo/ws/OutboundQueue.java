@@ -0,0 +1,339 @@
+package com.example.demo.ws;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Bounded outbound queue for one WebSocket session.
+ *
+ * Callers only enqueue; a single drain task per session (run on the shared
+ * executor) does the actual {@code sendMessage}, so a slow client never blocks
+ * the sender and there are never two concurrent writes on the same session.
+ *
+ * With batching on, the drain starts {@code batchWindow} after the first
+ * queued frame and packs consecutive text frames, up to
+ * {@code batchMaxBytes}, into one {@code BATCH|frame1|frame2|...} frame.
+ */
+public class OutboundQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundQueue.class);
+
+    // Số frame tối đa gửi trong một lượt drain trước khi nhường thread cho session khác
+    private static final int DRAIN_BATCH = 64;
+
+    private final WebSocketSession session;
+    private final Executor executor;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final long sendTimeLimitNanos;
+    // null = không gom batch
+    private final ScheduledExecutorService batchTimer;
+    private final long batchWindowMicros;
+    private final int batchMaxBytes;
+
+    // MSG/FILE/SYS... đi lane thường, TYPING đi lane thấp và chỉ được gửi khi lane thường rỗng
+    private final Deque<WebSocketMessage<?>> normal = new ConcurrentLinkedDeque<>();
+    private final Deque<WebSocketMessage<?>> low = new ConcurrentLinkedDeque<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+    // Payload đã encode sẵn (Frame) nên getPayloadLength() không tốn encode lại
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicInteger highWater = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+    // Số event đã gửi (frame trong BATCH tính riêng từng cái) và số byte payload đã ghi
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    // Tổng thời gian chờ từ lúc xếp lịch drain tới lúc ghi batch, đo cái giá của cửa sổ gom
+    private final AtomicLong batchDelayNanos = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closing = new AtomicBoolean();
+
+    // nanoTime lúc bắt đầu sendMessage hiện tại, 0 nếu đang rảnh
+    private volatile long sendStartedAt;
+    // nanoTime lúc xếp lịch lượt drain hiện tại
+    private volatile long scheduledAt;
+    // Frame đã lấy ra nhưng không vừa batch trước, gửi đầu lượt sau (chỉ thread drain dùng)
+    private WebSocketMessage<?> carry;
+    // Số frame trong batch fillBatch() vừa dựng (chỉ thread drain dùng)
+    private int lastBatchCount;
+
+    OutboundQueue(WebSocketSession session, Executor executor, int capacity,
+            OverflowPolicy policy, long sendTimeLimitMs) {
+        this(session, executor, capacity, policy, sendTimeLimitMs, null, 0, 0);
+    }
+
+    OutboundQueue(WebSocketSession session, Executor executor, int capacity,
+            OverflowPolicy policy, long sendTimeLimitMs,
+            ScheduledExecutorService batchTimer, long batchWindowMicros, int batchMaxBytes) {
+        this.session = session;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+        this.batchTimer = batchTimer;
+        this.batchWindowMicros = batchWindowMicros;
+        this.batchMaxBytes = batchMaxBytes;
+    }
+
+    /**
+     * Enqueues a frame for delivery. Returns {@code false} if the frame was
+     * rejected (session closed or dropped by the overflow policy).
+     */
+    public boolean offer(WebSocketMessage<?> message, boolean lowPriority) {
+        if (closing.get() || !session.isOpen()) {
+            return false;
+        }
+
+        if (policy == OverflowPolicy.DISCONNECT && isStalled()) {
+            disconnect("send blocked for more than " + TimeUnit.NANOSECONDS.toMillis(sendTimeLimitNanos) + "ms");
+            return false;
+        }
+
+        if (size.incrementAndGet() > capacity && !makeRoom(lowPriority)) {
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        bytes.addAndGet(message.getPayloadLength());
+        (lowPriority ? low : normal).offerLast(message);
+        highWater.accumulateAndGet(size.get(), Math::max);
+        schedule();
+        return true;
+    }
+
+    // Giải phóng một chỗ theo policy, trả về false nếu frame mới phải bị bỏ
+    private boolean makeRoom(boolean incomingLow) {
+        WebSocketMessage<?> evicted;
+        switch (policy) {
+            case DROP_OLDEST:
+                evicted = normal.pollFirst();
+                if (evicted == null) {
+                    evicted = low.pollFirst();
+                }
+                break;
+            case DROP_TYPING_FIRST:
+                evicted = low.pollFirst();
+                if (evicted == null && !incomingLow) {
+                    evicted = normal.pollFirst();
+                }
+                break;
+            default:
+                disconnect("outbound backlog exceeded " + capacity + " frames");
+                return false;
+        }
+
+        if (evicted == null) {
+            // Không có gì để bỏ (hoặc drain vừa lấy hết) -> bỏ frame TYPING mới
+            return !incomingLow && size.get() <= capacity;
+        }
+        size.decrementAndGet();
+        bytes.addAndGet(-evicted.getPayloadLength());
+        if (dropped.getAndIncrement() == 0) {
+            log.warn("Session {} is a slow consumer, dropping frames ({})", session.getId(), policy);
+        }
+        return true;
+    }
+
+    private boolean isStalled() {
+        long started = sendStartedAt;
+        return started != 0 && System.nanoTime() - started > sendTimeLimitNanos;
+    }
+
+    private void schedule() {
+        if (draining.compareAndSet(false, true)) {
+            scheduledAt = System.nanoTime();
+            try {
+                // Gom batch: chờ cửa sổ để các frame tới sau đi chung, trừ khi đã đủ một batch
+                if (batchTimer != null && bytes.get() < batchMaxBytes) {
+                    batchTimer.schedule(this::startDrain, batchWindowMicros, TimeUnit.MICROSECONDS);
+                } else {
+                    executor.execute(this::drain);
+                }
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+            }
+        }
+    }
+
+    private void startDrain() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+        }
+    }
+
+    private void drain() {
+        try {
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                int count = 1;
+                WebSocketMessage<?> message = carry != null ? carry : poll();
+                carry = null;
+                if (message == null) {
+                    break;
+                }
+                if (batchTimer != null && message instanceof TextMessage first) {
+                    StringBuilder batch = fillBatch(first);
+                    if (batch != null) {
+                        count = lastBatchCount;
+                        message = new TextMessage(batch.toString().getBytes(StandardCharsets.UTF_8));
+                        batches.incrementAndGet();
+                        batchDelayNanos.addAndGet(System.nanoTime() - scheduledAt);
+                    }
+                }
+                if (!session.isOpen()) {
+                    clear();
+                    return;
+                }
+                sendStartedAt = System.nanoTime();
+                // Đọc trước khi gửi: gửi xong buffer của BinaryMessage không còn byte nào
+                int length = message.getPayloadLength();
+                try {
+                    session.sendMessage(message);
+                    sent.incrementAndGet();
+                    events.addAndGet(count);
+                    bytesSent.addAndGet(length);
+                } catch (IOException | IllegalStateException e) {
+                    log.debug("Send to session {} failed: {}", session.getId(), e.getMessage());
+                    clear();
+                    return;
+                } finally {
+                    sendStartedAt = 0;
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+
+        // Còn frame (batch đầy hoặc có frame mới vào sau khi poll trả null)
+        if ((size.get() > 0 || carry != null) && session.isOpen()) {
+            schedule();
+        }
+    }
+
+    // Nối các text frame kế tiếp vào sau first; null nếu không có frame nào để gom
+    private StringBuilder fillBatch(TextMessage first) {
+        StringBuilder batch = null;
+        int total = first.getPayloadLength();
+        int count = 1;
+        while (total < batchMaxBytes) {
+            WebSocketMessage<?> next = poll();
+            if (next == null) {
+                break;
+            }
+            if (!(next instanceof TextMessage text) || total + next.getPayloadLength() > batchMaxBytes) {
+                carry = next;
+                break;
+            }
+            if (batch == null) {
+                batch = new StringBuilder(Math.min(batchMaxBytes, total * 4) + 16).append("BATCH");
+                batch.append(ChatCodec.SEPARATOR);
+                ChatCodec.escape(batch, first.getPayload());
+            }
+            batch.append(ChatCodec.SEPARATOR);
+            ChatCodec.escape(batch, text.getPayload());
+            total += next.getPayloadLength();
+            count++;
+        }
+        lastBatchCount = count;
+        return batch;
+    }
+
+    private WebSocketMessage<?> poll() {
+        WebSocketMessage<?> message = normal.pollFirst();
+        if (message == null) {
+            message = low.pollFirst();
+        }
+        if (message != null) {
+            size.decrementAndGet();
+            bytes.addAndGet(-message.getPayloadLength());
+        }
+        return message;
+    }
+
+    private void disconnect(String reason) {
+        if (!closing.compareAndSet(false, true)) {
+            return;
+        }
+        log.warn("Disconnecting slow session {}: {}", session.getId(), reason);
+        clear();
+        try {
+            // Đóng trên executor để không chặn thread của người gửi
+            executor.execute(() -> {
+                try {
+                    session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason("Slow consumer"));
+                } catch (IOException e) {
+                    log.debug("Close of session {} failed: {}", session.getId(), e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // executor đã tắt, Tomcat sẽ tự dọn session
+        }
+    }
+
+    void clear() {
+        carry = null;
+        while (poll() != null) {
+            // poll() đã trừ size/bytes
+        }
+    }
+
+    public String getSessionId() {
+        return session.getId();
+    }
+
+    public int getBacklog() {
+        return Math.max(0, size.get());
+    }
+
+    public long getBacklogBytes() {
+        return Math.max(0, bytes.get());
+    }
+
+    public int getHighWater() {
+        return highWater.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getEvents() {
+        return events.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getBatchDelayNanos() {
+        return batchDelayNanos.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
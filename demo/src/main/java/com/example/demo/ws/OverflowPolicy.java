@@ -0,0 +1,16 @@
+package com.example.demo.ws;
+
+/**
+ * What an {@link OutboundQueue} does when a session's backlog is full.
+ */
+public enum OverflowPolicy {
+
+    // Bỏ frame cũ nhất trong hàng đợi để nhận frame mới
+    DROP_OLDEST,
+
+    // Bỏ TYPING (low priority) trước, chỉ bỏ tin nhắn thật khi không còn TYPING nào
+    DROP_TYPING_FIRST,
+
+    // Client quá chậm -> đóng kết nối, client tự reconnect
+    DISCONNECT
+}
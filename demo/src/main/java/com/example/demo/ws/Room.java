@@ -0,0 +1,102 @@
+package com.example.demo.ws;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * A chat room. The numeric {@code id} is assigned once when the room is
+ * created; a room recreated under the same name gets a new id.
+ *
+ * {@code presenceVersion} grows by one on every join and leave; clients
+ * apply {@code USER_JOINED}/{@code USER_LEFT} deltas in version order and
+ * ask for a snapshot when they see a gap.
+ *
+ * Only a hash of the password is kept, so it can be sent to the other
+ * nodes of a cluster; an empty hash means anyone may join.
+ */
+public final class Room {
+
+    private final int id;
+    private final String name;
+    private final String passwordHash;
+    private final boolean hasPassword;
+    private final Set<WebSocketSession> members = ConcurrentHashMap.newKeySet();
+
+    // Chỉ đổi dưới lock của ChatRegistry
+    private long presenceVersion;
+    // JSON danh sách thành viên, dùng lại cho tới khi version đổi
+    private String usersJson;
+    private long usersJsonVersion = -1;
+
+    Room(int id, String name, String passwordHash) {
+        this.id = id;
+        this.name = name;
+        this.passwordHash = passwordHash;
+        this.hasPassword = !passwordHash.isEmpty() && !passwordHash.equals(hash(name, ""));
+    }
+
+    /**
+     * SHA-256 of the room name and password, hex; empty for a null password.
+     */
+    public static String hash(String room, String password) {
+        if (password == null) {
+            return "";
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(ChatCodec.encode(room, password).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    boolean checkPassword(String candidate) {
+        return passwordHash.isEmpty() || MessageDigest.isEqual(
+                passwordHash.getBytes(StandardCharsets.US_ASCII),
+                hash(name, candidate).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public boolean hasPassword() {
+        return hasPassword;
+    }
+
+    public String passwordHash() {
+        return passwordHash;
+    }
+
+    public Set<WebSocketSession> members() {
+        return members;
+    }
+
+    long nextPresenceVersion() {
+        return ++presenceVersion;
+    }
+
+    long presenceVersion() {
+        return presenceVersion;
+    }
+
+    String cachedUsersJson() {
+        return usersJsonVersion == presenceVersion ? usersJson : null;
+    }
+
+    void cacheUsersJson(String json) {
+        usersJson = json;
+        usersJsonVersion = presenceVersion;
+    }
+}
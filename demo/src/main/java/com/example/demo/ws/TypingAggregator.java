@@ -0,0 +1,89 @@
+package com.example.demo.ws;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Collapses {@code TYPING} signals into one {@code TYPING_SET|user1,user2}
+ * frame per room and tick.
+ *
+ * A user stays in the set for {@code chat.typing.ttl} after their last
+ * {@code TYPING}, or until they send a message or leave the room. A frame
+ * only goes out when a room's set changed, on the low-priority lane so it
+ * never holds up {@code MSG} delivery.
+ */
+@Component
+public class TypingAggregator {
+
+    private final OutboundDispatcher outbound;
+    private final long ttlMillis;
+
+    // room -> (session -> đang gõ tới lúc nào)
+    private final Map<Room, Map<WebSocketSession, Typist>> typing = new ConcurrentHashMap<>();
+    // room -> TYPING_SET đã gửi lần cuối, để không gửi lại khi không đổi
+    private final Map<Room, String> lastSent = new ConcurrentHashMap<>();
+
+    private record Typist(String user, long expiresAt) {
+    }
+
+    public TypingAggregator(OutboundDispatcher outbound, @Value("${chat.typing.ttl:3s}") Duration ttl) {
+        this.outbound = outbound;
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    public void typing(ChatSession sender) {
+        Typist typist = new Typist(sender.user(), System.currentTimeMillis() + ttlMillis);
+        // compute() để không ghi vào map vừa bị flush() dọn đi
+        typing.compute(sender.room(), (room, typists) -> {
+            Map<WebSocketSession, Typist> result = typists != null ? typists : new ConcurrentHashMap<>();
+            result.put(sender.socket(), typist);
+            return result;
+        });
+    }
+
+    // Gửi tin xong thì không còn "đang gõ"
+    public void stopped(ChatSession sender) {
+        Map<WebSocketSession, Typist> typists = typing.get(sender.room());
+        if (typists != null) {
+            typists.remove(sender.socket());
+        }
+    }
+
+    @Scheduled(fixedRateString = "${chat.typing.tick:PT0.5S}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Room, Map<WebSocketSession, Typist>> entry : typing.entrySet()) {
+            Room room = entry.getKey();
+            Map<WebSocketSession, Typist> typists = entry.getValue();
+
+            // Hết hạn hoặc đã rời phòng (kể cả phòng bị xóa)
+            typists.entrySet().removeIf(t -> t.getValue().expiresAt() < now || !room.members().contains(t.getKey()));
+            TreeSet<String> users = new TreeSet<>();
+            typists.values().forEach(t -> users.add(t.user()));
+
+            String names = String.join(",", users);
+            if (!names.equals(lastSent.getOrDefault(room, ""))) {
+                lastSent.put(room, names);
+                Frame frame = Frame.text(ChatCodec.encode("TYPING_SET", names));
+                for (WebSocketSession s : room.members()) {
+                    if (s.isOpen()) {
+                        outbound.send(s, frame, true);
+                    }
+                }
+            }
+            if (users.isEmpty()) {
+                // Dọn phòng không còn ai gõ; typing() sẽ tạo lại nếu cần
+                if (typing.computeIfPresent(room, (r, t) -> t.isEmpty() ? null : t) == null) {
+                    lastSent.remove(room);
+                }
+            }
+        }
+    }
+}
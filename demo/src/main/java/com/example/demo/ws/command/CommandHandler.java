@@ -0,0 +1,21 @@
+package com.example.demo.ws.command;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.Command;
+
+/**
+ * Handles one {@link Command}. Every implementation is a bean; the
+ * {@code ChatHandler} dispatches to it through an {@code EnumMap}.
+ */
+public interface CommandHandler {
+
+    Command command();
+
+    /**
+     * @throws IllegalArgumentException if the frame is missing fields or has
+     *         malformed ones; the frame is then dropped
+     */
+    void handle(WebSocketSession session, ChatMessage message) throws Exception;
+}
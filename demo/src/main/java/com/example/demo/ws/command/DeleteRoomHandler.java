@@ -0,0 +1,51 @@
+package com.example.demo.ws.command;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.history.HistoryStore;
+import com.example.demo.search.SearchIndex;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.ChatSession;
+import com.example.demo.ws.Command;
+
+// DELETE_ROOM|room
+@Component
+public class DeleteRoomHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+    private final HistoryStore chatHistory;
+    private final SearchIndex searchIndex;
+
+    public DeleteRoomHandler(ChatRegistry registry, HistoryStore chatHistory, SearchIndex searchIndex) {
+        this.registry = registry;
+        this.chatHistory = chatHistory;
+        this.searchIndex = searchIndex;
+    }
+
+    @Override
+    public Command command() {
+        return Command.DELETE_ROOM;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        String roomToDelete = message.get(1);
+        ChatSession sender = registry.get(session);
+        String user = sender != null ? sender.user() : null;
+
+        if (registry.roomExists(roomToDelete)) {
+            // Thông báo cho tất cả người dùng trong phòng
+            registry.broadcast(roomToDelete, ChatCodec.encode("SYS", "Phòng " + roomToDelete + " đã bị xóa bởi " + user));
+
+            // Danh sách phòng mới được gửi sau cửa sổ debounce
+            registry.deleteRoom(roomToDelete);
+            chatHistory.remove(roomToDelete);
+            searchIndex.remove(roomToDelete);
+        } else {
+            registry.send(session, ChatCodec.encode("ERROR", "Phòng " + roomToDelete + " không tồn tại"));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.demo.ws.command;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.history.HistoryStore;
+import com.example.demo.search.SearchIndex;
+import com.example.demo.storage.FileReferences;
+import com.example.demo.storage.ThumbnailService;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.ChatSession;
+import com.example.demo.ws.Command;
+
+// FILE|fileUrl|fileType|fileName|fileSize|claim -> FILE|user|fileUrl|fileType|fileName|fileSize|time|thumbUrl|seq
+@Component
+public class FileHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+    private final HistoryStore chatHistory;
+    private final ThumbnailService thumbnails;
+    private final SearchIndex searchIndex;
+    private final FileReferences fileReferences;
+
+    public FileHandler(ChatRegistry registry, HistoryStore chatHistory, ThumbnailService thumbnails,
+            SearchIndex searchIndex, FileReferences fileReferences) {
+        this.registry = registry;
+        this.chatHistory = chatHistory;
+        this.thumbnails = thumbnails;
+        this.searchIndex = searchIndex;
+        this.fileReferences = fileReferences;
+    }
+
+    @Override
+    public Command command() {
+        return Command.FILE;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        ChatSession sender = registry.get(session);
+
+        if (sender != null && sender.room() != null) {
+            String fileUrl = message.get(1);
+            String fileType = message.get(2);
+            String fileName = message.get(3);
+            String fileSize = message.get(4);
+            String claim = message.get(5, null);
+
+            // Trường cuối: URL thumbnail (rỗng nếu không phải ảnh) để client tải bản nhỏ trước
+            String fileMsg = ChatCodec.encode("FILE", sender.user(), fileUrl, fileType, fileName, fileSize,
+                    Long.toString(System.currentTimeMillis()), thumbnails.thumbnailUrl(fileUrl));
+
+            // Save to chat history
+            long seq = chatHistory.append(sender.roomName(), fileMsg);
+            searchIndex.index(sender.roomName(), seq, fileMsg);
+            // File của chính người gửi (có claim từ lúc upload) được giữ tới khi tin này rời lịch sử
+            fileReferences.adopt(sender.roomName(), seq, fileUrl, claim);
+
+            registry.publishStored(sender.room(), fileMsg, seq);
+        }
+    }
+}
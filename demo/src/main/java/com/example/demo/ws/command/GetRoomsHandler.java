@@ -0,0 +1,29 @@
+package com.example.demo.ws.command;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.Command;
+
+// GET_ROOMS| -> ROOMS|<json>
+@Component
+public class GetRoomsHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+
+    public GetRoomsHandler(ChatRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Command command() {
+        return Command.GET_ROOMS;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        registry.sendRoomList(session);
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.demo.ws.command;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.Command;
+
+// GET_USERS| -> USERS|<json>|<version>, khi client thấy version presence bị hụt
+@Component
+public class GetUsersHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+
+    public GetUsersHandler(ChatRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Command command() {
+        return Command.GET_USERS;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        registry.sendUserSnapshot(session);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.demo.ws.command;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.history.HistoryProperties;
+import com.example.demo.history.HistoryStore;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.ChatSession;
+import com.example.demo.ws.Command;
+
+// HISTORY_BEFORE|seq|limit (cuộn lên xem tin cũ)
+@Component
+public class HistoryBeforeHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+    private final HistoryStore chatHistory;
+    private final HistoryProperties historyProperties;
+
+    public HistoryBeforeHandler(ChatRegistry registry, HistoryStore chatHistory, HistoryProperties historyProperties) {
+        this.registry = registry;
+        this.chatHistory = chatHistory;
+        this.historyProperties = historyProperties;
+    }
+
+    @Override
+    public Command command() {
+        return Command.HISTORY_BEFORE;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        ChatSession sender = registry.get(session);
+        if (sender != null && sender.room() != null) {
+            String room = sender.roomName();
+            long cursor = message.getLong(1);
+            int limit = Math.max(1, Math.min(message.getInt(2), historyProperties.getMaxPage()));
+            registry.sendHistoryBatch(session, room, chatHistory.before(room, cursor, limit + 1), limit, true);
+        }
+    }
+}
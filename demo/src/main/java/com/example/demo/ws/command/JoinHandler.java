@@ -0,0 +1,85 @@
+package com.example.demo.ws.command;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.drain.GracefulDrain;
+import com.example.demo.drain.ResumeTokens;
+import com.example.demo.history.HistoryProperties;
+import com.example.demo.history.HistoryStore;
+import com.example.demo.mailbox.OfflineMailbox;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.ChatSession;
+import com.example.demo.ws.Command;
+
+// JOIN|room|user|avatar|password, trả thêm SESSION|token để RESUME sau khi mất kết nối
+@Component
+public class JoinHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+    private final HistoryStore chatHistory;
+    private final HistoryProperties historyProperties;
+    private final OfflineMailbox mailbox;
+    private final ResumeTokens tokens;
+    private final GracefulDrain drain;
+
+    public JoinHandler(ChatRegistry registry, HistoryStore chatHistory, HistoryProperties historyProperties,
+            OfflineMailbox mailbox, ResumeTokens tokens, GracefulDrain drain) {
+        this.registry = registry;
+        this.chatHistory = chatHistory;
+        this.historyProperties = historyProperties;
+        this.mailbox = mailbox;
+        this.tokens = tokens;
+        this.drain = drain;
+    }
+
+    @Override
+    public Command command() {
+        return Command.JOIN;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        String room = message.get(1);
+        String user = message.get(2);
+        String avatar = message.has(3) ? message.get(3) : getInitials(user);
+        String password = message.get(4, "");
+
+        // Node đang tắt: không nhận thêm ai, client sang node khác / chờ restart
+        if (drain.isDraining()) {
+            drain.sendReconnect(session);
+            return;
+        }
+
+        if (!registry.join(session, room, user, avatar, password)) {
+            registry.send(session, ChatCodec.encode("ERROR", "Sai mật khẩu cho phòng " + room));
+            return;
+        }
+
+        // USERS / USER_JOINED / ROOM_COUNT đã được registry gửi khi join
+        ChatSession joined = registry.get(session);
+        if (joined != null && joined.room() != null) {
+            registry.publish(joined.room(), ChatCodec.encode("SYS", user + " joined room"));
+            registry.send(session, ChatCodec.encode("SESSION", tokens.issue(joined)));
+        }
+
+        // GỬI N TIN NHẮN GẦN NHẤT TRONG MỘT FRAME, PHẦN CŨ HƠN CLIENT TẢI DẦN
+        int limit = historyProperties.getJoinBatch();
+        registry.sendHistoryBatch(session, room, chatHistory.latest(room, limit + 1), limit, false);
+
+        // Tin nhắn riêng gửi tới lúc user offline
+        mailbox.deliver(session, user);
+    }
+
+    private String getInitials(String name) {
+        if (name == null || name.isEmpty())
+            return "?";
+        String[] parts = name.trim().split("\\s+");
+        if (parts.length >= 2) {
+            return (parts[0].charAt(0) + "" + parts[1].charAt(0)).toUpperCase();
+        }
+        return name.substring(0, Math.min(2, name.length())).toUpperCase();
+    }
+}
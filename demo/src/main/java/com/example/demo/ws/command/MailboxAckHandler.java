@@ -0,0 +1,36 @@
+package com.example.demo.ws.command;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.mailbox.OfflineMailbox;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.ChatSession;
+import com.example.demo.ws.Command;
+
+// MAILBOX_ACK|batchId: client đã nhận batch MAILBOX, xóa khỏi hộp thư và gửi batch tiếp
+@Component
+public class MailboxAckHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+    private final OfflineMailbox mailbox;
+
+    public MailboxAckHandler(ChatRegistry registry, OfflineMailbox mailbox) {
+        this.registry = registry;
+        this.mailbox = mailbox;
+    }
+
+    @Override
+    public Command command() {
+        return Command.MAILBOX_ACK;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        ChatSession state = registry.get(session);
+        if (state != null) {
+            mailbox.ack(session, state.user(), message.getLong(1));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.demo.ws.command;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.history.HistoryStore;
+import com.example.demo.search.SearchIndex;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.ChatSession;
+import com.example.demo.ws.Command;
+import com.example.demo.ws.TypingAggregator;
+
+// MSG|text -> MSG|user|text|time|seq cho cả phòng (seq: vị trí trong lịch sử, dùng cho RESUME)
+@Component
+public class MessageHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+    private final HistoryStore chatHistory;
+    private final TypingAggregator typing;
+    private final SearchIndex searchIndex;
+
+    public MessageHandler(ChatRegistry registry, HistoryStore chatHistory, TypingAggregator typing,
+            SearchIndex searchIndex) {
+        this.registry = registry;
+        this.chatHistory = chatHistory;
+        this.typing = typing;
+        this.searchIndex = searchIndex;
+    }
+
+    @Override
+    public Command command() {
+        return Command.MSG;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        ChatSession sender = registry.get(session);
+        String text = message.get(1);
+
+        if (sender != null && sender.room() != null) {
+            String msg = ChatCodec.encode("MSG", sender.user(), text, Long.toString(System.currentTimeMillis()));
+
+            // LƯU LỊCH SỬ CHAT (tin cũ nhất bị ghi đè khi đầy)
+            long seq = chatHistory.append(sender.roomName(), msg);
+            searchIndex.index(sender.roomName(), seq, msg);
+
+            registry.publishStored(sender.room(), msg, seq);
+            typing.stopped(sender);
+        }
+    }
+}
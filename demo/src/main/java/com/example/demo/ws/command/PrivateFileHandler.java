@@ -0,0 +1,62 @@
+package com.example.demo.ws.command;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.cluster.ClusterRelay;
+import com.example.demo.mailbox.OfflineMailbox;
+import com.example.demo.storage.ThumbnailService;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.ChatSession;
+import com.example.demo.ws.Command;
+
+// PRIVATE_FILE|targetUser|fileUrl|fileType|fileName|fileSize
+@Component
+public class PrivateFileHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+    private final ThumbnailService thumbnails;
+    private final ClusterRelay relay;
+    private final OfflineMailbox mailbox;
+
+    public PrivateFileHandler(ChatRegistry registry, ThumbnailService thumbnails, ClusterRelay relay,
+            OfflineMailbox mailbox) {
+        this.registry = registry;
+        this.thumbnails = thumbnails;
+        this.relay = relay;
+        this.mailbox = mailbox;
+    }
+
+    @Override
+    public Command command() {
+        return Command.PRIVATE_FILE;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        String targetUser = message.get(1);
+        String fileUrl = message.get(2);
+        String fileType = message.get(3);
+        String fileName = message.get(4);
+        String fileSize = message.get(5);
+        ChatSession sender = registry.get(session);
+        if (sender == null || sender.user() == null) {
+            return;
+        }
+        String fromUser = sender.user();
+        String thumbUrl = thumbnails.thumbnailUrl(fileUrl);
+
+        String now = Long.toString(System.currentTimeMillis());
+        String frame = ChatCodec.encode("PRIVATE_FILE", fromUser, fileUrl, fileType, fileName, fileSize, now, thumbUrl);
+        boolean queued = !relay.sendToUser(targetUser, frame);
+        if (queued && !mailbox.enqueue(targetUser, frame)) {
+            registry.send(session,
+                    ChatCodec.encode("SYS", "Hộp thư của " + targetUser + " đã đầy, file chưa được gửi"));
+            return;
+        }
+        relay.sendToUser(fromUser, ChatCodec.encode("PRIVATE_FILE_SENT", targetUser, fileUrl, fileType, fileName,
+                fileSize, now, thumbUrl, queued ? "1" : "0"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.demo.ws.command;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.cluster.ClusterRelay;
+import com.example.demo.mailbox.OfflineMailbox;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.ChatSession;
+import com.example.demo.ws.Command;
+
+// PRIVATE|targetUser|text, người nhận có thể ở node khác hoặc offline (vào hộp thư)
+@Component
+public class PrivateHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+    private final ClusterRelay relay;
+    private final OfflineMailbox mailbox;
+
+    public PrivateHandler(ChatRegistry registry, ClusterRelay relay, OfflineMailbox mailbox) {
+        this.registry = registry;
+        this.relay = relay;
+        this.mailbox = mailbox;
+    }
+
+    @Override
+    public Command command() {
+        return Command.PRIVATE;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        String targetUser = message.get(1);
+        String text = message.get(2);
+        ChatSession sender = registry.get(session);
+        if (sender == null || sender.user() == null) {
+            return;
+        }
+        String fromUser = sender.user();
+
+        String now = Long.toString(System.currentTimeMillis());
+        String frame = ChatCodec.encode("PRIVATE", fromUser, text, now);
+        boolean queued = !relay.sendToUser(targetUser, frame);
+        if (queued && !mailbox.enqueue(targetUser, frame)) {
+            registry.send(session,
+                    ChatCodec.encode("SYS", "Hộp thư của " + targetUser + " đã đầy, tin nhắn chưa được gửi"));
+            return;
+        }
+        // Mọi tab / thiết bị của người gửi đều thấy tin; cờ cuối = người nhận offline, tin nằm trong hộp thư
+        relay.sendToUser(fromUser, ChatCodec.encode("PRIVATE_SENT", targetUser, text, now, queued ? "1" : "0"));
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.demo.ws.command;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.drain.GracefulDrain;
+import com.example.demo.drain.ResumeTokens;
+import com.example.demo.history.HistoryEntry;
+import com.example.demo.history.HistoryProperties;
+import com.example.demo.history.HistoryStore;
+import com.example.demo.mailbox.OfflineMailbox;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.ChatSession;
+import com.example.demo.ws.Command;
+
+// RESUME|sessionToken|lastSeq|password: vào lại phòng sau khi reconnect, chỉ gửi các tin sau lastSeq
+// -> RESUMED|room|0 + HISTORY_BATCH(resume) hoặc RESUMED|room|1 + HISTORY_BATCH như JOIN (client xóa màn hình)
+@Component
+public class ResumeHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+    private final HistoryStore chatHistory;
+    private final HistoryProperties historyProperties;
+    private final ResumeTokens tokens;
+    private final GracefulDrain drain;
+    private final OfflineMailbox mailbox;
+    private final int maxMissed;
+
+    public ResumeHandler(ChatRegistry registry, HistoryStore chatHistory, HistoryProperties historyProperties,
+            ResumeTokens tokens, GracefulDrain drain, OfflineMailbox mailbox,
+            @Value("${chat.resume.max-messages:500}") int maxMissed) {
+        this.registry = registry;
+        this.chatHistory = chatHistory;
+        this.historyProperties = historyProperties;
+        this.tokens = tokens;
+        this.drain = drain;
+        this.mailbox = mailbox;
+        this.maxMissed = maxMissed;
+    }
+
+    @Override
+    public Command command() {
+        return Command.RESUME;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        if (drain.isDraining()) {
+            drain.sendReconnect(session);
+            return;
+        }
+        ResumeTokens.Claims claims = tokens.verify(message.get(1));
+        long lastSeq = message.getLong(2);
+        String password = message.get(3, "");
+        // Token sai / hết hạn / phòng đã tạo lại, hoặc sai mật khẩu: client JOIN lại như bình thường
+        if (claims == null || !registry.join(session, claims.room(), claims.user(), claims.avatar(), password)) {
+            registry.send(session, ChatCodec.encode("RESUME_FAILED"));
+            return;
+        }
+
+        String room = claims.room();
+        List<HistoryEntry> missed = missedSince(chatHistory, room, lastSeq, maxMissed);
+        if (missed != null) {
+            registry.send(session, ChatCodec.encode("RESUMED", room, "0"));
+            registry.sendMissedMessages(session, room, missed);
+        } else {
+            registry.send(session, ChatCodec.encode("RESUMED", room, "1"));
+            int limit = historyProperties.getJoinBatch();
+            registry.sendHistoryBatch(session, room, chatHistory.latest(room, limit + 1), limit, false);
+        }
+
+        ChatSession resumed = registry.get(session);
+        if (resumed != null) {
+            registry.send(session, ChatCodec.encode("SESSION", tokens.issue(resumed)));
+        }
+        mailbox.deliver(session, claims.user());
+    }
+
+    // Các tin sau lastSeq, hoặc null nếu không nối tiếp được (tin đã bị evict, quá nhiều, seq không hợp lệ)
+    static List<HistoryEntry> missedSince(HistoryStore chatHistory, String room, long lastSeq, int maxMissed) {
+        List<HistoryEntry> newest = chatHistory.latest(room, 1);
+        long newestSeq = newest.isEmpty() ? 0 : newest.get(0).seq();
+        if (lastSeq < 0 || lastSeq > newestSeq) {
+            return null;
+        }
+        List<HistoryEntry> missed = chatHistory.after(room, lastSeq, maxMissed + 1);
+        if (missed.size() > maxMissed || (!missed.isEmpty() && missed.get(0).seq() != lastSeq + 1)) {
+            return null;
+        }
+        return missed;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.demo.ws.command;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.search.SearchIndex;
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.ChatSession;
+import com.example.demo.ws.Command;
+
+// SEARCH|query|limit|offset (tìm trong lịch sử phòng hiện tại)
+@Component
+public class SearchHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+    private final SearchIndex searchIndex;
+    private final int maxLimit;
+    private final int maxOffset;
+
+    public SearchHandler(ChatRegistry registry, SearchIndex searchIndex,
+            @Value("${chat.search.max-limit:50}") int maxLimit,
+            @Value("${chat.search.max-offset:1000}") int maxOffset) {
+        this.registry = registry;
+        this.searchIndex = searchIndex;
+        this.maxLimit = maxLimit;
+        this.maxOffset = maxOffset;
+    }
+
+    @Override
+    public Command command() {
+        return Command.SEARCH;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        ChatSession sender = registry.get(session);
+        if (sender == null || sender.room() == null) {
+            return;
+        }
+        String query = message.get(1);
+        int limit = message.has(2) ? Math.max(1, Math.min(message.getInt(2), maxLimit)) : 20;
+        int offset = message.has(3) ? Math.max(0, Math.min(message.getInt(3), maxOffset)) : 0;
+
+        long started = System.nanoTime();
+        SearchIndex.Result result = searchIndex.search(sender.roomName(), query, offset, limit);
+        long took = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+        registry.sendSearchResult(session, query, offset, result.total(), result.entries(), took);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.demo.ws.command;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.ws.ChatMessage;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.ChatSession;
+import com.example.demo.ws.Command;
+import com.example.demo.ws.TypingAggregator;
+
+// TYPING| -> gom vào TYPING_SET|user1,user2 của phòng, gửi theo tick
+@Component
+public class TypingHandler implements CommandHandler {
+
+    private final ChatRegistry registry;
+    private final TypingAggregator typing;
+
+    public TypingHandler(ChatRegistry registry, TypingAggregator typing) {
+        this.registry = registry;
+        this.typing = typing;
+    }
+
+    @Override
+    public Command command() {
+        return Command.TYPING;
+    }
+
+    @Override
+    public void handle(WebSocketSession session, ChatMessage message) throws Exception {
+        ChatSession sender = registry.get(session);
+        if (sender != null && sender.room() != null) {
+            typing.typing(sender);
+        }
+    }
+}
@@ -12,7 +12,69 @@ document.getElementById("currentUserName").textContent = currentUser;
 
 // ================= WEBSOCKET CONNECTION =================
 const serverHost = window.location.hostname || "localhost";
-const ws = new WebSocket(`ws://${serverHost}:8081/chat`);
+let ws = null;
+
+// Phiên để RESUME sau khi mất kết nối: token từ SESSION, seq của tin mới nhất đã nhận
+let sessionToken = "";
+let lastSeq = 0;
+let currentPassword = "";
+// RECONNECT|delayMs từ server đang tắt; không có thì backoff lũy thừa có jitter
+let reconnectHint = null;
+let reconnectAttempts = 0;
+const RECONNECT_MAX_MS = 30000;
+
+// ================= CODEC =================
+// Field ngăn cách bằng "|"; "|" và "\" bên trong field được escape thành "\|" và "\\".
+// Chế độ nhị phân: mỗi field là <varint độ dài><UTF-8>, server trả lời cùng kiểu.
+const USE_BINARY_FRAMES = false;
+const textEncoder = new TextEncoder();
+const textDecoder = new TextDecoder();
+
+function encodeFrame(fields) {
+    return fields.map(f => String(f ?? "").replace(/[\\|]/g, "\\$&")).join("|");
+}
+
+function decodeFrame(data) {
+    const fields = [];
+    let field = "";
+    for (let i = 0; i < data.length; i++) {
+        const c = data[i];
+        if (c === "\\" && i + 1 < data.length) field += data[++i];
+        else if (c === "|") { fields.push(field); field = ""; }
+        else field += c;
+    }
+    fields.push(field);
+    return fields;
+}
+
+function encodeBinaryFrame(fields) {
+    const encoded = fields.map(f => textEncoder.encode(String(f ?? "")));
+    const bytes = [];
+    for (const field of encoded) {
+        let length = field.length;
+        while (length >= 0x80) { bytes.push((length & 0x7f) | 0x80); length >>>= 7; }
+        bytes.push(length);
+        for (const b of field) bytes.push(b);
+    }
+    return new Uint8Array(bytes);
+}
+
+function decodeBinaryFrame(buffer) {
+    const bytes = new Uint8Array(buffer);
+    const fields = [];
+    let position = 0;
+    while (position < bytes.length) {
+        let length = 0, shift = 0, b;
+        do { b = bytes[position++]; length |= (b & 0x7f) << shift; shift += 7; } while (b & 0x80);
+        fields.push(textDecoder.decode(bytes.subarray(position, position + length)));
+        position += length;
+    }
+    return fields;
+}
+
+function sendFrame(...fields) {
+    ws.send(USE_BINARY_FRAMES ? encodeBinaryFrame(fields) : encodeFrame(fields));
+}
 
 // ================= DOM ELEMENTS =================
 const chatArea = document.getElementById("chatArea");
@@ -31,7 +93,20 @@ const currentRoomName = document.getElementById("currentRoomName");
 
 let currentRoom = "";
 let privateTarget = "";
-let typingTimeout = null;
+// TYPING gửi tối đa một lần mỗi TYPING_REFRESH_MS; server giữ trạng thái ~3s rồi tự hết hạn
+const TYPING_REFRESH_MS = 1500;
+let lastTypingSent = 0;
+
+// Lịch sử phân trang: seq của tin cũ nhất đang hiển thị, còn tin cũ hơn hay không
+const HISTORY_PAGE = 50;
+let oldestSeq = null;
+let historyHasMore = false;
+let loadingHistory = false;
+
+function trackSeq(seq) {
+    const value = Number(seq);
+    if (value > lastSeq) lastSeq = value;
+}
 
 // Notification state
 let isWindowFocused = true;
@@ -43,6 +118,9 @@ const privateChatHistory = {};
 // Unread private messages count: { username: count }
 const unreadPrivateMessages = {};
 
+// Frame đã nhận qua MAILBOX: batch gửi lại sau khi mất kết nối trước lúc ack thì bỏ qua
+const seenMailboxFrames = new Set();
+
 // ================= NOTIFICATION SUPPORT =================
 // Check if browser supports notifications
 function checkNotificationSupport() {
@@ -125,7 +203,7 @@ function toggleEmojiPanel() {
 // Sticker emoji gửi như tin nhắn thường
 function sendSticker(emoji) {
     // gửi dưới dạng MSG để server không cần sửa
-    ws.send(`MSG|${emoji}`);
+    sendFrame("MSG", emoji);
     document.getElementById("emojiPanel").style.display = "none";
     messageInput.focus();
 }
@@ -151,17 +229,20 @@ function join() {
     const password = prompt("Nhập mật khẩu phòng (để trống nếu tạo mới hoặc phòng không có mật khẩu):");
 
     currentRoom = room;
+    currentPassword = password || "";
 
     // Xóa lịch sử chat cũ trước khi join phòng mới
     chatArea.innerHTML = "";
+    resetHistory();
 
-    ws.send(`JOIN|${room}|${currentUser}|${getInitials(currentUser)}|${password || ""}`);
+    sendFrame("JOIN", room, currentUser, getInitials(currentUser), password || "");
 
     joinSection.classList.add("hidden");
     chatArea.style.display = "flex";
     inputArea.style.display = "flex";
     userSidebar.style.display = "flex";
     currentRoomName.textContent = `🏠 ${room}`;
+    closeSearch();
     messageInput.focus();
 
     requestNotificationPermission();
@@ -173,8 +254,9 @@ function join() {
 function send() {
     const message = messageInput.value.trim();
     if (message) {
-        ws.send(`MSG|${message}`);
+        sendFrame("MSG", message);
         messageInput.value = "";
+        lastTypingSent = 0;
     }
 }
 
@@ -190,13 +272,13 @@ function deleteRoom() {
     }
 
     if (confirm(`Bạn có chắc muốn xóa phòng "${currentRoom}"? Tất cả người dùng sẽ bị kick ra khỏi phòng.`)) {
-        ws.send(`DELETE_ROOM|${currentRoom}`);
+        sendFrame("DELETE_ROOM", currentRoom);
     }
 }
 
 
 // ================= ADD MESSAGE (ROOM) =================
-function addMessage(sender, message, isCurrentUser, timestamp) {
+function addMessage(sender, message, isCurrentUser, timestamp, options = {}) {
     const messageDiv = document.createElement("div");
     messageDiv.className = isCurrentUser ? "message user" : "message other";
 
@@ -222,11 +304,10 @@ function addMessage(sender, message, isCurrentUser, timestamp) {
     textDiv.textContent = message;
     messageDiv.appendChild(textDiv);
 
-    chatArea.appendChild(messageDiv);
-    chatArea.scrollTop = chatArea.scrollHeight;
+    placeMessage(messageDiv, options);
 
-    // Show notification for messages from others
-    if (!isCurrentUser && sender !== currentUser) {
+    // Show notification for messages from others (không báo cho tin nhắn cũ)
+    if (!options.history && !isCurrentUser && sender !== currentUser) {
         showNotificationWithAction(
             `💬 Tin nhắn từ ${sender}`,
             message,
@@ -236,6 +317,131 @@ function addMessage(sender, message, isCurrentUser, timestamp) {
     }
 }
 
+// Thêm vào cuối chatArea, hoặc chèn trước options.before khi tải tin cũ
+function placeMessage(messageDiv, options) {
+    if (options.before) {
+        chatArea.insertBefore(messageDiv, options.before);
+    } else {
+        chatArea.appendChild(messageDiv);
+        chatArea.scrollTop = chatArea.scrollHeight;
+    }
+}
+
+// ================= HISTORY (PHÂN TRANG) =================
+function resetHistory() {
+    oldestSeq = null;
+    historyHasMore = false;
+    loadingHistory = false;
+    lastSeq = 0;
+}
+
+// HISTORY_BATCH|{"room","older","hasMore","resume","messages":[{"seq","frame"}]}
+// resume: các tin bị lỡ sau RESUME, nối vào cuối, không đổi trạng thái phân trang
+function handleHistoryBatch(batch) {
+    if (batch.room !== currentRoom) return;
+
+    // Tin cũ hơn được chèn lên đầu, giữ nguyên vị trí đang xem
+    const anchor = batch.older ? chatArea.firstChild : null;
+    const previousHeight = chatArea.scrollHeight;
+
+    batch.messages.forEach(m => {
+        renderHistoryFrame(m.frame, anchor);
+        trackSeq(m.seq);
+    });
+    if (batch.resume) return;
+
+    if (batch.messages.length > 0) oldestSeq = batch.messages[0].seq;
+    historyHasMore = batch.hasMore;
+    loadingHistory = false;
+
+    if (batch.older) {
+        chatArea.scrollTop += chatArea.scrollHeight - previousHeight;
+    }
+}
+
+// MSG|user|text|time or FILE|sender|fileUrl|fileType|fileName|fileSize|time|thumbUrl
+function renderHistoryFrame(frame, anchor) {
+    const parts = decodeFrame(frame);
+    const options = { history: true, before: anchor, thumbUrl: parts[7] };
+    if (parts[0] === "MSG") {
+        addMessage(parts[1], parts[2], parts[1] === currentUser, parts[3], options);
+    } else if (parts[0] === "FILE") {
+        addFileMessage(parts[1], parts[2], parts[3], parts[4], parts[5], parts[1] === currentUser, parts[6], options);
+    }
+}
+
+// Cuộn gần tới đầu -> tải thêm tin cũ
+chatArea.addEventListener("scroll", () => {
+    if (chatArea.scrollTop < 40 && historyHasMore && !loadingHistory && oldestSeq !== null) {
+        loadingHistory = true;
+        sendFrame("HISTORY_BEFORE", oldestSeq, HISTORY_PAGE);
+    }
+});
+
+// ================= SEARCH =================
+// SEARCH|query|limit|offset -> SEARCH_RESULT|{"query","total","offset","tookMicros","messages":[{"seq","frame"}]}
+const SEARCH_PAGE = 20;
+const searchResults = document.getElementById("searchResults");
+let searchTimer = null;
+let searchQuery = "";
+
+function openSearch() {
+    if (!currentRoom) return;
+    document.getElementById("searchOverlay").classList.add("active");
+    document.getElementById("searchInput").focus();
+}
+
+function closeSearch() {
+    document.getElementById("searchOverlay").classList.remove("active");
+}
+
+// Tìm theo từng phím gõ, chờ người dùng ngừng gõ một chút
+function onSearchInput() {
+    clearTimeout(searchTimer);
+    searchTimer = setTimeout(() => {
+        searchQuery = document.getElementById("searchInput").value;
+        searchResults.innerHTML = "";
+        document.getElementById("searchSummary").textContent = "";
+        if (searchQuery.trim()) sendFrame("SEARCH", searchQuery, SEARCH_PAGE, 0);
+    }, 200);
+}
+
+function handleSearchResult(result) {
+    // Kết quả của query cũ đến muộn: bỏ qua
+    if (result.query !== searchQuery) return;
+
+    searchResults.querySelector(".search-more")?.remove();
+    result.messages.forEach(m => searchResults.appendChild(renderSearchResult(decodeFrame(m.frame))));
+
+    const shown = result.offset + result.messages.length;
+    document.getElementById("searchSummary").textContent =
+        `${result.total} kết quả (${(result.tookMicros / 1000).toFixed(1)} ms)`;
+    if (shown < result.total && result.messages.length > 0) {
+        const more = document.createElement("button");
+        more.className = "search-more";
+        more.textContent = "Xem thêm";
+        more.onclick = () => sendFrame("SEARCH", searchQuery, SEARCH_PAGE, shown);
+        searchResults.appendChild(more);
+    }
+}
+
+// MSG|user|text|time hoặc FILE|sender|fileUrl|fileType|fileName|fileSize|time|thumbUrl
+function renderSearchResult(parts) {
+    const item = document.createElement("div");
+    item.className = "search-result";
+
+    const sender = document.createElement("strong");
+    sender.textContent = parts[1];
+    const time = document.createElement("span");
+    time.className = "message-time";
+    time.textContent = formatTime(parts[0] === "FILE" ? parts[6] : parts[3]);
+    const text = document.createElement("div");
+    text.textContent = parts[0] === "FILE" ? `📎 ${parts[4]}` : parts[2];
+
+    item.append(sender, time, text);
+    return item;
+}
+
 // ================= SYSTEM MESSAGE =================
 function addSystemMessage(message) {
     const messageDiv = document.createElement("div");
@@ -259,7 +465,7 @@ function openPrivateChat(username) {
     history.forEach(msg => {
         if (msg.isFile) {
             // Render file message
-            renderPrivateFileMessage(msg.sender, msg.fileUrl, msg.fileType, msg.fileName, msg.fileSize, msg.isCurrentUser, msg.timestamp);
+            renderPrivateFileMessage(msg.sender, msg.fileUrl, msg.fileType, msg.fileName, msg.fileSize, msg.isCurrentUser, msg.timestamp, msg.thumbUrl);
         } else {
             // Render text message
             renderPrivateMessage(msg.sender, msg.message, msg.isCurrentUser, msg.timestamp);
@@ -290,7 +496,7 @@ function sendPrivate() {
     const message = input.value.trim();
 
     if (message && privateTarget) {
-        ws.send(`PRIVATE|${privateTarget}|${message}`);
+        sendFrame("PRIVATE", privateTarget, message);
         input.value = "";
     }
 }
@@ -321,26 +527,16 @@ async function handlePrivateFileSelect(event) {
     privateChatArea.scrollTop = privateChatArea.scrollHeight;
 
     try {
-        // Upload file to server
-        const formData = new FormData();
-        formData.append("file", file);
-
-        const response = await fetch("/api/files/upload", {
-            method: "POST",
-            body: formData
+        // Upload file to server (chia chunk, gửi song song, resume được)
+        const result = await uploadFileChunked(file, progress => {
+            uploadingMsg.textContent = `📤 Đang tải file... ${Math.floor(progress * 100)}%`;
         });
 
-        if (!response.ok) {
-            throw new Error("Upload failed");
-        }
-
-        const result = await response.json();
-
         // Remove uploading indicator
         privateChatArea.removeChild(uploadingMsg);
 
         // Send file info via WebSocket
-        ws.send(`PRIVATE_FILE|${privateTarget}|${result.url}|${result.type}|${file.name}|${result.size}`);
+        sendFrame("PRIVATE_FILE", privateTarget, result.url, result.type, file.name, result.size);
 
         // Clear file input
         event.target.value = "";
@@ -353,7 +549,80 @@ async function handlePrivateFileSelect(event) {
     }
 }
 
-function addPrivateFileMessage(sender, fileUrl, fileType, fileName, fileSize, isCurrentUser, timestamp) {
+// ================= CHUNKED UPLOAD =================
+const UPLOAD_CONCURRENCY = 4;
+const UPLOAD_RETRIES = 5;
+
+// init -> PUT từng chunk (song song) -> complete; trả về {url, type, size, ...} như /upload.
+// uploadId được nhớ trong localStorage nên chọn lại cùng file sẽ chỉ gửi các chunk còn thiếu.
+async function uploadFileChunked(file, onProgress) {
+    const resumeKey = `upload:${file.name}:${file.size}:${file.lastModified}`;
+
+    let upload = null;
+    const savedId = localStorage.getItem(resumeKey);
+    if (savedId) {
+        const response = await fetch(`/api/files/uploads/${savedId}`);
+        if (response.ok) upload = await response.json();
+    }
+    if (!upload) {
+        const response = await fetch("/api/files/uploads", {
+            method: "POST",
+            headers: { "Content-Type": "application/json" },
+            body: JSON.stringify({ filename: file.name, size: file.size })
+        });
+        if (!response.ok) throw new Error("Upload init failed");
+        upload = await response.json();
+        localStorage.setItem(resumeKey, upload.uploadId);
+    }
+
+    const chunkCount = Math.ceil(file.size / upload.chunkSize);
+    const received = new Set(upload.received);
+    const pending = [];
+    for (let i = 0; i < chunkCount; i++) {
+        if (!received.has(i)) pending.push(i);
+    }
+    let done = received.size;
+    if (chunkCount > 0) onProgress(done / chunkCount);
+
+    async function putChunk(index) {
+        const start = index * upload.chunkSize;
+        const chunk = file.slice(start, Math.min(start + upload.chunkSize, file.size));
+        for (let attempt = 1; ; attempt++) {
+            try {
+                const response = await fetch(`/api/files/uploads/${upload.uploadId}?offset=${start}`, {
+                    method: "PUT",
+                    headers: { "Content-Type": "application/octet-stream" },
+                    body: chunk
+                });
+                // 409: server đã có chunk này (lần gửi trước thành công nhưng mất response)
+                if (response.ok || response.status === 409) return;
+                if (response.status < 500) throw new Error(`Chunk ${index} rejected`);
+            } catch (error) {
+                if (attempt >= UPLOAD_RETRIES) throw error;
+            }
+            await new Promise(resolve => setTimeout(resolve, 500 * attempt));
+        }
+    }
+
+    async function worker() {
+        while (pending.length > 0) {
+            await putChunk(pending.shift());
+            done++;
+            onProgress(done / chunkCount);
+        }
+    }
+
+    const workers = [];
+    for (let i = 0; i < Math.min(UPLOAD_CONCURRENCY, pending.length); i++) workers.push(worker());
+    await Promise.all(workers);
+
+    const response = await fetch(`/api/files/uploads/${upload.uploadId}/complete`, { method: "POST" });
+    if (!response.ok) throw new Error("Upload complete failed");
+    localStorage.removeItem(resumeKey);
+    return response.json();
+}
+
+function addPrivateFileMessage(sender, fileUrl, fileType, fileName, fileSize, isCurrentUser, timestamp, thumbUrl) {
     // Determine the conversation partner
     // When isCurrentUser=true, sender param is actually the target user (from PRIVATE_FILE_SENT)
     // When isCurrentUser=false, sender param is the actual sender (from PRIVATE_FILE)
@@ -371,12 +640,13 @@ function addPrivateFileMessage(sender, fileUrl, fileType, fileName, fileSize, is
         fileSize: fileSize,
         isFile: true,
         isCurrentUser: isCurrentUser,
-        timestamp: timestamp
+        timestamp: timestamp,
+        thumbUrl: thumbUrl
     });
 
     // If private chat with this user is currently open, display the file
     if (privateTarget === partner) {
-        renderPrivateFileMessage(sender, fileUrl, fileType, fileName, fileSize, isCurrentUser, timestamp);
+        renderPrivateFileMessage(sender, fileUrl, fileType, fileName, fileSize, isCurrentUser, timestamp, thumbUrl);
     } else if (!isCurrentUser) {
         // If not open and file is from someone else, increase unread count
         unreadPrivateMessages[partner] = (unreadPrivateMessages[partner] || 0) + 1;
@@ -393,7 +663,7 @@ function addPrivateFileMessage(sender, fileUrl, fileType, fileName, fileSize, is
     }
 }
 
-function renderPrivateFileMessage(sender, fileUrl, fileType, fileName, fileSize, isCurrentUser, timestamp) {
+function renderPrivateFileMessage(sender, fileUrl, fileType, fileName, fileSize, isCurrentUser, timestamp, thumbUrl) {
     const messageDiv = document.createElement("div");
     messageDiv.className = isCurrentUser ? "message user private" : "message other private";
 
@@ -418,8 +688,10 @@ function renderPrivateFileMessage(sender, fileUrl, fileType, fileName, fileSize,
 
     if (fileType === "image") {
         const img = document.createElement("img");
-        img.src = fileUrl;
+        // Bản thu nhỏ trước; bấm vào mới mở ảnh gốc
+        img.src = thumbUrl || fileUrl;
         img.alt = fileName;
+        img.loading = "lazy";
         img.style.maxWidth = "300px";
         img.style.maxHeight = "300px";
         img.style.borderRadius = "8px";
@@ -517,17 +789,38 @@ function addPrivateMessage(sender, message, isCurrentUser, timestamp) {
     }
 }
 
+// MAILBOX|batchId|["PRIVATE|...", "PRIVATE_FILE|...", ...]: tin nhắn riêng gửi tới lúc mình offline
+function handleMailbox(batchId, frames) {
+    let fresh = 0;
+    frames.forEach(frame => {
+        if (seenMailboxFrames.has(frame)) return;
+        seenMailboxFrames.add(frame);
+        handleFrame(decodeFrame(frame));
+        fresh++;
+    });
+    if (fresh > 0) addSystemMessage(`📬 ${fresh} tin nhắn riêng gửi tới lúc bạn offline`);
+    // Ack xong server mới xóa batch khỏi hộp thư và gửi batch tiếp theo
+    sendFrame("MAILBOX_ACK", batchId);
+}
+
+// PRIVATE_SENT|target|...|queued: người nhận offline, tin nằm trong hộp thư của họ
+function notifyQueued(target) {
+    addSystemMessage(`📬 ${target} đang offline, tin nhắn sẽ được gửi khi ${target} online`);
+}
+
 // ================= ROOM HANDLING =================
 function switchRoom(roomName, password = "") {
     if (roomName === currentRoom) return;
 
     currentRoom = roomName;
+    currentPassword = password;
     currentRoomName.textContent = `🏠 ${roomName}`;
 
     // Xóa lịch sử chat cũ trước khi chuyển phòng
     chatArea.innerHTML = "";
+    resetHistory();
 
-    ws.send(`JOIN|${roomName}|${currentUser}|${getInitials(currentUser)}|${password}`);
+    sendFrame("JOIN", roomName, currentUser, getInitials(currentUser), password);
 }
 
 function createNewRoom() {
@@ -539,6 +832,39 @@ function createNewRoom() {
 }
 
 // ================= USER & ROOM LIST =================
+// Presence theo delta: USERS|json|version là snapshot, USER_JOINED/USER_LEFT tăng version đúng 1.
+// Hụt version (mất frame, vào phòng giữa chừng) thì xin lại snapshot bằng GET_USERS.
+let roomUsers = new Map(); // uniqueId -> user
+let presenceVersion = -1;
+let roomsState = [];
+
+function applyUserSnapshot(users, version) {
+    roomUsers = new Map(users.map(user => [user.uniqueId, user]));
+    presenceVersion = version;
+    updateUserList([...roomUsers.values()]);
+}
+
+function applyPresenceDelta(version, apply) {
+    if (version <= presenceVersion) return; // đã có trong snapshot
+    if (presenceVersion < 0 || version !== presenceVersion + 1) {
+        sendFrame("GET_USERS", "");
+        return;
+    }
+    apply();
+    presenceVersion = version;
+    updateUserList([...roomUsers.values()]);
+}
+
+function applyRoomCount(roomName, count) {
+    const room = roomsState.find(r => r.name === roomName);
+    if (!room) {
+        sendFrame("GET_ROOMS", ""); // phòng mới mà chưa có snapshot
+        return;
+    }
+    room.count = count;
+    updateRoomList(roomsState);
+}
+
 function updateUserList(users) {
     userList.innerHTML = "";
     document.getElementById("userCount").textContent = `${users.length} người online`;
@@ -619,6 +945,7 @@ function updateUserListBadges() {
 }
 
 function updateRoomList(rooms) {
+    roomsState = rooms;
     const newRoomBtn = roomList.querySelector(".new-room-btn");
     roomList.innerHTML = "";
     if (newRoomBtn) roomList.appendChild(newRoomBtn);
@@ -671,16 +998,19 @@ function handleEnter(event) {
 }
 
 function handleTyping() {
-    clearTimeout(typingTimeout);
-    ws.send("TYPING|");
-    typingTimeout = setTimeout(() => { }, 1000);
+    const now = Date.now();
+    if (now - lastTypingSent >= TYPING_REFRESH_MS) {
+        lastTypingSent = now;
+        sendFrame("TYPING", "");
+    }
 }
 
-function showTyping(username) {
-    typingIndicator.textContent = `${username} đang gõ...`;
-    setTimeout(() => {
-        typingIndicator.textContent = "";
-    }, 2000);
+// TYPING_SET|user1,user2: danh sách đầy đủ người đang gõ trong phòng, rỗng khi không còn ai
+function showTypingSet(names) {
+    const users = names ? names.split(",").filter(u => u !== currentUser) : [];
+    typingIndicator.textContent = users.length === 0 ? ""
+        : users.length <= 3 ? `${users.join(", ")} đang gõ...`
+        : `${users.length} người đang gõ...`;
 }
 
 // ================= SIDEBAR =================
@@ -690,40 +1020,95 @@ function toggleUserSidebar() {
 }
 
 // ================= WEBSOCKET EVENTS =================
-ws.onopen = () => {
-    statusText.textContent = "Đã kết nối";
-    ws.send("GET_ROOMS|");
-};
-
-ws.onmessage = (event) => {
-    const data = event.data;
-    const firstPipe = data.indexOf("|");
-    const type = data.substring(0, firstPipe);
-
-    // HISTORY|MSG|user|text|time or HISTORY|FILE|user|fileUrl|fileType|fileName|fileSize|time
-    if (type === "HISTORY") {
-        // Lấy phần sau "HISTORY|"
-        const msgData = data.substring(firstPipe + 1);
-        const parts = msgData.split("|");
-        const msgType = parts[0];
-        if (msgType === "MSG") {
-            const user = parts[1];
-            const text = parts[2];
-            const timestamp = parts[3];
-            addMessage(user, text, user === currentUser, timestamp);
-        } else if (msgType === "FILE") {
-            // FILE|sender|fileUrl|fileType|fileName|fileSize|timestamp
-            addFileMessage(parts[1], parts[2], parts[3], parts[4], parts[5], parts[1] === currentUser, parts[6]);
-        }
+function connect() {
+    ws = new WebSocket(`ws://${serverHost}:8081/chat`);
+    ws.binaryType = "arraybuffer";
+
+    ws.onopen = () => {
+        statusText.textContent = "Đã kết nối";
+        reconnectAttempts = 0;
+        sendFrame("GET_ROOMS", "");
+        // Kết nối lại: vào lại phòng cũ, server chỉ gửi các tin sau lastSeq
+        if (sessionToken && currentRoom) sendFrame("RESUME", sessionToken, lastSeq, currentPassword);
+    };
+
+    ws.onmessage = (event) => {
+        handleFrame(typeof event.data === "string" ? decodeFrame(event.data) : decodeBinaryFrame(event.data));
+    };
+
+    ws.onclose = () => {
+        statusText.textContent = "Mất kết nối";
+        const delay = reconnectHint ?? Math.random() * Math.min(RECONNECT_MAX_MS, 1000 * 2 ** reconnectAttempts);
+        reconnectHint = null;
+        reconnectAttempts++;
+        addSystemMessage(`❌ Mất kết nối với server, thử lại sau ${Math.ceil(delay / 1000)} giây`);
+        setTimeout(connect, delay);
+    };
+}
+connect();
+
+// BATCH|frame1|frame2|...: server gom nhiều frame trong vài ms thành một, mỗi field là một frame text
+function handleFrame(parts) {
+    const type = parts[0];
+
+    if (type === "BATCH") {
+        parts.slice(1).forEach(frame => handleFrame(decodeFrame(frame)));
+        return;
+    }
+
+    if (type === "HISTORY_BATCH") {
+        handleHistoryBatch(JSON.parse(parts[1]));
         return;
     }
 
-    const parts = data.split("|");
+    if (type === "SEARCH_RESULT") {
+        handleSearchResult(JSON.parse(parts[1]));
+        return;
+    }
+
+    if (type === "MAILBOX") {
+        handleMailbox(parts[1], JSON.parse(parts[2]));
+        return;
+    }
 
     if (type === "SYS") addSystemMessage(parts[1]);
-    else if (type === "MSG") addMessage(parts[1], parts[2], parts[1] === currentUser, parts[3]);
-    else if (type === "USERS") updateUserList(JSON.parse(parts[1]));
+    else if (type === "MSG") {
+        // MSG|user|text|time|seq
+        addMessage(parts[1], parts[2], parts[1] === currentUser, parts[3]);
+        if (parts[4]) trackSeq(parts[4]);
+    }
+    else if (type === "SESSION") sessionToken = parts[1];
+    else if (type === "RECONNECT") {
+        // RECONNECT|delayMs: server sắp tắt, kết nối lại sau delay (mỗi client một delay khác nhau)
+        reconnectHint = Number(parts[1]);
+        statusText.textContent = "Server đang khởi động lại...";
+    }
+    else if (type === "RESUMED") {
+        // RESUMED|room|full: full=1 -> không nối tiếp được, server gửi lại lịch sử như JOIN
+        if (parts[2] === "1") {
+            chatArea.innerHTML = "";
+            resetHistory();
+        }
+        addSystemMessage("🔄 Đã kết nối lại");
+    }
+    else if (type === "RESUME_FAILED") {
+        sessionToken = "";
+        chatArea.innerHTML = "";
+        resetHistory();
+        sendFrame("JOIN", currentRoom, currentUser, getInitials(currentUser), currentPassword);
+    }
+    else if (type === "USERS") applyUserSnapshot(JSON.parse(parts[1]), Number(parts[2]));
+    else if (type === "USER_JOINED") {
+        const user = JSON.parse(parts[2]);
+        applyPresenceDelta(Number(parts[1]), () => roomUsers.set(user.uniqueId, user));
+    }
+    else if (type === "USER_LEFT") applyPresenceDelta(Number(parts[1]), () => roomUsers.delete(parts[2]));
     else if (type === "ROOMS") updateRoomList(JSON.parse(parts[1]));
+    else if (type === "ROOM_COUNT") applyRoomCount(parts[1], Number(parts[2]));
+    else if (type === "THROTTLED") {
+        // THROTTLED|command|retryAfterMs: gửi quá nhanh hoặc server đang quá tải, lệnh đã bị bỏ qua
+        addSystemMessage(`⏳ Thao tác quá nhanh (${parts[1]}), thử lại sau ${Math.ceil(Number(parts[2]) / 1000)} giây`);
+    }
     else if (type === "ERROR") {
         alert(parts[1]);
         // Reset to join section if error
@@ -733,19 +1118,25 @@ ws.onmessage = (event) => {
         userSidebar.style.display = "none";
     }
     else if (type === "PRIVATE") addPrivateMessage(parts[1], parts[2], false, parts[3]);
-    else if (type === "PRIVATE_SENT") addPrivateMessage(parts[1], parts[2], true, parts[3]);
-    else if (type === "TYPING") showTyping(parts[1]);
+    else if (type === "PRIVATE_SENT") {
+        addPrivateMessage(parts[1], parts[2], true, parts[3]);
+        if (parts[4] === "1") notifyQueued(parts[1]);
+    }
+    else if (type === "TYPING_SET") showTypingSet(parts[1]);
     else if (type === "FILE") {
-        // FILE|sender|fileUrl|fileType|fileName|fileSize|timestamp
-        addFileMessage(parts[1], parts[2], parts[3], parts[4], parts[5], parts[1] === currentUser, parts[6]);
+        // FILE|sender|fileUrl|fileType|fileName|fileSize|timestamp|thumbUrl|seq
+        addFileMessage(parts[1], parts[2], parts[3], parts[4], parts[5], parts[1] === currentUser, parts[6],
+            { thumbUrl: parts[7] });
+        if (parts[8]) trackSeq(parts[8]);
     }
     else if (type === "PRIVATE_FILE") {
-        // PRIVATE_FILE|sender|fileUrl|fileType|fileName|fileSize|timestamp
-        addPrivateFileMessage(parts[1], parts[2], parts[3], parts[4], parts[5], false, parts[6]);
+        // PRIVATE_FILE|sender|fileUrl|fileType|fileName|fileSize|timestamp|thumbUrl
+        addPrivateFileMessage(parts[1], parts[2], parts[3], parts[4], parts[5], false, parts[6], parts[7]);
     }
     else if (type === "PRIVATE_FILE_SENT") {
-        // PRIVATE_FILE_SENT|targetUser|fileUrl|fileType|fileName|fileSize|timestamp
-        addPrivateFileMessage(parts[1], parts[2], parts[3], parts[4], parts[5], true, parts[6]);
+        // PRIVATE_FILE_SENT|targetUser|fileUrl|fileType|fileName|fileSize|timestamp|thumbUrl|queued
+        addPrivateFileMessage(parts[1], parts[2], parts[3], parts[4], parts[5], true, parts[6], parts[7]);
+        if (parts[8] === "1") notifyQueued(parts[1]);
     }
     else if (type === "ROOM_DELETED") {
         const deletedRoom = parts[1];
@@ -760,12 +1151,7 @@ ws.onmessage = (event) => {
             currentRoomName.textContent = "💬 Chat App";
         }
     }
-};
-
-ws.onclose = () => {
-    statusText.textContent = "Mất kết nối";
-    addSystemMessage("❌ Mất kết nối với server");
-};
+}
 
 // ================= UTILS =================
 function formatTime(timestamp) {
@@ -818,26 +1204,16 @@ async function handleFileSelect(event) {
     chatArea.scrollTop = chatArea.scrollHeight;
 
     try {
-        // Upload file to server
-        const formData = new FormData();
-        formData.append("file", file);
-
-        const response = await fetch("/api/files/upload", {
-            method: "POST",
-            body: formData
+        // Upload file to server (chia chunk, gửi song song, resume được)
+        const result = await uploadFileChunked(file, progress => {
+            uploadingMsg.textContent = `📤 Đang tải file... ${Math.floor(progress * 100)}%`;
         });
 
-        if (!response.ok) {
-            throw new Error("Upload failed");
-        }
-
-        const result = await response.json();
-
         // Remove uploading indicator
         chatArea.removeChild(uploadingMsg);
 
-        // Send file info via WebSocket
-        ws.send(`FILE|${result.url}|${result.type}|${file.name}|${result.size}`);
+        // Send file info via WebSocket (claim: tin này sở hữu file vừa upload)
+        sendFrame("FILE", result.url, result.type, file.name, result.size, result.claim || "");
 
         // Clear file input
         event.target.value = "";
@@ -850,7 +1226,7 @@ async function handleFileSelect(event) {
     }
 }
 
-function addFileMessage(sender, fileUrl, fileType, fileName, fileSize, isCurrentUser, timestamp) {
+function addFileMessage(sender, fileUrl, fileType, fileName, fileSize, isCurrentUser, timestamp, options = {}) {
     const messageDiv = document.createElement("div");
     messageDiv.className = isCurrentUser ? "message user" : "message other";
 
@@ -877,8 +1253,10 @@ function addFileMessage(sender, fileUrl, fileType, fileName, fileSize, isCurrent
 
     if (fileType === "image") {
         const img = document.createElement("img");
-        img.src = fileUrl;
+        // Bản thu nhỏ trước; bấm vào mới mở ảnh gốc
+        img.src = options.thumbUrl || fileUrl;
         img.alt = fileName;
+        img.loading = "lazy";
         img.style.maxWidth = "300px";
         img.style.maxHeight = "300px";
         img.style.borderRadius = "8px";
@@ -906,11 +1284,10 @@ function addFileMessage(sender, fileUrl, fileType, fileName, fileSize, isCurrent
     }
 
     messageDiv.appendChild(fileDiv);
-    chatArea.appendChild(messageDiv);
-    chatArea.scrollTop = chatArea.scrollHeight;
+    placeMessage(messageDiv, options);
 
     // Show notification for messages from others
-    if (!isCurrentUser && sender !== currentUser) {
+    if (!options.history && !isCurrentUser && sender !== currentUser) {
         showNotificationWithAction(
             `📎 File từ ${sender}`,
             `${fileName} (${formatFileSize(fileSize)})`,
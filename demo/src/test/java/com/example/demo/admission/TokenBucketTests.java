@@ -0,0 +1,53 @@
+package com.example.demo.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTests {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	void allowsBurstThenRate() {
+		TokenBucket bucket = new TokenBucket(10, 20);
+		AtomicLongArray state = new AtomicLongArray(new long[] { TokenBucket.FULL });
+		long now = 1_000 * SECOND;
+
+		for (int i = 0; i < 20; i++) {
+			assertEquals(0, bucket.tryAcquire(state, 0, now));
+		}
+		long wait = bucket.tryAcquire(state, 0, now);
+		assertEquals(SECOND / 10, wait);
+
+		// Sau một giây có lại 10 token, không hơn
+		now += SECOND;
+		int taken = 0;
+		while (bucket.tryAcquire(state, 0, now) == 0) {
+			taken++;
+		}
+		assertEquals(10, taken);
+	}
+
+	@Test
+	void refillsUpToBurstOnly() {
+		TokenBucket bucket = new TokenBucket(1, 3);
+		AtomicLongArray state = new AtomicLongArray(new long[] { TokenBucket.FULL });
+		long now = 5 * SECOND;
+		assertEquals(0, bucket.tryAcquire(state, 0, now));
+
+		// Nghỉ lâu cũng chỉ được burst token
+		now += 3_600 * SECOND;
+		int taken = 0;
+		while (bucket.tryAcquire(state, 0, now) == 0) {
+			taken++;
+		}
+		assertEquals(3, taken);
+		assertTrue(bucket.tryAcquire(state, 0, now) > 0);
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.example.demo.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.demo.history.HistoryStore;
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.search.SearchIndex;
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatRegistry;
+import com.example.demo.ws.OutboundDispatcher;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ClusterRelayTests {
+
+	private record Node(ChatRegistry registry, HistoryStore history) {
+	}
+
+	private static Node node(String id, LoopbackClusterBus.Hub hub) {
+		LoopbackClusterBus bus = new LoopbackClusterBus(id, hub);
+		ChatRegistry registry = new ChatRegistry(mock(OutboundDispatcher.class), bus,
+				new ChatMetrics(new SimpleMeterRegistry(), 1.0, false), mock(TaskScheduler.class),
+				Duration.ofMillis(250));
+		HistoryStore history = mock(HistoryStore.class);
+		new ClusterRelay(bus, registry, history, mock(PresenceDirectory.class), mock(SearchIndex.class));
+		return new Node(registry, history);
+	}
+
+	private static WebSocketSession session(ChatRegistry registry, String id) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn(id);
+		when(session.isOpen()).thenReturn(true);
+		when(session.getAttributes()).thenReturn(new HashMap<>());
+		registry.open(session);
+		return session;
+	}
+
+	@Test
+	void roomPasswordIsCheckedOnEveryNode() throws Exception {
+		LoopbackClusterBus.Hub hub = new LoopbackClusterBus.Hub();
+		Node a = node("a", hub);
+		Node b = node("b", hub);
+
+		assertTrue(a.registry().join(session(a.registry(), "a1"), "vip", "an", "AN", "bí mật"));
+		// Phòng chưa có ở b: JOIN sai mật khẩu không được tạo phòng mới với mật khẩu của mình
+		assertFalse(b.registry().join(session(b.registry(), "b1"), "vip", "kẻ lạ", "KL", "đoán bừa"));
+		assertFalse(b.registry().roomExists("vip"));
+		assertTrue(b.registry().join(session(b.registry(), "b2"), "vip", "bình", "B", "bí mật"));
+	}
+
+	@Test
+	void roomWithAnotherPasswordGetsNoRemoteTraffic() throws Exception {
+		LoopbackClusterBus.Hub hub = new LoopbackClusterBus.Hub();
+		Node a = node("a", hub);
+		// b tạo "vip" trước khi nối vào cluster, với mật khẩu khác
+		Node b = node("b", new LoopbackClusterBus.Hub());
+		assertTrue(b.registry().join(session(b.registry(), "b1"), "vip", "kẻ lạ", "KL", "đoán bừa"));
+		assertTrue(a.registry().join(session(a.registry(), "a1"), "vip", "an", "AN", "bí mật"));
+
+		ClusterRelay relayB = new ClusterRelay(mock(ClusterBus.class), b.registry(), b.history(),
+				mock(PresenceDirectory.class), mock(SearchIndex.class));
+		String hash = a.registry().rooms().iterator().next().passwordHash();
+		relayB.onEvent(new ClusterEvent(ClusterEvent.Type.ROOM_STORED, "a", "vip",
+				ChatCodec.encode(hash, "MSG|an|chỉ cho phòng thật|0")));
+
+		verify(b.history(), never()).append(eq("vip"), anyString());
+	}
+}
@@ -0,0 +1,36 @@
+package com.example.demo.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.ws.ChatCodec;
+import com.example.demo.ws.ChatRegistry;
+
+class PresenceDirectoryTests {
+
+	@Test
+	void userOnTwoNodesStaysOnlineWhenOneLeaves() {
+		PresenceDirectory presence = new PresenceDirectory(mock(ClusterBus.class), mock(ChatRegistry.class),
+				Duration.ofSeconds(10));
+		presence.onEvent(new ClusterEvent(ClusterEvent.Type.PRESENCE_UP, "n1", "an", ""));
+		presence.onEvent(new ClusterEvent(ClusterEvent.Type.PRESENCE_UP, "n2", "an", ""));
+		assertEquals(Set.of("n1", "n2"), presence.locate("an"));
+
+		presence.onEvent(new ClusterEvent(ClusterEvent.Type.PRESENCE_DOWN, "n1", "an", ""));
+		assertEquals(Set.of("n2"), presence.locate("an"));
+
+		// Snapshot của n1 không có "an" không được xóa entry của n2
+		presence.onEvent(new ClusterEvent(ClusterEvent.Type.PRESENCE_SNAPSHOT, "n1", "", ChatCodec.encode("binh")));
+		assertEquals(Set.of("n2"), presence.locate("an"));
+		assertEquals(Set.of("n1"), presence.locate("binh"));
+
+		presence.onEvent(new ClusterEvent(ClusterEvent.Type.PRESENCE_SNAPSHOT, "n2", "", ""));
+		assertTrue(presence.locate("an").isEmpty());
+	}
+}
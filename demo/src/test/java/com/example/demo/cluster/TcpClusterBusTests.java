@@ -0,0 +1,107 @@
+package com.example.demo.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class TcpClusterBusTests {
+
+	@Test
+	void eventsCrossTheMeshOnceAndNeverLoopBack() throws Exception {
+		InetSocketAddress anyPort = new InetSocketAddress("127.0.0.1", 0);
+		TcpClusterBus a = new TcpClusterBus("a", anyPort, List.of(), 100);
+		a.start();
+		// b chỉ có kết nối outbound tới a: event của b sang a, không có chiều ngược lại
+		TcpClusterBus b = new TcpClusterBus("b", anyPort, List.of(a.localAddress()), 100);
+		b.start();
+		try {
+			BlockingQueue<ClusterEvent> received = new LinkedBlockingQueue<>();
+			BlockingQueue<ClusterEvent> echoed = new LinkedBlockingQueue<>();
+			a.subscribe(received::add);
+			CountDownLatch connected = new CountDownLatch(1);
+			b.subscribe(new ClusterBus.Listener() {
+				@Override
+				public void onEvent(ClusterEvent event) {
+					echoed.add(event);
+				}
+
+				@Override
+				public void onPeerConnected() {
+					connected.countDown();
+				}
+			});
+			assertTrue(connected.await(5, TimeUnit.SECONDS));
+
+			b.publish(ClusterEvent.Type.ROOM_STORED, "phòng|1", "MSG|bob|xin chào");
+			String large = "x".repeat(200 * 1024);
+			b.publish(ClusterEvent.Type.PRIVATE, "alice", large);
+
+			ClusterEvent first = received.poll(5, TimeUnit.SECONDS);
+			assertNotNull(first);
+			assertEquals(new ClusterEvent(ClusterEvent.Type.ROOM_STORED, "b", "phòng|1", "MSG|bob|xin chào"), first);
+			ClusterEvent second = received.poll(5, TimeUnit.SECONDS);
+			assertNotNull(second);
+			assertEquals(large, second.payload());
+			assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+			assertNull(echoed.poll());
+		} finally {
+			b.close();
+			a.close();
+		}
+	}
+
+	@Test
+	void peerWithoutTheSecretIsRejected() throws Exception {
+		InetSocketAddress anyPort = new InetSocketAddress("127.0.0.1", 0);
+		TcpClusterBus a = new TcpClusterBus("a", anyPort, List.of(), 100, "chung");
+		a.start();
+		TcpClusterBus good = new TcpClusterBus("good", anyPort, List.of(a.localAddress()), 100, "chung");
+		TcpClusterBus bad = new TcpClusterBus("bad", anyPort, List.of(a.localAddress()), 100, "sai");
+		TcpClusterBus none = new TcpClusterBus("none", anyPort, List.of(a.localAddress()), 100);
+		good.start();
+		bad.start();
+		none.start();
+		try {
+			BlockingQueue<ClusterEvent> received = new LinkedBlockingQueue<>();
+			a.subscribe(received::add);
+			CountDownLatch connected = new CountDownLatch(1);
+			good.subscribe(new ClusterBus.Listener() {
+				@Override
+				public void onEvent(ClusterEvent event) {
+				}
+
+				@Override
+				public void onPeerConnected() {
+					connected.countDown();
+				}
+			});
+			assertTrue(connected.await(5, TimeUnit.SECONDS));
+			// Đợi bad/none kết nối xong rồi mới gửi
+			Thread.sleep(300);
+
+			bad.publish(ClusterEvent.Type.PRIVATE, "alice", "giả mạo");
+			none.publish(ClusterEvent.Type.PRIVATE, "alice", "không có secret");
+			good.publish(ClusterEvent.Type.PRIVATE, "alice", "thật");
+
+			ClusterEvent event = received.poll(5, TimeUnit.SECONDS);
+			assertNotNull(event);
+			assertEquals("good", event.origin());
+			assertNull(received.poll(300, TimeUnit.MILLISECONDS));
+		} finally {
+			none.close();
+			bad.close();
+			good.close();
+			a.close();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.example.demo.drain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.history.HistoryProperties;
+import com.example.demo.history.HistoryStore;
+import com.example.demo.history.InMemoryHistoryStore;
+
+class ResumeTokensTests {
+
+	private final HistoryStore history = new InMemoryHistoryStore(new HistoryProperties());
+
+	private ResumeTokens tokens(String secret, Duration ttl) {
+		return new ResumeTokens(history, secret, "unused", ttl);
+	}
+
+	@Test
+	void roundTrip() {
+		history.append("phòng 1", "MSG|an|chào|1");
+		ResumeTokens tokens = tokens("bí mật", Duration.ofHours(1));
+
+		ResumeTokens.Claims claims = tokens.verify(tokens.issue("an", "phòng 1", "AN"));
+		assertNotNull(claims);
+		assertEquals("an", claims.user());
+		assertEquals("phòng 1", claims.room());
+		assertEquals("AN", claims.avatar());
+	}
+
+	@Test
+	void rejectsForgedAndExpiredTokens() {
+		ResumeTokens tokens = tokens("bí mật", Duration.ofHours(1));
+		String token = tokens.issue("an", "r", "AN");
+		String payload = token.substring(0, token.indexOf('.'));
+		String signature = token.substring(token.indexOf('.') + 1);
+
+		assertNull(tokens.verify("khong-co-cham"));
+		assertNull(tokens.verify(payload + ".@@@"));
+		// Đổi user trong payload mà giữ chữ ký cũ
+		String other = tokens.issue("binh", "r", "BI");
+		assertNull(tokens.verify(other.substring(0, other.indexOf('.')) + "." + signature));
+		// Key khác (node không chung secret)
+		assertNull(tokens("khác", Duration.ofHours(1)).verify(token));
+
+		ResumeTokens expired = tokens("bí mật", Duration.ofMillis(-1));
+		assertNull(expired.verify(expired.issue("an", "r", "AN")));
+	}
+
+	@Test
+	void rejectsTokenOfAnotherRoomIncarnation() {
+		history.append("r", "MSG|an|1|1");
+		ResumeTokens tokens = tokens("bí mật", Duration.ofHours(1));
+		String token = tokens.issue("an", "r", "AN");
+
+		// Phòng bị xóa rồi tạo lại: seq lại từ 1, token cũ không dùng được
+		history.remove("r");
+		history.append("r", "MSG|binh|khác|2");
+		assertNull(tokens.verify(token));
+	}
+
+	@Test
+	void rejectsTokenOfARemovedRoomWithoutRecreatingIt() {
+		history.append("r", "MSG|an|1|1");
+		ResumeTokens tokens = tokens("bí mật", Duration.ofHours(1));
+		String token = tokens.issue("an", "r", "AN");
+
+		history.remove("r");
+		assertNull(tokens.verify(token));
+		assertFalse(history.rooms().contains("r"));
+	}
+}
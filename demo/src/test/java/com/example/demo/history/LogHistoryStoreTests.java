@@ -0,0 +1,114 @@
+package com.example.demo.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+class LogHistoryStoreTests {
+
+	@TempDir
+	Path dir;
+
+	private HistoryProperties properties(int segmentBytes, int retention) {
+		HistoryProperties properties = new HistoryProperties();
+		properties.getLog().setDir(dir.toString());
+		properties.getLog().setSegmentSize(DataSize.ofBytes(segmentBytes));
+		properties.getLog().setRetentionSegments(retention);
+		properties.getLog().setIndexInterval(4);
+		return properties;
+	}
+
+	@Test
+	void recoversAfterRestart() throws Exception {
+		LogHistoryStore store = new LogHistoryStore(properties(4096, 100));
+		for (int i = 1; i <= 1000; i++) {
+			assertEquals(i, store.append("Phòng chung", "MSG|an|tin nhắn " + i + "|0"));
+		}
+		store.destroy();
+
+		LogHistoryStore reopened = new LogHistoryStore(properties(4096, 100));
+		List<HistoryEntry> latest = reopened.latest("Phòng chung", 3);
+		assertEquals(998, latest.get(0).seq());
+		assertEquals("MSG|an|tin nhắn 1000|0", latest.get(2).message());
+		assertEquals(1001, reopened.append("Phòng chung", "MSG|an|sau restart|0"));
+		reopened.destroy();
+	}
+
+	@Test
+	void retentionDropsOldestSegments() throws Exception {
+		LogHistoryStore store = new LogHistoryStore(properties(1024, 2));
+		for (int i = 1; i <= 500; i++) {
+			store.append("r", "MSG|u|" + i + "|0");
+		}
+
+		List<HistoryEntry> all = store.latest("r", 500);
+		assertEquals(500, all.get(all.size() - 1).seq());
+		assertEquals(true, all.size() < 500);
+		store.destroy();
+	}
+
+	@Test
+	void longRoomNamesAndClosedRoomsSurviveRestart() throws Exception {
+		String longRoom = "Phòng có tên rất dài ".repeat(20);
+		// Thư mục lạ trong thư mục log không được làm hỏng lúc khởi động
+		Files.createDirectories(dir.resolve("lost+found"));
+		HistoryProperties properties = properties(4096, 100);
+		properties.getLog().setMaxOpenRooms(1);
+
+		LogHistoryStore store = new LogHistoryStore(properties);
+		store.append(longRoom, "MSG|an|1|0");
+		store.append("ngắn", "MSG|an|2|0");
+		// longRoom đã bị đóng khi mở "ngắn": ghi tiếp phải mở lại và nối seq
+		assertEquals(2, store.append(longRoom, "MSG|an|3|0"));
+		assertEquals("MSG|an|2|0", store.latest("ngắn", 1).get(0).message());
+		long bytes = store.totalBytes();
+		store.destroy();
+
+		LogHistoryStore reopened = new LogHistoryStore(properties);
+		assertEquals(Set.of(longRoom, "ngắn"), reopened.rooms());
+		assertEquals(bytes, reopened.totalBytes());
+		assertEquals("MSG|an|3|0", reopened.latest(longRoom, 1).get(0).message());
+		reopened.destroy();
+	}
+
+	@Test
+	void concurrentOpensAndClosesKeepEveryAppend() throws Exception {
+		HistoryProperties properties = properties(4096, 100);
+		properties.getLog().setMaxOpenRooms(1);
+		LogHistoryStore store = new LogHistoryStore(properties);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			// Bốn phòng, một chỗ mở: phòng liên tục bị đóng và mở lại ở thread khác
+			List<Future<?>> writers = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				String room = "phòng " + t;
+				writers.add(pool.submit(() -> {
+					for (int i = 1; i <= 200; i++) {
+						assertEquals(i, store.append(room, "MSG|u|" + i + "|0"));
+					}
+				}));
+			}
+			for (Future<?> writer : writers) {
+				writer.get(30, TimeUnit.SECONDS);
+			}
+			for (int t = 0; t < 4; t++) {
+				assertEquals(200, store.latest("phòng " + t, 1).get(0).seq());
+			}
+		} finally {
+			pool.shutdownNow();
+			store.destroy();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.example.demo.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class RoomHistoryTests {
+
+	@Test
+	void keepsNewestMessagesWhenFull() {
+		RoomHistory history = new RoomHistory(3);
+		for (int i = 1; i <= 5; i++) {
+			history.append("MSG|u|" + i);
+		}
+
+		List<HistoryEntry> latest = history.latest(10);
+		assertEquals(3, latest.size());
+		assertEquals(3, latest.get(0).seq());
+		assertEquals("MSG|u|5", latest.get(2).message());
+		assertEquals(5, history.lastSeq());
+	}
+
+	@Test
+	void evictTracksBytes() {
+		RoomHistory history = new RoomHistory(10);
+		history.append("a");
+		history.append("bb");
+		long before = history.bytes();
+
+		long freed = history.evict(1);
+		assertEquals(RoomHistory.estimateBytes("a"), freed);
+		assertEquals(before - freed, history.bytes());
+		assertEquals(1, history.size());
+	}
+
+
+	@Test
+	void reportsDroppedMessages() {
+		List<HistoryEntry> dropped = new ArrayList<>();
+		RoomHistory history = new RoomHistory(2, dropped::add);
+		history.append("FILE|u|/api/files/a.png");
+		history.append("MSG|u|2");
+		history.append("MSG|u|3");
+		history.evict(1);
+
+		assertEquals(2, dropped.size());
+		assertEquals(1, dropped.get(0).seq());
+		assertEquals("FILE|u|/api/files/a.png", dropped.get(0).message());
+		assertEquals(2, dropped.get(1).seq());
+	}
+}
@@ -0,0 +1,67 @@
+package com.example.demo.mailbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MailboxStoreTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void drainsInBatchesUntilAcknowledged() {
+		MailboxStore store = new MailboxStore(dir, 1 << 20, 1 << 30, false);
+		for (int i = 1; i <= 5; i++) {
+			assertTrue(store.append("Bình", "PRIVATE|an|tin " + i + "|0"));
+		}
+
+		MailboxStore.Batch first = store.read("Bình", 2, Long.MAX_VALUE);
+		assertEquals(List.of("PRIVATE|an|tin 1|0", "PRIVATE|an|tin 2|0"), first.frames());
+		// Chưa ack -> đọc lại vẫn là batch đó
+		assertEquals(first, store.read("Bình", 2, Long.MAX_VALUE));
+
+		store.ack("Bình", first.end());
+		assertEquals("PRIVATE|an|tin 3|0", store.read("Bình", 2, Long.MAX_VALUE).frames().get(0));
+
+		// Còn lại thì reopen vẫn thấy (hộp thư nằm trên đĩa)
+		MailboxStore reopened = new MailboxStore(dir, 1 << 20, 1 << 30, false);
+		MailboxStore.Batch rest = reopened.read("Bình", 10, Long.MAX_VALUE);
+		assertEquals(3, rest.frames().size());
+		reopened.ack("Bình", rest.end());
+		assertTrue(reopened.isEmpty("Bình"));
+	}
+
+	@Test
+	void rejectsWhenMailboxIsFull() {
+		MailboxStore store = new MailboxStore(dir, 64, 1 << 30, false);
+		assertTrue(store.append("an", "PRIVATE|b|" + "x".repeat(40) + "|0"));
+		assertFalse(store.append("an", "PRIVATE|b|" + "x".repeat(40) + "|0"));
+		assertTrue(store.append("binh", "PRIVATE|b|" + "x".repeat(40) + "|0"));
+	}
+
+	@Test
+	void dropsTornRecordAndExpiresIdleMailboxes() throws Exception {
+		MailboxStore store = new MailboxStore(dir, 1 << 20, 1 << 30, false);
+		store.append("an", "PRIVATE|b|một|0");
+		// Crash giữa lúc append: chỉ có header
+		Files.write(store.file("an"), new byte[] { 0, 0, 0, 99 }, StandardOpenOption.APPEND);
+		assertEquals(List.of("PRIVATE|b|một|0"), store.read("an", 10, Long.MAX_VALUE).frames());
+
+		store.append("binh", "PRIVATE|b|hai|0");
+		assertEquals(0, store.expire(Duration.ofDays(1)));
+		assertEquals(2, store.expire(Duration.ZERO.minusSeconds(1)));
+		assertTrue(store.isEmpty("an"));
+		assertEquals(0, store.totalBytes());
+	}
+
+}
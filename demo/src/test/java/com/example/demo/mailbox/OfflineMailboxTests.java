@@ -0,0 +1,78 @@
+package com.example.demo.mailbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import com.example.demo.cluster.ClusterBus;
+import com.example.demo.cluster.ClusterEvent;
+import com.example.demo.cluster.LoopbackClusterBus;
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.ws.ChatRegistry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class OfflineMailboxTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void handOverKeepsFramesForAUserWhoAlreadyLeft() {
+		LoopbackClusterBus.Hub hub = new LoopbackClusterBus.Hub();
+		LoopbackClusterBus a = new LoopbackClusterBus("a", hub);
+		LoopbackClusterBus b = new LoopbackClusterBus("b", hub);
+		OfflineMailbox mailboxA = mailbox(a, "a");
+		OfflineMailbox mailboxB = mailbox(b, "b");
+		try {
+			for (int i = 1; i <= 5; i++) {
+				assertTrue(mailboxA.enqueue("Bình", "PRIVATE|an|tin " + i + "|0"));
+			}
+
+			// "Bình" vào rồi rời node b trước khi hộp thư tới: tin phải nằm lại ở hộp thư của b
+			b.publish(ClusterEvent.Type.PRESENCE_UP, "Bình", "");
+
+			assertTrue(store("a").isEmpty("Bình"));
+			assertEquals(List.of("PRIVATE|an|tin 1|0", "PRIVATE|an|tin 2|0", "PRIVATE|an|tin 3|0",
+					"PRIVATE|an|tin 4|0", "PRIVATE|an|tin 5|0"),
+					store("b").read("Bình", Integer.MAX_VALUE, Long.MAX_VALUE).frames());
+		} finally {
+			mailboxA.destroy();
+			mailboxB.destroy();
+		}
+	}
+
+	@Test
+	void unacknowledgedHandOverStaysInTheMailbox() {
+		// Node b không có trên bus: MAILBOX mất, không có ack
+		LoopbackClusterBus a = new LoopbackClusterBus("a", new LoopbackClusterBus.Hub());
+		OfflineMailbox mailboxA = mailbox(a, "a");
+		try {
+			assertTrue(mailboxA.enqueue("Bình", "PRIVATE|an|xin chào|0"));
+			mailboxA.onEvent(new ClusterEvent(ClusterEvent.Type.PRESENCE_UP, "b", "Bình", ""));
+
+			assertEquals(List.of("PRIVATE|an|xin chào|0"),
+					store("a").read("Bình", Integer.MAX_VALUE, Long.MAX_VALUE).frames());
+		} finally {
+			mailboxA.destroy();
+		}
+	}
+
+	private OfflineMailbox mailbox(ClusterBus bus, String node) {
+		return new OfflineMailbox(mock(ChatRegistry.class), bus, new ChatMetrics(new SimpleMeterRegistry(), 1.0, false),
+				dir.resolve(node).toString(), DataSize.ofKilobytes(256), DataSize.ofGigabytes(1), 2,
+				DataSize.ofKilobytes(64), Duration.ofDays(30), Duration.ofHours(1), false);
+	}
+
+	private MailboxStore store(String node) {
+		return new MailboxStore(dir.resolve(node), 1 << 20, 1 << 30, false);
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.demo.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.history.HistoryEntry;
+import com.example.demo.history.HistoryProperties;
+import com.example.demo.history.InMemoryHistoryStore;
+import com.example.demo.ws.ChatCodec;
+
+class SearchIndexTests {
+
+	private final HistoryProperties properties = new HistoryProperties();
+	private final InMemoryHistoryStore history = new InMemoryHistoryStore(properties);
+	private final SearchIndex index = new SearchIndex(history, 1_000_000, 64);
+
+	private long say(String text) {
+		String frame = ChatCodec.encode("MSG", "u", text, "0");
+		long seq = history.append("r", frame);
+		index.index("r", seq, frame);
+		return seq;
+	}
+
+	private List<Long> seqs(SearchIndex.Result result) {
+		return result.entries().stream().map(HistoryEntry::seq).toList();
+	}
+
+	@Test
+	void matchesWithoutDiacritics() {
+		long viet = say("Chào Việt Nam");
+		say("hello world");
+		long duong = say("đường đi");
+
+		assertEquals(List.of(viet), seqs(index.search("r", "viet nam ", 0, 10)));
+		assertEquals(List.of(viet), seqs(index.search("r", "VIỆT ", 0, 10)));
+		assertEquals(List.of(duong), seqs(index.search("r", "duong ", 0, 10)));
+	}
+
+	@Test
+	void requiresEveryTermNewestFirst() {
+		long first = say("deploy server a");
+		say("deploy client");
+		long third = say("server deploy b");
+
+		SearchIndex.Result result = index.search("r", "deploy server ", 0, 10);
+		assertEquals(2, result.total());
+		assertEquals(List.of(third, first), seqs(result));
+		assertEquals(List.of(first), seqs(index.search("r", "deploy server ", 1, 10)));
+	}
+
+	@Test
+	void lastTermMatchesAsPrefixRankedBelowExact() {
+		long prefix = say("meeting tomorrow");
+		long exact = say("meet at noon");
+
+		assertEquals(List.of(exact, prefix), seqs(index.search("r", "mee", 0, 10)));
+		assertEquals(List.of(exact, prefix), seqs(index.search("r", "meet", 0, 10)));
+		assertEquals(List.of(exact), seqs(index.search("r", "meet ", 0, 10)));
+	}
+
+	@Test
+	void dropsMessagesEvictedFromHistory() {
+		properties.setCapacity(2);
+		InMemoryHistoryStore small = new InMemoryHistoryStore(properties);
+		SearchIndex smallIndex = new SearchIndex(small, 1_000_000, 64);
+		for (int i = 0; i < 5; i++) {
+			String frame = ChatCodec.encode("MSG", "u", "ping " + i, "0");
+			smallIndex.index("r", small.append("r", frame), frame);
+		}
+
+		assertEquals(List.of(5L, 4L), seqs(smallIndex.search("r", "ping ", 0, 10)));
+	}
+}
@@ -0,0 +1,96 @@
+package com.example.demo.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BlobStoreTests {
+
+	@TempDir
+	Path dir;
+
+	private BlobStore open() throws Exception {
+		return new BlobStore(dir.toString(), Duration.ZERO, false);
+	}
+
+	@Test
+	void identicalContentIsStoredOnce() throws Exception {
+		BlobStore store = open();
+		byte[] content = "báo cáo tuần".getBytes(StandardCharsets.UTF_8);
+		BlobStore.FileEntry first = store.store(new ByteArrayInputStream(content), "bao-cao.docx");
+		BlobStore.FileEntry second = store.store(new ByteArrayInputStream(content), "bao-cao (1).docx");
+
+		assertNotEquals(first.id(), second.id());
+		assertEquals(first.hash(), second.hash());
+		assertTrue(second.id().endsWith(".docx"));
+		store.close();
+
+		BlobStore reopened = open();
+		assertEquals("bao-cao (1).docx", reopened.get(second.id()).originalName());
+		assertTrue(reopened.release(first.id()));
+		reopened.collectGarbage();
+		assertTrue(Files.exists(reopened.blobPath(first.hash())));
+		reopened.close();
+	}
+
+	@Test
+	void unreferencedBlobIsCollected() throws Exception {
+		BlobStore store = open();
+		BlobStore.FileEntry entry = store.store(new ByteArrayInputStream(new byte[] { 1, 2, 3 }), "a.bin");
+		assertTrue(store.release(entry.id()));
+		assertFalse(store.release(entry.id()));
+		Thread.sleep(5);
+
+		store.collectGarbage();
+		assertFalse(Files.exists(store.blobPath(entry.hash())));
+		store.close();
+	}
+
+	@Test
+	void onlyOwnerReleases() throws Exception {
+		BlobStore store = open();
+		BlobStore.FileEntry entry = store.store(new ByteArrayInputStream(new byte[] { 4, 5 }), "b.bin");
+		String claim = store.claim(entry.id());
+		assertFalse(store.release(entry.id(), "room#1"));
+		// Tin đầu tiên nhắc tới URL mà không có claim của người upload không thành chủ
+		assertFalse(store.adopt(entry.id(), "room#0", "đoán"));
+		assertTrue(store.adopt(entry.id(), "room#1", claim));
+		// Claim chỉ dùng được một lần
+		assertFalse(store.adopt(entry.id(), "room#2", claim));
+		assertNull(store.claim(entry.id()));
+		store.close();
+
+		BlobStore reopened = open();
+		assertFalse(reopened.release(entry.id(), "room#2"));
+		assertTrue(reopened.release(entry.id(), "room#1"));
+		assertNull(reopened.get(entry.id()));
+		reopened.close();
+	}
+
+	@Test
+	void claimSurvivesRestartAndOrphansAreReleased() throws Exception {
+		BlobStore store = open();
+		BlobStore.FileEntry kept = store.store(new ByteArrayInputStream(new byte[] { 6 }), "c.bin");
+		BlobStore.FileEntry orphan = store.store(new ByteArrayInputStream(new byte[] { 7 }), "d.bin");
+		String claim = store.claim(kept.id());
+		assertTrue(store.adopt(orphan.id(), "cũ|room|1", store.claim(orphan.id())));
+		store.close();
+
+		BlobStore reopened = open();
+		assertEquals(1, reopened.releaseOwners(owner -> owner.startsWith("cũ|")));
+		assertNull(reopened.get(orphan.id()));
+		assertTrue(reopened.adopt(kept.id(), "mới|room|1", claim));
+		reopened.close();
+	}
+}
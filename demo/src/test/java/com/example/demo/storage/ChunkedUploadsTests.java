@@ -0,0 +1,62 @@
+package com.example.demo.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HexFormat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+class ChunkedUploadsTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void receivedChunkCannotBeRewritten() throws Exception {
+		BlobStore blobs = new BlobStore(dir.toString(), Duration.ZERO, false);
+		ChunkedUploads uploads = new ChunkedUploads(blobs, dir.toString(), DataSize.ofBytes(4), DataSize.ofKilobytes(1),
+				Duration.ofHours(1));
+		byte[] content = "abcdefgh".getBytes(StandardCharsets.UTF_8);
+		ChunkedUpload upload = uploads.init("a.txt", content.length);
+
+		// Chunk 0 được hash ngay khi nhận, ghi lại sau đó phải bị từ chối
+		uploads.writeChunk(upload, 0, new ByteArrayInputStream(content, 0, 4));
+		assertThrows(IllegalStateException.class,
+				() -> uploads.writeChunk(upload, 0, new ByteArrayInputStream("XXXX".getBytes(StandardCharsets.UTF_8))));
+
+		// Chunk ghi lỗi thì được gửi lại
+		assertThrows(IllegalArgumentException.class,
+				() -> uploads.writeChunk(upload, 4, new ByteArrayInputStream(content, 4, 2)));
+		uploads.writeChunk(upload, 4, new ByteArrayInputStream(content, 4, 4));
+
+		BlobStore.FileEntry entry = uploads.complete(upload);
+		assertEquals(HexFormat.of().formatHex(BlobStore.sha256().digest(content)), entry.hash());
+		assertArrayEquals(content, Files.readAllBytes(blobs.blobPath(entry.hash())));
+		blobs.close();
+	}
+
+	@Test
+	void emptyUploadTakesNoChunk() throws Exception {
+		BlobStore blobs = new BlobStore(dir.toString(), Duration.ZERO, false);
+		ChunkedUploads uploads = new ChunkedUploads(blobs, dir.toString(), DataSize.ofBytes(4), DataSize.ofKilobytes(1),
+				Duration.ofHours(1));
+		ChunkedUpload upload = uploads.init("rỗng.txt", 0);
+
+		// Không có chunk nào: PUT ở offset 0 mà được nhận thì upload không bao giờ hoàn tất
+		assertThrows(IllegalArgumentException.class,
+				() -> uploads.writeChunk(upload, 0, new ByteArrayInputStream(new byte[0])));
+
+		BlobStore.FileEntry entry = uploads.complete(upload);
+		assertEquals(0, entry.size());
+		blobs.close();
+	}
+}
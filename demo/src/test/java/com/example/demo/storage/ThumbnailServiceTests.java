@@ -0,0 +1,55 @@
+package com.example.demo.storage;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+class ThumbnailServiceTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void saturatedPoolFallsBackToTheOriginal() throws Exception {
+		CountDownLatch rendering = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		BlobStore blobs = mock(BlobStore.class);
+		// Job đầu giữ thread duy nhất, job thứ hai nằm trong hàng đợi 1 chỗ
+		when(blobs.blobPath(anyString())).thenAnswer(invocation -> {
+			rendering.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			return dir.resolve("missing");
+		});
+		ThumbnailService thumbnails = new ThumbnailService(blobs, dir.toString(), 320, DataSize.ofMegabytes(40),
+				DataSize.ofMegabytes(1), 1, 1);
+		try {
+			thumbnails.thumbnail(entry("a"));
+			assertTrue(rendering.await(5, TimeUnit.SECONDS));
+			thumbnails.thumbnail(entry("b"));
+
+			// Pool đầy: không được ném lỗi, trả null để dùng ảnh gốc
+			CompletableFuture<Path> rejected = thumbnails.thumbnail(entry("c"));
+			assertNull(rejected.getNow(dir));
+			// Job bị từ chối không kẹt trong pending: lần sau là job mới
+			assertTrue(thumbnails.thumbnail(entry("c")) != rejected);
+		} finally {
+			release.countDown();
+			thumbnails.shutdown();
+		}
+	}
+
+	private static BlobStore.FileEntry entry(String hash) {
+		return new BlobStore.FileEntry(hash + ".png", hash, hash + ".png", 10);
+	}
+}
@@ -0,0 +1,43 @@
+package com.example.demo.ws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class ChatCodecTests {
+
+	@Test
+	void escapedSeparatorsStayInsideTheirField() {
+		String frame = ChatCodec.encode("MSG", "a|b \\ c", "");
+		assertEquals("MSG|a\\|b \\\\ c|", frame);
+
+		ChatMessage message = ChatCodec.decode(frame);
+		assertEquals(Command.MSG, message.command());
+		assertEquals(3, message.size());
+		assertEquals("a|b \\ c", message.get(1));
+		assertEquals("", message.get(2));
+	}
+
+	@Test
+	void privateFileKeepsAllFields() {
+		ChatMessage message = ChatCodec.decode("PRIVATE_FILE|bình|/api/files/x.png|image|ảnh.png|1024");
+		assertEquals(Command.PRIVATE_FILE, message.command());
+		assertEquals("1024", message.get(5));
+		assertFalse(message.has(6));
+		assertThrows(IllegalArgumentException.class, () -> message.get(6));
+		assertNull(ChatCodec.decode("NOPE|x").command());
+	}
+
+	@Test
+	void binaryFrameCarriesTheSameFields() {
+		String text = ChatCodec.encode("JOIN", "Phòng | chung", "an", "AN", "");
+		ChatMessage message = ChatCodec.decode(ChatCodec.toBinary(text));
+		assertEquals(Command.JOIN, message.command());
+		assertEquals(5, message.size());
+		assertEquals("Phòng | chung", message.get(1));
+		assertEquals("", message.get(4));
+	}
+}
@@ -0,0 +1,71 @@
+package com.example.demo.ws;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+class OutboundDispatcherTests {
+
+	@Test
+	void everyBinaryRecipientGetsTheWholeFrame() throws Exception {
+		OutboundDispatcher dispatcher = new OutboundDispatcher(1024, OverflowPolicy.DROP_TYPING_FIRST, 10_000, 8,
+				Duration.ZERO, DataSize.ofKilobytes(32), new MockEnvironment());
+		Frame frame = Frame.text(ChatCodec.encode("MSG", "an", "xin chào cả phòng", "1"));
+		byte[] expected = frame.binary();
+
+		int recipients = 20;
+		CountDownLatch done = new CountDownLatch(recipients);
+		Map<String, byte[]> received = new ConcurrentHashMap<>();
+		List<WebSocketSession> sessions = new ArrayList<>();
+		for (int i = 0; i < recipients; i++) {
+			String id = "s" + i;
+			WebSocketSession session = mock(WebSocketSession.class);
+			when(session.getId()).thenReturn(id);
+			when(session.isOpen()).thenReturn(true);
+			when(session.getAttributes()).thenReturn(new HashMap<>());
+			// Như container: đọc hết buffer của message khi gửi
+			doAnswer(call -> {
+				ByteBuffer payload = ((BinaryMessage) call.getArgument(0, WebSocketMessage.class)).getPayload();
+				byte[] bytes = new byte[payload.remaining()];
+				payload.get(bytes);
+				received.put(id, bytes);
+				done.countDown();
+				return null;
+			}).when(session).sendMessage(any());
+			ChatCodec.useBinary(session);
+			dispatcher.register(session);
+			sessions.add(session);
+		}
+
+		for (WebSocketSession session : sessions) {
+			assertTrue(dispatcher.send(session, frame));
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(recipients, received.size());
+		for (byte[] bytes : received.values()) {
+			assertArrayEquals(expected, bytes);
+		}
+		dispatcher.shutdown();
+	}
+}
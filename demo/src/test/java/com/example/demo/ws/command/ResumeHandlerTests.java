@@ -0,0 +1,53 @@
+package com.example.demo.ws.command;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.history.HistoryEntry;
+import com.example.demo.history.HistoryProperties;
+import com.example.demo.history.HistoryStore;
+import com.example.demo.history.InMemoryHistoryStore;
+
+class ResumeHandlerTests {
+
+	private static HistoryStore history(int capacity, int messages) {
+		HistoryProperties properties = new HistoryProperties();
+		properties.setCapacity(capacity);
+		HistoryStore history = new InMemoryHistoryStore(properties);
+		for (int i = 1; i <= messages; i++) {
+			history.append("r", "MSG|an|" + i + "|" + i);
+		}
+		return history;
+	}
+
+	@Test
+	void returnsOnlyMissedMessages() {
+		HistoryStore history = history(10, 5);
+
+		List<HistoryEntry> missed = ResumeHandler.missedSince(history, "r", 3, 100);
+		assertEquals(2, missed.size());
+		assertEquals(4, missed.get(0).seq());
+		assertEquals(5, missed.get(1).seq());
+		assertTrue(ResumeHandler.missedSince(history, "r", 5, 100).isEmpty());
+	}
+
+	@Test
+	void fallsBackWhenMissedMessagesCannotBeContinued() {
+		// Chỉ còn seq 6..10: tin 2..5 đã bị đẩy ra
+		HistoryStore evicted = history(5, 10);
+		assertNull(ResumeHandler.missedSince(evicted, "r", 1, 100));
+		assertEquals(5, ResumeHandler.missedSince(evicted, "r", 5, 100).size());
+
+		HistoryStore history = history(10, 5);
+		// Client đi trước server: seq của lịch sử khác
+		assertNull(ResumeHandler.missedSince(history, "r", 6, 100));
+		assertNull(ResumeHandler.missedSince(history, "r", -1, 100));
+		// Lỡ nhiều hơn giới hạn
+		assertNull(ResumeHandler.missedSince(history, "r", 0, 4));
+	}
+}